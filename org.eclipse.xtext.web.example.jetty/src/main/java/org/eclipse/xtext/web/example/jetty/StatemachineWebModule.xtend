@@ -10,7 +10,9 @@ package org.eclipse.xtext.web.example.jetty
 import com.google.inject.Binder
 import org.eclipse.xtend.lib.annotations.FinalFieldsConstructor
 import org.eclipse.xtext.web.example.jetty.resource.StatemachineContentTypeProvider
+import org.eclipse.xtext.web.example.jetty.resource.StatemachineDocumentProvider
 import org.eclipse.xtext.web.example.jetty.resource.StatemachineResourceSetProvider
+import org.eclipse.xtext.web.server.model.IWebDocumentProvider
 import org.eclipse.xtext.web.server.model.IWebResourceSetProvider
 import org.eclipse.xtext.web.server.persistence.FileResourceHandler
 import org.eclipse.xtext.web.server.persistence.IResourceBaseProvider
@@ -31,6 +33,10 @@ class StatemachineWebModule extends AbstractStatemachineWebModule {
 	def Class<? extends IWebResourceSetProvider> bindIWebResourceSetProvider() {
 		return StatemachineResourceSetProvider
 	}
+	
+	def Class<? extends IWebDocumentProvider> bindIWebDocumentProvider() {
+		return StatemachineDocumentProvider
+	}
 
 	def void configureResourceBaseProvider(Binder binder) {
 		if (resourceBaseProvider !== null) binder.bind(IResourceBaseProvider).toInstance(resourceBaseProvider)
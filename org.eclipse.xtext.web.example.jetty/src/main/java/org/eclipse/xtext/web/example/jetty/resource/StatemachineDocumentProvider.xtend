@@ -0,0 +1,23 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.example.jetty.resource
+
+import org.eclipse.xtext.web.server.IServiceContext
+import org.eclipse.xtext.web.server.model.IWebDocumentProvider
+
+/**
+ * Resources that run in multi-resource mode share the same resource set, so they must
+ * share the same document synchronizer, too.
+ */
+class StatemachineDocumentProvider extends IWebDocumentProvider.DefaultImpl {
+	
+	override protected getSynchronizerKey(String resourceId, IServiceContext serviceContext) {
+		StatemachineResourceSetProvider.getResourceSetKey(resourceId) ?: resourceId
+	}
+	
+}
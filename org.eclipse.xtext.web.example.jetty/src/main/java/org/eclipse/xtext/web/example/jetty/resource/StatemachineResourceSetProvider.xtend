@@ -23,11 +23,23 @@ class StatemachineResourceSetProvider implements IWebResourceSetProvider {
 	@Inject Provider<ResourceSet> provider
 	
 	override get(String resourceId, IServiceContext serviceContext) {
+		val resourceSetKey = getResourceSetKey(resourceId)
+		if (resourceSetKey !== null)
+			return serviceContext.session.get(ResourceSet -> resourceSetKey, [provider.get])
+		else
+			return provider.get
+	}
+	
+	/**
+	 * Returns the key of the shared resource set for resources in multi-resource mode, or {@code null}
+	 * if the given resource gets its own resource set.
+	 */
+	static def String getResourceSetKey(String resourceId) {
 		if (resourceId !== null && resourceId.startsWith(MULTI_RESOURCE_PREFIX)) {
 			val pathEnd = Math.max(resourceId.indexOf('/'), MULTI_RESOURCE_PREFIX.length)
-			return serviceContext.session.get(ResourceSet -> resourceId.substring(0, pathEnd), [provider.get])
-		} else
-			return provider.get
+			return resourceId.substring(0, pathEnd)
+		}
+		return null
 	}
 	
 }
\ No newline at end of file
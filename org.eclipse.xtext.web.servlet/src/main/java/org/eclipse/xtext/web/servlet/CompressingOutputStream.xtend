@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.servlet
+
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+import java.io.OutputStream
+import java.util.zip.Deflater
+import java.util.zip.DeflaterOutputStream
+import java.util.zip.GZIPOutputStream
+import javax.servlet.http.HttpServletResponse
+
+/**
+ * Output stream for servlet responses that applies a content encoding ({@code gzip} or {@code deflate})
+ * once the amount of written data exceeds a threshold. Smaller responses are sent uncompressed, since
+ * compressing them would not pay off. The {@code Content-Encoding} header is set only when compression
+ * is actually applied, which is possible because nothing is written to the response before that decision.
+ */
+class CompressingOutputStream extends OutputStream {
+
+	val HttpServletResponse response
+
+	val String contentEncoding
+
+	val int threshold
+
+	ByteArrayOutputStream buffer
+
+	OutputStream output
+
+	/**
+	 * The deflater of the {@code deflate} encoding. It must be ended explicitly in order to release
+	 * its native memory, since it is not owned by the {@link DeflaterOutputStream}.
+	 */
+	Deflater deflater
+
+	boolean closed
+
+	new(HttpServletResponse response, String contentEncoding, int threshold) {
+		this.response = response
+		this.contentEncoding = contentEncoding
+		this.threshold = threshold
+		this.buffer = new ByteArrayOutputStream(Math.min(threshold, 8192))
+	}
+
+	override write(int b) throws IOException {
+		if (output === null) {
+			if (buffer.size + 1 <= threshold) {
+				buffer.write(b)
+				return
+			}
+			startCompression()
+		}
+		output.write(b)
+	}
+
+	override write(byte[] b, int off, int len) throws IOException {
+		if (output === null) {
+			if (buffer.size + len <= threshold) {
+				buffer.write(b, off, len)
+				return
+			}
+			startCompression()
+		}
+		output.write(b, off, len)
+	}
+
+	protected def void startCompression() throws IOException {
+		response.setHeader('Content-Encoding', contentEncoding)
+		output = switch contentEncoding {
+			case 'gzip': new GZIPOutputStream(response.outputStream, 8192)
+			case 'deflate': {
+				deflater = new Deflater
+				new DeflaterOutputStream(response.outputStream, deflater, 8192)
+			}
+			default: throw new IllegalArgumentException('Unsupported content encoding: ' + contentEncoding)
+		}
+		buffer.writeTo(output)
+		buffer = null
+	}
+
+	override flush() throws IOException {
+		// Buffered data is kept until the threshold is reached or the stream is closed
+		if (output !== null)
+			output.flush()
+	}
+
+	override close() throws IOException {
+		if (closed)
+			return
+		closed = true
+		if (output === null) {
+			response.contentLength = buffer.size
+			buffer.writeTo(response.outputStream)
+			response.outputStream.close()
+		} else {
+			try {
+				output.close()
+			} finally {
+				deflater?.end()
+			}
+		}
+	}
+
+}
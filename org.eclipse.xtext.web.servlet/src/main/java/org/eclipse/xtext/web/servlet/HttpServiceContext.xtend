@@ -70,7 +70,7 @@ class HttpServiceContext implements IServiceContext {
 	
 	override getSession() {
 		if (sessionWrapper === null)
-			sessionWrapper = new HttpSessionWrapper(request.getSession(true))
+			sessionWrapper = HttpSessionWrapper.of(request.getSession(true))
 		return sessionWrapper
 	}
 	
@@ -13,14 +13,34 @@ import org.eclipse.xtend.lib.annotations.FinalFieldsConstructor
 import org.eclipse.xtext.web.server.ISession
 
 /**
- * Provides access to the information stored in a {@link HttpSession}.
+ * Provides access to the information stored in a {@link HttpSession}. Use {@link #of(HttpSession)} to
+ * obtain the wrapper of a session, so all requests of the session share the same instance; the
+ * {@link org.eclipse.xtext.web.server.model.WebDocumentRegistry WebDocumentRegistry} references sessions
+ * weakly and relies on that.
  */
 @FinalFieldsConstructor
 @Accessors
 class HttpSessionWrapper implements ISession {
 	
+	static val ATTRIBUTE = HttpSessionWrapper.name
+	
 	val HttpSession session
 	
+	/**
+	 * Return the wrapper of the given session, creating it if necessary. The wrapper is stored in the
+	 * session itself, hence it lives as long as the session.
+	 */
+	static def HttpSessionWrapper of(HttpSession session) {
+		synchronized (session) {
+			val existing = session.getAttribute(ATTRIBUTE) as HttpSessionWrapper
+			if (existing !== null)
+				return existing
+			val wrapper = new HttpSessionWrapper(session)
+			session.setAttribute(ATTRIBUTE, wrapper)
+			return wrapper
+		}
+	}
+	
 	override <T> get(Object key) {
 		session.getAttribute(key.toString) as T
 	}
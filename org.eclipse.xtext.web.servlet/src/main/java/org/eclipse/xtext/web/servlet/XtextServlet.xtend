@@ -7,9 +7,20 @@
  *******************************************************************************/
 package org.eclipse.xtext.web.servlet
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder
 import com.google.gson.Gson
+import com.google.gson.stream.JsonWriter
 import com.google.inject.Injector
+import java.io.BufferedWriter
 import java.io.IOException
+import java.io.OutputStream
+import java.io.OutputStreamWriter
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import javax.servlet.ServletConfig
 import javax.servlet.ServletException
 import javax.servlet.http.HttpServlet
 import javax.servlet.http.HttpServletRequest
@@ -24,7 +35,9 @@ import org.eclipse.xtext.web.server.InvalidRequestException
 import org.eclipse.xtext.web.server.InvalidRequestException.InvalidDocumentStateException
 import org.eclipse.xtext.web.server.InvalidRequestException.PermissionDeniedException
 import org.eclipse.xtext.web.server.InvalidRequestException.ResourceNotFoundException
+import org.eclipse.xtext.web.server.InvalidRequestException.ServiceUnavailableException
 import org.eclipse.xtext.web.server.InvalidRequestException.UnknownLanguageException
+import org.eclipse.xtext.web.server.ServiceConflictResult
 import org.eclipse.xtext.web.server.XtextServiceDispatcher
 
 /**
@@ -43,6 +56,13 @@ import org.eclipse.xtext.web.server.XtextServiceDispatcher
  * 
  * Use the {@code WebServlet} annotation to register your servlet. The default URL pattern for
  * Xtext services is {@code "/xtext-service/*"}.
+ * 
+ * <p>Requests can be processed asynchronously so that container threads are not blocked while
+ * waiting for a document lock. This requires the servlet to be registered with
+ * {@code asyncSupported = true} and the init parameter {@code enableAsync} to be set to {@code true};
+ * the init parameter {@code asyncThreads} determines the number of threads processing the requests.
+ * Since these threads may block on document locks, at most {@code asyncQueueSize} further requests
+ * are queued; when the queue is full, requests are rejected with status 503 (service unavailable).</p>
  */
 class XtextServlet extends HttpServlet {
 	
@@ -52,7 +72,112 @@ class XtextServlet extends HttpServlet {
 	
 	val gson = new Gson
 	
+	/**
+	 * Whether responses may be compressed according to the encodings accepted by the client.
+	 * Can be configured with the init parameter {@code enableCompression}.
+	 */
+	boolean compressionEnabled = true
+	
+	/**
+	 * The minimal size in bytes of a response to be compressed. Can be configured with the init
+	 * parameter {@code compressionThreshold}.
+	 */
+	int compressionThreshold = 1024
+	
+	/**
+	 * The executor for processing requests asynchronously, or {@code null} if asynchronous
+	 * processing is disabled.
+	 */
+	ExecutorService asyncExecutor
+	
+	override init(ServletConfig config) throws ServletException {
+		super.init(config)
+		val enableCompression = config.getInitParameter('enableCompression')
+		if (enableCompression !== null)
+			compressionEnabled = Boolean.parseBoolean(enableCompression)
+		val threshold = config.getInitParameter('compressionThreshold')
+		if (threshold !== null) {
+			try {
+				compressionThreshold = Integer.parseInt(threshold)
+			} catch (NumberFormatException exception) {
+				throw new ServletException('The init parameter \'compressionThreshold\' must contain an integer value.')
+			}
+		}
+		if (Boolean.parseBoolean(config.getInitParameter('enableAsync'))) {
+			var asyncThreads = 16
+			val threads = config.getInitParameter('asyncThreads')
+			if (threads !== null) {
+				try {
+					asyncThreads = Integer.parseInt(threads)
+				} catch (NumberFormatException exception) {
+					throw new ServletException('The init parameter \'asyncThreads\' must contain an integer value.')
+				}
+			}
+			var asyncQueueSize = 64
+			val queueSize = config.getInitParameter('asyncQueueSize')
+			if (queueSize !== null) {
+				try {
+					asyncQueueSize = Integer.parseInt(queueSize)
+				} catch (NumberFormatException exception) {
+					throw new ServletException('The init parameter \'asyncQueueSize\' must contain an integer value.')
+				}
+			}
+			asyncExecutor = createAsyncExecutor(asyncThreads, asyncQueueSize)
+		}
+	}
+	
+	/**
+	 * Create the executor for processing requests asynchronously. The executor must reject requests
+	 * with a {@link RejectedExecutionException} when it is overloaded, so they can be answered with
+	 * status 503 instead of building up an unbounded backlog.
+	 */
+	protected def ExecutorService createAsyncExecutor(int threads, int queueSize) {
+		new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue(queueSize),
+			new ThreadFactoryBuilder()
+				.setNameFormat('xtext-service-%d')
+				.setDaemon(true)
+				.build,
+			new ThreadPoolExecutor.AbortPolicy)
+	}
+	
+	override destroy() {
+		asyncExecutor?.shutdownNow()
+		asyncExecutor = null
+		super.destroy()
+	}
+	
 	override protected service(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+		val executor = asyncExecutor
+		if (executor !== null && req.asyncSupported) {
+			val asyncContext = req.startAsync(req, resp)
+			// The duration of a request is limited by the service, not by the container
+			asyncContext.timeout = 0
+			try {
+				executor.execute[
+					try {
+						processRequest(req, resp)
+					} catch (Exception exception) {
+						LOG.error('Error while processing request (' + req.requestURI + ')', exception)
+						if (!resp.committed)
+							resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR)
+					} finally {
+						asyncContext.complete()
+					}
+				]
+			} catch (RejectedExecutionException exception) {
+				resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE)
+				asyncContext.complete()
+			}
+		} else {
+			processRequest(req, resp)
+		}
+	}
+	
+	/**
+	 * Process a request by dispatching it according to its HTTP method. Invalid requests are
+	 * answered with an error status.
+	 */
+	protected def void processRequest(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
 		try {
 			super.service(req, resp)
 		} catch (ResourceNotFoundException exception) {
@@ -64,6 +189,10 @@ class XtextServlet extends HttpServlet {
 		} catch (PermissionDeniedException exception) {
 			LOG.trace('Invalid request (' + req.requestURI + '): ' + exception.message)
 			resp.sendError(HttpServletResponse.SC_FORBIDDEN, exception.message)
+		} catch (ServiceUnavailableException exception) {
+			LOG.trace('Rejected request (' + req.requestURI + '): ' + exception.message)
+			resp.setHeader('Retry-After', Integer.toString(exception.retryAfter))
+			resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, exception.message)
 		} catch (InvalidRequestException exception) {
 			LOG.trace('Invalid request (' + req.requestURI + '): ' + exception.message)
 			resp.sendError(HttpServletResponse.SC_BAD_REQUEST, exception.message)
@@ -76,7 +205,16 @@ class XtextServlet extends HttpServlet {
 			// Send error 405 (method not allowed)
 			super.doGet(req, resp)
 		} else {
-			doService(service, resp)
+			val entityTag = getEntityTag(service)
+			if (entityTag !== null && matchesEntityTag(req.getHeader('If-None-Match'), entityTag)) {
+				resp.status = HttpServletResponse.SC_NOT_MODIFIED
+				resp.setHeader('ETag', entityTag)
+				resp.setHeader('Cache-Control', 'no-cache')
+				if (compressionEnabled)
+					resp.addHeader('Vary', 'Accept-Encoding')
+			} else {
+				doService(service, resp)
+			}
 		}
 	}
 	
@@ -124,21 +262,134 @@ class XtextServlet extends HttpServlet {
 	 * Invoke the service function of the given service descriptor and write its result to the
 	 * servlet response in Json format. An exception is made for {@link IUnwrappableServiceResult}:
 	 * here the document itself is written into the response instead of wrapping it into a Json object.
+	 * The Json output is streamed, and it is compressed if the client accepts a supported content encoding
+	 * and the response exceeds the compression threshold.
 	 */
 	protected def void doService(XtextServiceDispatcher.ServiceDescriptor service, HttpServletResponse response) {
 		val result = service.service.apply()
 		response.status = HttpServletResponse.SC_OK
 		response.characterEncoding = getEncoding(service, result)
 		response.setHeader('Cache-Control', 'no-cache')
+		if (!(result instanceof ServiceConflictResult)) {
+			val entityTag = getEntityTag(service)
+			if (entityTag !== null)
+				response.setHeader('ETag', entityTag)
+		}
 		
-		if (result instanceof IUnwrappableServiceResult && (result as IUnwrappableServiceResult).content !== null) {
-			val unwrapResult = result as IUnwrappableServiceResult
-			response.contentType = unwrapResult.contentType ?: 'text/plain'
-			response.writer.write(unwrapResult.content)
-		} else {
+		val unwrap = result instanceof IUnwrappableServiceResult && (result as IUnwrappableServiceResult).content !== null
+		if (unwrap)
+			response.contentType = (result as IUnwrappableServiceResult).contentType ?: 'text/plain'
+		else
 			response.contentType = 'text/x-json'
-			gson.toJson(result, response.writer)
+		
+		val writer = new BufferedWriter(new OutputStreamWriter(getOutputStream(service, response),
+			response.characterEncoding), 8192)
+		try {
+			if (unwrap) {
+				writer.write((result as IUnwrappableServiceResult).content)
+			} else {
+				val jsonWriter = new JsonWriter(writer)
+				gson.toJson(result, result?.class ?: Object, jsonWriter)
+				jsonWriter.flush()
+			}
+		} finally {
+			writer.close()
+		}
+	}
+	
+	/**
+	 * Compute a strong entity tag for the result of the given service, or return {@code null} if the
+	 * result is not identified by a {@link XtextServiceDispatcher.ServiceDescriptor#getResultTag() tag}.
+	 * Since compressed and uncompressed representations differ, the selected content encoding is part
+	 * of the entity tag.
+	 */
+	protected def String getEntityTag(XtextServiceDispatcher.ServiceDescriptor service) {
+		val resultTag = service.resultTag
+		val context = service.context
+		if (resultTag === null || !(context instanceof HttpServiceContext))
+			return null
+		val request = (context as HttpServiceContext).request
+		if (request.method != 'GET')
+			return null
+		val contentEncoding = if (compressionEnabled) selectContentEncoding(request)
+		if (contentEncoding !== null)
+			return '"' + resultTag + '-' + contentEncoding + '"'
+		else
+			return '"' + resultTag + '"'
+	}
+	
+	/**
+	 * Whether the given {@code If-None-Match} header value matches the entity tag. Weak comparison
+	 * is applied as required for this header.
+	 */
+	protected def boolean matchesEntityTag(String ifNoneMatch, String entityTag) {
+		if (ifNoneMatch.nullOrEmpty)
+			return false
+		for (candidate : ifNoneMatch.split(',').map[trim]) {
+			if (candidate == '*' || candidate == entityTag || candidate == 'W/' + entityTag)
+				return true
+		}
+		return false
+	}
+	
+	/**
+	 * Create the output stream for writing the result of the given service into the response. If
+	 * compression is enabled and the client accepts a supported content encoding, the stream compresses
+	 * the data as soon as it exceeds the compression threshold.
+	 */
+	protected def OutputStream getOutputStream(XtextServiceDispatcher.ServiceDescriptor service,
+			HttpServletResponse response) {
+		val context = service.context
+		if (compressionEnabled && context instanceof HttpServiceContext) {
+			response.addHeader('Vary', 'Accept-Encoding')
+			val contentEncoding = selectContentEncoding((context as HttpServiceContext).request)
+			if (contentEncoding !== null)
+				return new CompressingOutputStream(response, contentEncoding, compressionThreshold)
+		}
+		return response.outputStream
+	}
+	
+	/**
+	 * Select the content encoding to apply to the response according to the {@code Accept-Encoding}
+	 * header of the request. Returns {@code gzip}, {@code deflate}, or {@code null} if neither of them
+	 * is accepted.
+	 */
+	protected def String selectContentEncoding(HttpServletRequest request) {
+		val acceptEncoding = request.getHeader('Accept-Encoding')
+		if (acceptEncoding.nullOrEmpty)
+			return null
+		var Double gzipQuality
+		var Double deflateQuality
+		var Double wildcardQuality
+		for (entry : acceptEncoding.split(',')) {
+			val parts = entry.split(';')
+			val coding = parts.get(0).trim.toLowerCase
+			var quality = 1.0
+			for (var i = 1; i < parts.length; i++) {
+				val parameter = parts.get(i).trim
+				if (parameter.startsWith('q=')) {
+					try {
+						quality = Double.parseDouble(parameter.substring(2))
+					} catch (NumberFormatException exception) {
+						quality = 0.0
+					}
+				}
+			}
+			switch coding {
+				case 'gzip', case 'x-gzip': gzipQuality = Math.max(gzipQuality ?: 0.0, quality)
+				case 'deflate': deflateQuality = Math.max(deflateQuality ?: 0.0, quality)
+				case '*': wildcardQuality = Math.max(wildcardQuality ?: 0.0, quality)
+			}
 		}
+		// The wildcard applies only to codings that are not listed explicitly
+		val gzip = gzipQuality ?: wildcardQuality ?: 0.0
+		val deflate = deflateQuality ?: wildcardQuality ?: 0.0
+		if (gzip > 0 && gzip >= deflate)
+			return 'gzip'
+		else if (deflate > 0)
+			return 'deflate'
+		else
+			return null
 	}
 	
 	/**
@@ -0,0 +1,488 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.servlet
+
+import com.google.gson.Gson
+import com.google.gson.JsonElement
+import com.google.gson.JsonObject
+import com.google.gson.JsonParseException
+import com.google.gson.JsonParser
+import com.google.inject.Injector
+import java.io.IOException
+import java.net.URISyntaxException
+import java.util.Collections
+import java.util.Map
+import java.util.Set
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.RejectedExecutionException
+import javax.servlet.http.HttpSession
+import javax.websocket.CloseReason
+import javax.websocket.CloseReason.CloseCodes
+import javax.websocket.Endpoint
+import javax.websocket.EndpointConfig
+import javax.websocket.HandshakeResponse
+import javax.websocket.MessageHandler
+import javax.websocket.Session
+import javax.websocket.server.HandshakeRequest
+import javax.websocket.server.ServerEndpointConfig
+import org.apache.log4j.Logger
+import org.eclipse.emf.common.util.URI
+import org.eclipse.xtend.lib.annotations.FinalFieldsConstructor
+import org.eclipse.xtext.ide.ExecutorServiceProvider
+import org.eclipse.xtext.resource.IResourceServiceProvider
+import org.eclipse.xtext.web.server.IServiceContext
+import org.eclipse.xtext.web.server.IServiceResult
+import org.eclipse.xtext.web.server.ISession
+import org.eclipse.xtext.web.server.InvalidRequestException
+import org.eclipse.xtext.web.server.InvalidRequestException.InvalidDocumentStateException
+import org.eclipse.xtext.web.server.InvalidRequestException.PermissionDeniedException
+import org.eclipse.xtext.web.server.InvalidRequestException.ResourceNotFoundException
+import org.eclipse.xtext.web.server.InvalidRequestException.ServiceUnavailableException
+import org.eclipse.xtext.web.server.InvalidRequestException.UnknownLanguageException
+import org.eclipse.xtext.web.server.XtextServiceDispatcher
+import org.eclipse.xtext.web.server.model.AbstractCachedService
+import org.eclipse.xtext.web.server.model.IPrecomputationListener
+import org.eclipse.xtext.web.server.model.XtextWebDocument
+import org.eclipse.xtext.web.server.syntaxcoloring.HighlightingService
+import org.eclipse.xtext.web.server.validation.ValidationService
+
+/**
+ * A WebSocket endpoint for publishing the Xtext services. The client keeps one connection per editor
+ * and sends each service request as a Json object containing the request parameters including the
+ * {@code serviceType}, and an {@code id} that is repeated in the response. Responses have the form
+ * <code>{"id": ..., "result": ...}</code> or <code>{"id": ..., "error": status, "message": ...}</code>,
+ * where the status codes are the same as those of the {@link XtextServlet}.
+ *
+ * <p>In addition, the results of the highlighting and validation services are pushed to the client as
+ * soon as they have been precomputed for a document that has been accessed through the connection.
+ * Pushed messages have the form
+ * <code>{"resource": ..., "serviceType": ..., "stateId": ..., "result": ...}</code>.</p>
+ *
+ * <p>Register the endpoint when your web application is initialized, e.g. in the {@code init()}
+ * method of your {@link XtextServlet}:</p>
+ * <pre>
+ * val container = servletContext.getAttribute(ServerContainer.name) as ServerContainer
+ * container.addEndpoint(XtextWebSocketEndpoint.createConfig(XtextWebSocketEndpoint, XtextWebSocketEndpoint.DEFAULT_PATH))
+ * </pre>
+ *
+ * The endpoint uses the HTTP session of the handshake request if there is one, hence the documents
+ * are shared with the {@link XtextServlet}. Otherwise a separate session is created for the connection.
+ * Since browsers send cookies with WebSocket handshakes of any page, only handshakes from the origin of
+ * the server itself and from the origins passed to {@link #createConfig(Class, String, Set)} are accepted.
+ */
+class XtextWebSocketEndpoint extends Endpoint {
+
+	/**
+	 * The default path of the endpoint, which is also assumed by the JavaScript client.
+	 */
+	public static val DEFAULT_PATH = '/xtext-service-ws'
+
+	static val EXECUTOR_KEY = 'xtextWebSocket'
+
+	/**
+	 * Create the configuration for registering an endpoint of the given class at the given path.
+	 */
+	static def ServerEndpointConfig createConfig(Class<? extends XtextWebSocketEndpoint> endpointClass, String path) {
+		createConfig(endpointClass, path, emptySet)
+	}
+
+	/**
+	 * Create the configuration for registering an endpoint of the given class at the given path, accepting
+	 * handshakes from the given origins in addition to the origin of the server. Origins have the form
+	 * {@code scheme://host[:port]}.
+	 */
+	static def ServerEndpointConfig createConfig(Class<? extends XtextWebSocketEndpoint> endpointClass, String path,
+			Set<String> allowedOrigins) {
+		ServerEndpointConfig.Builder.create(endpointClass, path).configurator(new Configurator(allowedOrigins)).build
+	}
+
+	/**
+	 * Rejects handshakes from foreign origins and makes the HTTP session of the handshake request
+	 * available to the endpoint.
+	 */
+	static class Configurator extends ServerEndpointConfig.Configurator {
+
+		/**
+		 * User property set for connections whose handshake came from a foreign origin.
+		 */
+		public static val ORIGIN_REJECTED = Configurator.name + '.originRejected'
+
+		val Set<String> allowedOrigins
+
+		new() {
+			this(emptySet)
+		}
+
+		new(Set<String> allowedOrigins) {
+			this.allowedOrigins = allowedOrigins
+		}
+
+		/**
+		 * Reject handshakes with an opaque or malformed origin, e.g. from sandboxed frames or local files.
+		 * Requests without origin do not come from a browser and are accepted. Whether any other origin
+		 * is the origin of the server is checked in {@link #modifyHandshake(ServerEndpointConfig,
+		 * HandshakeRequest, HandshakeResponse) modifyHandshake}, since the host is not known here.
+		 */
+		override checkOrigin(String originHeaderValue) {
+			originHeaderValue === null || allowedOrigins.contains(originHeaderValue) || parseOrigin(originHeaderValue) !== null
+		}
+
+		override modifyHandshake(ServerEndpointConfig config, HandshakeRequest request, HandshakeResponse response) {
+			config.userProperties.remove(HttpSession.name)
+			config.userProperties.remove(ORIGIN_REJECTED)
+			val origin = getHeader(request, 'Origin')
+			if (origin !== null && !allowedOrigins.contains(origin) && !isSameOrigin(origin, getHeader(request, 'Host'))) {
+				// The connection is closed when it is opened, and the HTTP session is not exposed to it
+				config.userProperties.put(ORIGIN_REJECTED, origin)
+				return
+			}
+			val httpSession = request.httpSession
+			if (httpSession !== null)
+				config.userProperties.put(HttpSession.name, httpSession)
+		}
+
+		/**
+		 * Whether the given origin refers to the host given in the {@code Host} header of the request.
+		 */
+		protected def boolean isSameOrigin(String origin, String host) {
+			val originURI = parseOrigin(origin)
+			if (originURI === null || host.nullOrEmpty)
+				return false
+			val defaultPort = if (originURI.scheme == 'https') 443 else 80
+			val originPort = if (originURI.port >= 0) originURI.port else defaultPort
+			// IPv6 addresses are enclosed in brackets and contain colons themselves
+			val separator = host.lastIndexOf(':')
+			val hasPort = separator > host.lastIndexOf(']')
+			var hostPort = defaultPort
+			if (hasPort) {
+				try {
+					hostPort = Integer.parseInt(host.substring(separator + 1))
+				} catch (NumberFormatException exception) {
+					return false
+				}
+			}
+			val hostName = if (hasPort) host.substring(0, separator) else host
+			return hostName.equalsIgnoreCase(originURI.host) && hostPort == originPort
+		}
+
+		protected def java.net.URI parseOrigin(String origin) {
+			try {
+				val uri = new java.net.URI(origin)
+				if ((uri.scheme == 'http' || uri.scheme == 'https') && uri.host !== null)
+					return uri
+			} catch (URISyntaxException exception) {
+				// Not a valid origin
+			}
+			return null
+		}
+
+		private def String getHeader(HandshakeRequest request, String name) {
+			request.headers.entrySet.findFirst[key.equalsIgnoreCase(name)]?.value?.head
+		}
+
+	}
+
+	val LOG = Logger.getLogger(class)
+
+	val serviceProviderRegistry = IResourceServiceProvider.Registry.INSTANCE
+
+	val gson = new Gson
+
+	Session connection
+
+	ISession session
+
+	/**
+	 * The documents for which precomputed results are pushed to the client, indexed by resource id.
+	 */
+	val Map<String, Pair<XtextWebDocument, IPrecomputationListener>> observedDocuments = newHashMap
+
+	override onOpen(Session connection, EndpointConfig config) {
+		this.connection = connection
+		if (config.userProperties.containsKey(Configurator.ORIGIN_REJECTED)) {
+			LOG.debug('Rejected WebSocket connection from origin ' + config.userProperties.get(Configurator.ORIGIN_REJECTED))
+			try {
+				connection.close(new CloseReason(CloseCodes.VIOLATED_POLICY, 'The origin is not allowed.'))
+			} catch (IOException exception) {
+				LOG.debug('Failed to close WebSocket connection.', exception)
+			}
+			return
+		}
+		val httpSession = config.userProperties.get(HttpSession.name) as HttpSession
+		this.session =
+			if (httpSession !== null)
+				HttpSessionWrapper.of(httpSession)
+			else
+				new ConnectionSession
+		connection.addMessageHandler(String, new MessageHandler.Whole<String> {
+			override onMessage(String message) {
+				handleMessage(message)
+			}
+		})
+	}
+
+	override onClose(Session connection, CloseReason closeReason) {
+		stopObserving()
+	}
+
+	/**
+	 * Errors are not necessarily followed by {@link #onClose(Session, CloseReason)}, hence the
+	 * observed documents are released here, too.
+	 */
+	override onError(Session connection, Throwable throwable) {
+		LOG.debug('WebSocket error.', throwable)
+		stopObserving()
+	}
+
+	/**
+	 * Remove the precomputation listeners of this connection from all observed documents.
+	 */
+	protected def void stopObserving() {
+		synchronized (observedDocuments) {
+			for (observed : observedDocuments.values) {
+				observed.key.removePrecomputationListener(observed.value)
+			}
+			observedDocuments.clear()
+		}
+	}
+
+	/**
+	 * Parse a request message and process it in a separate thread, so long-running requests do not
+	 * block requests with higher priority.
+	 */
+	protected def void handleMessage(String message) {
+		var JsonElement id
+		try {
+			val request = new JsonParser().parse(message).asJsonObject
+			id = request.get('id')
+			val Map<String, String> parameters = newHashMap
+			for (entry : request.entrySet) {
+				if (entry.key != 'id' && entry.value.isJsonPrimitive)
+					parameters.put(entry.key, entry.value.asString)
+			}
+			val serviceContext = new MessageServiceContext(parameters, session)
+			val injector = getInjector(serviceContext)
+			val requestId = id
+			injector.getInstance(ExecutorServiceProvider).get(EXECUTOR_KEY).submit([
+				processRequest(requestId, serviceContext, injector)
+			] as Runnable)
+		} catch (JsonParseException exception) {
+			sendError(id, 400, 'Invalid message format.')
+		} catch (IllegalStateException exception) {
+			sendError(id, 400, 'Invalid message format.')
+		} catch (InvalidRequestException exception) {
+			sendError(id, 400, exception.message)
+		} catch (RejectedExecutionException exception) {
+			sendError(id, 503, 'The request could not be scheduled.')
+		}
+	}
+
+	/**
+	 * Invoke the service requested by the given context and send the result to the client.
+	 */
+	protected def void processRequest(JsonElement id, IServiceContext serviceContext, Injector injector) {
+		try {
+			val serviceDispatcher = injector.getInstance(XtextServiceDispatcher)
+			val service = serviceDispatcher.getService(serviceContext)
+			observeDocument(serviceContext)
+			val result = service.service.apply()
+			observeDocument(serviceContext)
+			sendResult(id, result)
+		} catch (ResourceNotFoundException exception) {
+			sendError(id, 404, exception.message)
+		} catch (InvalidDocumentStateException exception) {
+			sendError(id, 409, exception.message)
+		} catch (PermissionDeniedException exception) {
+			sendError(id, 403, exception.message)
+		} catch (ServiceUnavailableException exception) {
+			sendError(id, 503, exception.message, exception.retryAfter)
+		} catch (InvalidRequestException exception) {
+			sendError(id, 400, exception.message)
+		} catch (VirtualMachineError error) {
+			throw error
+		} catch (Throwable throwable) {
+			LOG.error('Error while processing WebSocket request.', throwable)
+			sendError(id, 500, throwable.message)
+		}
+	}
+
+	/**
+	 * Register a precomputation listener at the document addressed by the given context, if it
+	 * exists in the session and is not observed yet.
+	 */
+	protected def void observeDocument(IServiceContext serviceContext) {
+		val resourceId = serviceContext.getParameter('resource')
+		if (resourceId === null)
+			return;
+		val XtextWebDocument document = session.get(XtextWebDocument -> resourceId)
+		if (document === null)
+			return;
+		synchronized (observedDocuments) {
+			val observed = observedDocuments.get(resourceId)
+			if (observed?.key === document)
+				return;
+			if (observed !== null)
+				observed.key.removePrecomputationListener(observed.value)
+			val IPrecomputationListener listener = [ doc, service, result, stateId |
+				pushResult(resourceId, service, result, stateId)
+			]
+			document.addPrecomputationListener(listener)
+			observedDocuments.put(resourceId, document -> listener)
+		}
+	}
+
+	/**
+	 * Returns the service type under which results of the given precomputed service are pushed to
+	 * the client, or {@code null} if they should not be pushed.
+	 */
+	protected def String getPushedServiceType(AbstractCachedService<?> service) {
+		switch service {
+			HighlightingService: 'highlight'
+			ValidationService: 'validate'
+		}
+	}
+
+	protected def void pushResult(String resourceId, AbstractCachedService<?> service, IServiceResult result,
+			String stateId) {
+		val serviceType = getPushedServiceType(service)
+		if (serviceType === null)
+			return;
+		val message = new JsonObject
+		message.addProperty('resource', resourceId)
+		message.addProperty(IServiceContext.SERVICE_TYPE, serviceType)
+		message.addProperty('stateId', stateId)
+		message.add('result', gson.toJsonTree(result))
+		send(message)
+	}
+
+	protected def void sendResult(JsonElement id, IServiceResult result) {
+		val message = new JsonObject
+		message.add('id', id)
+		message.add('result', gson.toJsonTree(result))
+		send(message)
+	}
+
+	protected def void sendError(JsonElement id, int status, String errorMessage) {
+		sendError(id, status, errorMessage, null)
+	}
+
+	/**
+	 * Send an error message. If the request may be repeated later, the delay in seconds is given
+	 * in the {@code retryAfter} property.
+	 */
+	protected def void sendError(JsonElement id, int status, String errorMessage, Integer retryAfter) {
+		LOG.trace('Invalid WebSocket request: ' + errorMessage)
+		val message = new JsonObject
+		message.add('id', id)
+		message.addProperty('error', status)
+		message.addProperty('message', errorMessage)
+		if (retryAfter !== null)
+			message.addProperty('retryAfter', retryAfter)
+		send(message)
+	}
+
+	/**
+	 * Send a message to the client. Messages may be sent from different threads, e.g. when
+	 * precomputed results are pushed, hence the connection is locked while sending.
+	 */
+	protected def void send(JsonObject message) {
+		try {
+			synchronized (connection) {
+				if (connection.open)
+					connection.basicRemote.sendText(gson.toJson(message))
+			}
+		} catch (IOException exception) {
+			LOG.debug('Failed to send WebSocket message.', exception)
+		}
+	}
+
+	/**
+	 * Resolve the Guice injector for the language associated with the given context.
+	 */
+	protected def Injector getInjector(IServiceContext serviceContext) throws UnknownLanguageException {
+		var IResourceServiceProvider resourceServiceProvider
+		val emfURI = URI.createURI(serviceContext.getParameter('resource') ?: '')
+		val contentType = serviceContext.getParameter('contentType')
+		if (contentType.nullOrEmpty) {
+			resourceServiceProvider = serviceProviderRegistry.getResourceServiceProvider(emfURI)
+			if (resourceServiceProvider === null) {
+				if (emfURI.toString.empty)
+					throw new UnknownLanguageException('Unable to identify the Xtext language: missing parameter \'resource\' or \'contentType\'.')
+				else
+					throw new UnknownLanguageException('Unable to identify the Xtext language for resource ' + emfURI + '.')
+			}
+		} else {
+			resourceServiceProvider = serviceProviderRegistry.getResourceServiceProvider(emfURI, contentType)
+			if (resourceServiceProvider === null)
+				throw new UnknownLanguageException('Unable to identify the Xtext language for contentType ' + contentType + '.')
+		}
+		return resourceServiceProvider.get(Injector)
+	}
+
+	/**
+	 * Provides the parameters of a request message.
+	 */
+	@FinalFieldsConstructor
+	protected static class MessageServiceContext implements IServiceContext {
+
+		val Map<String, String> parameters
+
+		val ISession session
+
+		override getParameterKeys() {
+			Collections.unmodifiableSet(parameters.keySet)
+		}
+
+		override getParameter(String key) {
+			parameters.get(key)
+		}
+
+		override getSession() {
+			session
+		}
+
+	}
+
+	/**
+	 * Session store for connections that have been opened without an HTTP session.
+	 */
+	protected static class ConnectionSession implements ISession {
+
+		val Map<Object, Object> values = new ConcurrentHashMap
+
+		override <T> get(Object key) {
+			values.get(key) as T
+		}
+
+		override <T> get(Object key, ()=>T factory) {
+			synchronized (values) {
+				val sessionValue = get(key)
+				if (sessionValue !== null) {
+					return sessionValue
+				} else {
+					val factoryValue = factory.apply
+					put(key, factoryValue)
+					return factoryValue
+				}
+			}
+		}
+
+		override put(Object key, Object value) {
+			if (value === null)
+				values.remove(key)
+			else
+				values.put(key, value)
+		}
+
+		override remove(Object key) {
+			values.remove(key)
+		}
+
+	}
+
+}
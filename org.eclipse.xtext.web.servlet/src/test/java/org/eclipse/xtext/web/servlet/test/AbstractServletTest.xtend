@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.servlet.test
+
+import com.google.inject.Guice
+import com.google.inject.Injector
+import java.lang.reflect.Method
+import java.lang.reflect.Proxy
+import java.util.Map
+import java.util.concurrent.ConcurrentHashMap
+import javax.servlet.http.HttpSession
+import org.eclipse.xtext.testing.GlobalRegistries
+import org.eclipse.xtext.testing.GlobalRegistries.GlobalStateMemento
+import org.eclipse.xtext.util.DisposableRegistry
+import org.eclipse.xtext.util.Modules2
+import org.eclipse.xtext.web.example.statemachine.StatemachineRuntimeModule
+import org.eclipse.xtext.web.example.statemachine.StatemachineStandaloneSetup
+import org.eclipse.xtext.web.example.statemachine.ide.StatemachineIdeModule
+import org.eclipse.xtext.web.server.DefaultWebModule
+import org.junit.After
+import org.junit.Before
+
+/**
+ * Registers the statemachine language with the web services, and provides minimal implementations
+ * of the container interfaces used by the servlet and the WebSocket endpoint.
+ */
+abstract class AbstractServletTest {
+	
+	GlobalStateMemento globalState
+	
+	protected Injector injector
+	
+	@Before
+	def void setup() {
+		globalState = GlobalRegistries.makeCopyOfGlobalState
+		injector = new StatemachineStandaloneSetup {
+			override createInjector() {
+				Guice.createInjector(Modules2.mixin(new StatemachineRuntimeModule, new StatemachineIdeModule,
+					new DefaultWebModule))
+			}
+		}.createInjectorAndDoEMFRegistration
+	}
+	
+	@After
+	def void teardown() {
+		injector.getInstance(DisposableRegistry).dispose()
+		globalState.restoreGlobalState
+	}
+	
+	/**
+	 * Create an implementation of the given interface that delegates to the given handler. The
+	 * methods of {@link Object} are implemented based on the identity of the instance.
+	 */
+	static def <T> T mock(Class<T> type, (Method, Object[])=>Object handler) {
+		Proxy.newProxyInstance(type.classLoader, #[type]) [ proxy, method, args |
+			if (method.declaringClass == Object) {
+				switch method.name {
+					case 'equals': proxy === args.get(0)
+					case 'hashCode': System.identityHashCode(proxy)
+					default: type.simpleName + '@' + Integer.toHexString(System.identityHashCode(proxy))
+				}
+			} else {
+				handler.apply(method, args)
+			}
+		] as T
+	}
+	
+	protected def HttpSession createHttpSession() {
+		val Map<String, Object> attributes = new ConcurrentHashMap
+		mock(HttpSession) [ method, args |
+			switch method.name {
+				case 'getId': 'test-session'
+				case 'getAttribute': attributes.get(args.get(0))
+				case 'setAttribute':
+					if (args.get(1) === null) attributes.remove(args.get(0)) else attributes.put(args.get(0) as String, args.get(1))
+				case 'removeAttribute': attributes.remove(args.get(0))
+				default: throw new UnsupportedOperationException(method.name)
+			}
+		]
+	}
+	
+}
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.servlet.test
+
+import javax.servlet.http.HttpServletRequest
+import org.eclipse.xtext.web.servlet.CompressingOutputStream
+import org.eclipse.xtext.web.servlet.XtextServlet
+import org.junit.Test
+
+import static org.eclipse.xtext.web.servlet.test.AbstractServletTest.*
+import static org.junit.Assert.*
+
+class CompressionTest {
+	
+	static class TestServlet extends XtextServlet {
+		override selectContentEncoding(HttpServletRequest request) {
+			super.selectContentEncoding(request)
+		}
+	}
+	
+	protected def String selectContentEncoding(String acceptEncoding) {
+		val request = mock(HttpServletRequest) [ method, args |
+			if (method.name == 'getHeader' && args.get(0) == 'Accept-Encoding')
+				return acceptEncoding
+			throw new UnsupportedOperationException(method.name)
+		]
+		return new TestServlet().selectContentEncoding(request)
+	}
+	
+	@Test def testContentEncodingNegotiation() {
+		assertNull(selectContentEncoding(null))
+		assertNull(selectContentEncoding('identity'))
+		assertEquals('gzip', selectContentEncoding('gzip, deflate, br'))
+		assertEquals('gzip', selectContentEncoding('x-gzip'))
+		assertEquals('deflate', selectContentEncoding('deflate'))
+		assertEquals('deflate', selectContentEncoding('gzip;q=0.5, deflate;q=0.8'))
+		assertEquals('gzip', selectContentEncoding('*'))
+		assertNull(selectContentEncoding('gzip;q=0, deflate;q=0'))
+		assertNull(selectContentEncoding('*;q=0'))
+	}
+	
+	@Test def testExplicitCodingsOverrideWildcard() {
+		assertEquals('deflate', selectContentEncoding('gzip;q=0, *'))
+		assertEquals('deflate', selectContentEncoding('*, gzip;q=0'))
+		assertNull(selectContentEncoding('gzip;q=0, deflate;q=0, *'))
+		assertEquals('gzip', selectContentEncoding('deflate;q=0.2, *;q=0.5'))
+	}
+	
+	@Test def testSmallResponseNotCompressed() {
+		val recorder = new ResponseRecorder
+		val output = new CompressingOutputStream(recorder.response, 'gzip', 100)
+		output.write('short'.bytes)
+		output.close()
+		assertNull(recorder.headers.get('Content-Encoding'))
+		assertEquals('5', recorder.headers.get('Content-Length'))
+		assertEquals('short', recorder.text)
+	}
+	
+	@Test def testGzipResponse() {
+		assertCompressed('gzip')
+	}
+	
+	@Test def testDeflateResponse() {
+		assertCompressed('deflate')
+	}
+	
+	protected def void assertCompressed(String contentEncoding) {
+		val recorder = new ResponseRecorder
+		val output = new CompressingOutputStream(recorder.response, contentEncoding, 100)
+		val content = new StringBuilder
+		for (i : 0 ..< 100) {
+			content.append('line ').append(i).append('\n')
+		}
+		output.write(content.substring(0, 50).bytes)
+		assertEquals(0, recorder.body.length)
+		output.write(content.substring(50).bytes)
+		output.close()
+		output.close()
+		assertEquals(contentEncoding, recorder.headers.get('Content-Encoding'))
+		assertNull(recorder.headers.get('Content-Length'))
+		assertTrue(recorder.body.length < content.length)
+		assertEquals(content.toString, recorder.text)
+	}
+	
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.servlet.test
+
+import java.util.Collections
+import javax.servlet.http.HttpServletRequest
+import javax.servlet.http.HttpSession
+import org.eclipse.xtext.web.server.model.DocumentSynchronizer
+import org.eclipse.xtext.web.server.model.WebDocumentRegistry
+import org.eclipse.xtext.web.server.model.XtextWebDocument
+import org.eclipse.xtext.web.servlet.HttpServiceContext
+import org.junit.Test
+
+import static org.junit.Assert.*
+
+class HttpServiceContextTest extends AbstractServletTest {
+	
+	protected def HttpServletRequest createRequest(HttpSession session) {
+		mock(HttpServletRequest) [ m, args |
+			switch m.name {
+				case 'getPathInfo': '/validate'
+				case 'getContentType': null
+				case 'getParameterNames': Collections.emptyEnumeration
+				case 'getSession': session
+				default: throw new UnsupportedOperationException(m.name)
+			}
+		]
+	}
+	
+	@Test def testSessionIsSharedBetweenRequests() {
+		val httpSession = createHttpSession
+		val context1 = new HttpServiceContext(createRequest(httpSession))
+		val context2 = new HttpServiceContext(createRequest(httpSession))
+		assertSame(context1.session, context2.session)
+	}
+	
+	/**
+	 * Store the given document in the session and register it, using a separate request.
+	 */
+	protected def void storeDocument(HttpSession httpSession, XtextWebDocument document) {
+		val context = new HttpServiceContext(createRequest(httpSession))
+		context.session.put(XtextWebDocument -> document.resourceId, document)
+		injector.getInstance(WebDocumentRegistry).accessed(document, context.session)
+	}
+	
+	@Test def testDocumentIsEvictedFromSessionAfterRequest() {
+		val documentRegistry = injector.getInstance(WebDocumentRegistry)
+		documentRegistry.memoryBudget = 300
+		val httpSession = createHttpSession
+		storeDocument(httpSession, new XtextWebDocument('test1', injector.getInstance(DocumentSynchronizer)))
+		// The registry references the session weakly, and the first request has completed
+		System.gc()
+		val document2 = new XtextWebDocument('test2', injector.getInstance(DocumentSynchronizer))
+		storeDocument(httpSession, document2)
+		val session = new HttpServiceContext(createRequest(httpSession)).session
+		assertNull(session.get(XtextWebDocument -> 'test1'))
+		assertSame(document2, session.get(XtextWebDocument -> 'test2'))
+		assertEquals(1, documentRegistry.stats.evictionCount)
+	}
+	
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.servlet.test
+
+import com.google.common.io.ByteStreams
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.util.Map
+import java.util.concurrent.ConcurrentHashMap
+import java.util.zip.GZIPInputStream
+import java.util.zip.InflaterInputStream
+import javax.servlet.ServletOutputStream
+import javax.servlet.http.HttpServletResponse
+import org.eclipse.xtend.lib.annotations.Accessors
+
+import static org.eclipse.xtext.web.servlet.test.AbstractServletTest.*
+
+/**
+ * Records the status, headers and body written to an {@link HttpServletResponse}.
+ */
+class ResponseRecorder {
+	
+	@Accessors(PUBLIC_GETTER)
+	volatile int status = HttpServletResponse.SC_OK
+	
+	@Accessors(PUBLIC_GETTER)
+	val Map<String, String> headers = new ConcurrentHashMap
+	
+	@Accessors(PUBLIC_GETTER)
+	val HttpServletResponse response
+	
+	val body = new ByteArrayOutputStream
+	
+	volatile String characterEncoding = 'ISO-8859-1'
+	
+	volatile boolean committed
+	
+	new() {
+		val outputStream = new ServletOutputStream {
+			override write(int b) {
+				committed = true
+				body.write(b)
+			}
+		}
+		response = mock(HttpServletResponse) [ method, args |
+			switch method.name {
+				case 'setStatus': status = args.get(0) as Integer
+				case 'sendError': {
+					status = args.get(0) as Integer
+					committed = true
+				}
+				case 'setHeader', case 'addHeader': headers.put(args.get(0) as String, args.get(1) as String)
+				case 'setContentLength': headers.put('Content-Length', args.get(0).toString)
+				case 'setContentType': headers.put('Content-Type', args.get(0) as String)
+				case 'setCharacterEncoding': characterEncoding = args.get(0) as String
+				case 'getCharacterEncoding': return characterEncoding
+				case 'isCommitted': return committed
+				case 'getOutputStream': return outputStream
+				default: throw new UnsupportedOperationException(method.name)
+			}
+			return null
+		]
+	}
+	
+	/**
+	 * The raw bytes written to the response.
+	 */
+	def byte[] getBody() {
+		body.toByteArray
+	}
+	
+	/**
+	 * The body of the response, decoded according to its content encoding.
+	 */
+	def String getText() {
+		val input = switch headers.get('Content-Encoding') {
+			case 'gzip': new GZIPInputStream(new ByteArrayInputStream(getBody))
+			case 'deflate': new InflaterInputStream(new ByteArrayInputStream(getBody))
+			default: new ByteArrayInputStream(getBody)
+		}
+		return new String(ByteStreams.toByteArray(input), characterEncoding)
+	}
+	
+}
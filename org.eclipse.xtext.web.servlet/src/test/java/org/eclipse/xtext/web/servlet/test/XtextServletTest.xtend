@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.servlet.test
+
+import com.google.gson.JsonParser
+import java.util.Collections
+import java.util.Map
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import javax.servlet.AsyncContext
+import javax.servlet.ServletConfig
+import javax.servlet.ServletRequest
+import javax.servlet.ServletResponse
+import javax.servlet.http.HttpServletRequest
+import javax.servlet.http.HttpServletResponse
+import org.eclipse.xtext.web.servlet.XtextServlet
+import org.junit.After
+import org.junit.Test
+
+import static org.junit.Assert.*
+
+class XtextServletTest extends AbstractServletTest {
+	
+	/**
+	 * Servlet whose request processing can be blocked in order to simulate slow requests.
+	 */
+	static class BlockingServlet extends XtextServlet {
+		
+		package val release = new CountDownLatch(1)
+		
+		package volatile String processingThread
+		
+		override protected processRequest(HttpServletRequest req, HttpServletResponse resp) {
+			processingThread = Thread.currentThread.name
+			release.await(10, TimeUnit.SECONDS)
+		}
+		
+	}
+	
+	XtextServlet servlet
+	
+	@After
+	override teardown() {
+		servlet?.destroy()
+		super.teardown()
+	}
+	
+	protected def <T extends XtextServlet> T initServlet(T servlet, Map<String, String> initParameters) {
+		this.servlet = servlet
+		servlet.init(mock(ServletConfig) [ method, args |
+			switch method.name {
+				case 'getInitParameter': initParameters.get(args.get(0))
+				case 'getServletName': 'Xtext Services'
+				default: throw new UnsupportedOperationException(method.name)
+			}
+		])
+		return servlet
+	}
+	
+	protected def HttpServletRequest createRequest(String method, String serviceType, Map<String, String> parameters,
+			CountDownLatch completed) {
+		val session = createHttpSession
+		val AsyncContext asyncContext = mock(AsyncContext) [ m, args |
+			switch m.name {
+				case 'setTimeout': null
+				case 'complete': {
+					completed.countDown
+					null
+				}
+				default: throw new UnsupportedOperationException(m.name)
+			}
+		]
+		mock(HttpServletRequest) [ m, args |
+			switch m.name {
+				case 'getMethod': method
+				case 'getPathInfo': '/' + serviceType
+				case 'getRequestURI': '/xtext-service/' + serviceType
+				case 'getContentType': null
+				case 'getHeader': null
+				case 'getParameterNames': Collections.enumeration(parameters.keySet)
+				case 'getParameter': parameters.get(args.get(0))
+				case 'getSession': session
+				case 'isAsyncSupported': true
+				case 'startAsync': asyncContext
+				default: throw new UnsupportedOperationException(m.name)
+			}
+		]
+	}
+	
+	/**
+	 * Pass the request to the servlet the way the container does.
+	 */
+	protected def void handle(XtextServlet servlet, ServletRequest request, ServletResponse response) {
+		servlet.service(request, response)
+	}
+	
+	@Test def testAsyncRequest() {
+		initServlet(new XtextServlet, #{'enableAsync' -> 'true', 'asyncThreads' -> '2'})
+		val completed = new CountDownLatch(1)
+		val recorder = new ResponseRecorder
+		handle(servlet, createRequest('POST', 'validate', #{
+				'resource' -> 'test.statemachine',
+				'fullText' -> 'output signal foo state bar set foo = true end'
+			}, completed), recorder.response)
+		assertTrue(completed.await(10, TimeUnit.SECONDS))
+		assertEquals(HttpServletResponse.SC_OK, recorder.status)
+		val result = new JsonParser().parse(recorder.text).asJsonObject
+		assertEquals(0, result.getAsJsonArray('issues').size)
+	}
+	
+	@Test def testAsyncDispatch() {
+		val blockingServlet = initServlet(new BlockingServlet, #{'enableAsync' -> 'true'})
+		val completed = new CountDownLatch(1)
+		handle(blockingServlet, createRequest('GET', 'validate', emptyMap, completed), new ResponseRecorder().response)
+		// The container thread returns while the request is still being processed
+		assertEquals(1, completed.count)
+		blockingServlet.release.countDown
+		assertTrue(completed.await(10, TimeUnit.SECONDS))
+		assertTrue(blockingServlet.processingThread.startsWith('xtext-service-'))
+	}
+	
+	@Test def testOverloadRejected() {
+		val blockingServlet = initServlet(new BlockingServlet, #{
+			'enableAsync' -> 'true',
+			'asyncThreads' -> '1',
+			'asyncQueueSize' -> '1'
+		})
+		val completed = new CountDownLatch(3)
+		val running = new ResponseRecorder
+		val queued = new ResponseRecorder
+		val rejected = new ResponseRecorder
+		handle(blockingServlet, createRequest('GET', 'validate', emptyMap, completed), running.response)
+		handle(blockingServlet, createRequest('GET', 'validate', emptyMap, completed), queued.response)
+		handle(blockingServlet, createRequest('GET', 'validate', emptyMap, completed), rejected.response)
+		assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, rejected.status)
+		assertEquals(2, completed.count)
+		blockingServlet.release.countDown
+		assertTrue(completed.await(10, TimeUnit.SECONDS))
+		assertEquals(HttpServletResponse.SC_OK, running.status)
+		assertEquals(HttpServletResponse.SC_OK, queued.status)
+	}
+	
+}
@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.servlet.test
+
+import com.google.gson.JsonObject
+import com.google.gson.JsonParser
+import java.io.IOException
+import java.util.List
+import java.util.Map
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import javax.servlet.http.HttpSession
+import javax.websocket.CloseReason
+import javax.websocket.CloseReason.CloseCodes
+import javax.websocket.MessageHandler
+import javax.websocket.RemoteEndpoint
+import javax.websocket.Session
+import javax.websocket.server.HandshakeRequest
+import javax.websocket.server.ServerEndpointConfig
+import org.eclipse.xtext.web.server.model.DocumentSynchronizer
+import org.eclipse.xtext.web.server.model.IPrecomputationListener
+import org.eclipse.xtext.web.server.model.XtextWebDocument
+import org.eclipse.xtext.web.servlet.HttpSessionWrapper
+import org.eclipse.xtext.web.servlet.XtextWebSocketEndpoint
+import org.junit.Test
+
+import static org.junit.Assert.*
+
+class XtextWebSocketEndpointTest extends AbstractServletTest {
+	
+	val messages = new LinkedBlockingQueue<String>
+	
+	val List<MessageHandler> handlers = newArrayList
+	
+	CloseReason closeReason
+	
+	protected def HandshakeRequest createHandshakeRequest(String origin, String host, HttpSession httpSession) {
+		val Map<String, List<String>> headers = newHashMap('Host' -> #[host])
+		if (origin !== null)
+			headers.put('Origin', #[origin])
+		mock(HandshakeRequest) [ method, args |
+			switch method.name {
+				case 'getHeaders': headers
+				case 'getHttpSession': httpSession
+				default: throw new UnsupportedOperationException(method.name)
+			}
+		]
+	}
+	
+	protected def Session createConnection() {
+		val remote = mock(RemoteEndpoint.Basic) [ method, args |
+			if (method.name != 'sendText' || args.length != 1)
+				throw new UnsupportedOperationException(method.name)
+			messages.put(args.get(0) as String)
+			null
+		]
+		mock(Session) [ method, args |
+			switch method.name {
+				case 'isOpen': closeReason === null
+				case 'getBasicRemote': remote
+				case 'addMessageHandler': {
+					handlers += args.last as MessageHandler
+					null
+				}
+				case 'close': {
+					closeReason = args.get(0) as CloseReason
+					null
+				}
+				default: throw new UnsupportedOperationException(method.name)
+			}
+		]
+	}
+	
+	protected def ServerEndpointConfig handshake(String origin, String host, HttpSession httpSession) {
+		val config = XtextWebSocketEndpoint.createConfig(XtextWebSocketEndpoint, XtextWebSocketEndpoint.DEFAULT_PATH,
+			#{'https://editor.example.org'})
+		if (!config.configurator.checkOrigin(origin))
+			return null
+		config.configurator.modifyHandshake(config, createHandshakeRequest(origin, host, httpSession), null)
+		return config
+	}
+	
+	protected def JsonObject sendRequest(String message) {
+		(handlers.head as MessageHandler.Whole<String>).onMessage(message)
+		val response = messages.poll(10, TimeUnit.SECONDS)
+		assertNotNull('No response received.', response)
+		return new JsonParser().parse(response).asJsonObject
+	}
+	
+	@Test def testSameOriginHandshake() {
+		val httpSession = createHttpSession
+		val config = handshake('http://localhost:8080', 'localhost:8080', httpSession)
+		assertSame(httpSession, config.userProperties.get(HttpSession.name))
+		assertFalse(config.userProperties.containsKey(XtextWebSocketEndpoint.Configurator.ORIGIN_REJECTED))
+		assertNotNull(handshake('https://localhost', 'LOCALHOST:443', httpSession))
+		assertNotNull(handshake(null, 'localhost:8080', httpSession).userProperties.get(HttpSession.name))
+	}
+	
+	@Test def testConfiguredOriginHandshake() {
+		val httpSession = createHttpSession
+		val config = handshake('https://editor.example.org', 'localhost:8080', httpSession)
+		assertSame(httpSession, config.userProperties.get(HttpSession.name))
+	}
+	
+	@Test def testForeignOriginRejected() {
+		val httpSession = createHttpSession
+		for (origin : #['http://attacker.example.org', 'http://localhost:8081', 'http://localhost']) {
+			val config = handshake(origin, 'localhost:8080', httpSession)
+			assertNull(config.userProperties.get(HttpSession.name))
+			assertEquals(origin, config.userProperties.get(XtextWebSocketEndpoint.Configurator.ORIGIN_REJECTED))
+		}
+		val config = handshake('http://attacker.example.org', 'localhost:8080', httpSession)
+		new XtextWebSocketEndpoint().onOpen(createConnection, config)
+		assertEquals(CloseCodes.VIOLATED_POLICY, closeReason.closeCode)
+		assertTrue(handlers.empty)
+	}
+	
+	@Test def testOpaqueOriginRejected() {
+		assertNull(handshake('null', 'localhost:8080', createHttpSession))
+		assertNull(handshake('file:///index.html', 'localhost:8080', createHttpSession))
+	}
+	
+	@Test def testRequestResponse() {
+		val config = handshake('http://localhost:8080', 'localhost:8080', null)
+		new XtextWebSocketEndpoint().onOpen(createConnection, config)
+		val response = sendRequest('''{"id": 1, "serviceType": "validate", "resource": "test.statemachine",
+			"fullText": "output signal foo state bar set foo = true end"}''')
+		assertEquals(1, response.get('id').asInt)
+		assertEquals(0, response.getAsJsonObject('result').getAsJsonArray('issues').size)
+		
+		val error = sendRequest('{"id": 2, "serviceType": "unknown", "resource": "test.statemachine", "fullText": ""}')
+		assertEquals(2, error.get('id').asInt)
+		assertEquals(400, error.get('error').asInt)
+	}
+	
+	@Test def testListenersRemovedOnError() {
+		val httpSession = createHttpSession
+		val listenerCount = new AtomicInteger
+		val document = new XtextWebDocument('test.statemachine', new DocumentSynchronizer) {
+			override addPrecomputationListener(IPrecomputationListener listener) {
+				listenerCount.incrementAndGet
+				super.addPrecomputationListener(listener)
+			}
+			override removePrecomputationListener(IPrecomputationListener listener) {
+				listenerCount.decrementAndGet
+				super.removePrecomputationListener(listener)
+			}
+		}
+		HttpSessionWrapper.of(httpSession).put(XtextWebDocument -> 'test.statemachine', document)
+		val endpoint = new XtextWebSocketEndpoint
+		val connection = createConnection
+		endpoint.onOpen(connection, handshake('http://localhost:8080', 'localhost:8080', httpSession))
+		sendRequest('{"id": 1, "serviceType": "validate", "resource": "test.statemachine", "fullText": "state foo end"}')
+		assertEquals(1, listenerCount.get)
+		endpoint.onError(connection, new IOException('Connection reset'))
+		assertEquals(0, listenerCount.get)
+	}
+	
+}
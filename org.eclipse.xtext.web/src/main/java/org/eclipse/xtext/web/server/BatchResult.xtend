@@ -0,0 +1,22 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.server
+
+import java.util.List
+import org.eclipse.xtend.lib.annotations.Data
+
+/**
+ * Result object returned by the batch service. It contains the results of the individual
+ * requests of the batch in the order in which they were given.
+ */
+@Data
+class BatchResult implements IServiceResult {
+
+	List<IServiceResult> results
+
+}
@@ -7,9 +7,11 @@
  *******************************************************************************/
 package org.eclipse.xtext.web.server
 
+import org.eclipse.xtext.ide.ExecutorServiceProvider
 import org.eclipse.xtext.service.AbstractGenericModule
 import org.eclipse.xtext.web.server.generator.DefaultContentTypeProvider
 import org.eclipse.xtext.web.server.generator.IContentTypeProvider
+import org.eclipse.xtext.web.server.model.WebExecutorServiceProvider
 
 /**
  * Default Guice bindings for the web integration of Xtext.
@@ -20,4 +22,8 @@ class DefaultWebModule extends AbstractGenericModule {
 		DefaultContentTypeProvider
 	}
 	
+	def Class<? extends ExecutorServiceProvider> bindExecutorServiceProvider() {
+		WebExecutorServiceProvider
+	}
+	
 }
@@ -62,4 +62,27 @@ class InvalidRequestException extends RuntimeException {
 		new(String message, Throwable cause) { super(message, cause) }
 	}
 	
+	/**
+	 * The server is currently unable to process the request due to high load. The client may
+	 * repeat the request after the given number of seconds.
+	 */
+	static class ServiceUnavailableException extends InvalidRequestException {
+		
+		@Accessors(PUBLIC_GETTER)
+		val int retryAfter
+		
+		new(String message, int retryAfter) {
+			super(message)
+			this.retryAfter = retryAfter
+		}
+	}
+	
+	/**
+	 * The request could not be completed within its deadline.
+	 */
+	static class ServiceTimeoutException extends InvalidRequestException {
+		new(String message) { super(message) }
+		new(String message, Throwable cause) { super(message, cause) }
+	}
+	
 }
\ No newline at end of file
@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.server
+
+import com.google.inject.Singleton
+import java.util.Map
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Semaphore
+import java.util.concurrent.atomic.AtomicInteger
+import org.eclipse.xtend.lib.annotations.Accessors
+import org.eclipse.xtext.web.server.InvalidRequestException.ServiceUnavailableException
+
+/**
+ * Admission control for service requests. For each service type, the number of requests that are
+ * processed concurrently can be limited; further requests wait until a running request has finished.
+ * If the number of waiting requests exceeds the queue capacity of the service type, new requests are
+ * rejected with a {@link ServiceUnavailableException}.
+ * 
+ * <p>By default, the expensive services {@code assist}, {@code generate}, and {@code format} are
+ * limited. Use {@link #setLimit(String, int, int)} to configure the limits for other service types.</p>
+ */
+@Singleton
+class ServiceAdmissionControl {
+	
+	protected static class ServiceQueue {
+		val int maxConcurrent
+		val int maxQueued
+		val Semaphore running
+		val AtomicInteger pending = new AtomicInteger
+		
+		new(int maxConcurrent, int maxQueued) {
+			this.maxConcurrent = maxConcurrent
+			this.maxQueued = maxQueued
+			this.running = new Semaphore(maxConcurrent, true)
+		}
+	}
+	
+	val Map<String, ServiceQueue> queues = new ConcurrentHashMap
+	
+	/**
+	 * The number of seconds after which clients are advised to repeat rejected requests.
+	 */
+	@Accessors
+	int retryAfter = 1
+	
+	new() {
+		setLimit('assist', 8, 32)
+		setLimit('generate', 4, 16)
+		setLimit('format', 4, 16)
+	}
+	
+	/**
+	 * Limit the given service type to the given number of concurrently processed requests and
+	 * the given number of waiting requests.
+	 */
+	def void setLimit(String serviceType, int maxConcurrent, int maxQueued) {
+		if (maxConcurrent <= 0 || maxQueued < 0)
+			throw new IllegalArgumentException('Invalid limit for service type ' + serviceType)
+		queues.put(serviceType, new ServiceQueue(maxConcurrent, maxQueued))
+	}
+	
+	/**
+	 * Remove the limits for the given service type.
+	 */
+	def void removeLimit(String serviceType) {
+		queues.remove(serviceType)
+	}
+	
+	/**
+	 * Reject a request for the given service type if the respective queue is full.
+	 */
+	def void checkAdmission(String serviceType) throws ServiceUnavailableException {
+		val queue = queues.get(serviceType)
+		if (queue !== null && queue.pending.get >= queue.maxConcurrent + queue.maxQueued)
+			throw createException(serviceType)
+	}
+	
+	/**
+	 * Wrap the given service function such that the limits of the given service type are applied
+	 * when it is invoked.
+	 */
+	def ()=>IServiceResult limit(String serviceType, ()=>IServiceResult service) {
+		val queue = queues.get(serviceType)
+		if (queue === null)
+			return service
+		return [
+			if (queue.pending.incrementAndGet > queue.maxConcurrent + queue.maxQueued) {
+				queue.pending.decrementAndGet
+				throw createException(serviceType)
+			}
+			try {
+				queue.running.acquire()
+				try {
+					return service.apply()
+				} finally {
+					queue.running.release()
+				}
+			} finally {
+				queue.pending.decrementAndGet
+			}
+		]
+	}
+	
+	protected def ServiceUnavailableException createException(String serviceType) {
+		new ServiceUnavailableException('Too many requests for the service \'' + serviceType + '\'.', retryAfter)
+	}
+	
+}
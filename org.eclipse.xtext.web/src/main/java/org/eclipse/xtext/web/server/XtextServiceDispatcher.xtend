@@ -7,11 +7,17 @@
  *******************************************************************************/
 package org.eclipse.xtext.web.server
 
+import com.google.common.base.Charsets
 import com.google.common.base.Optional
+import com.google.common.hash.Hashing
 import com.google.inject.Inject
 import com.google.inject.Singleton
 import java.io.IOException
+import java.util.Collections
+import java.util.Map
 import java.util.Random
+import java.util.TreeSet
+import java.util.concurrent.TimeUnit
 import org.eclipse.emf.common.util.URI
 import org.eclipse.xtend.lib.annotations.Accessors
 import org.eclipse.xtend.lib.annotations.ToString
@@ -29,14 +35,17 @@ import org.eclipse.xtext.util.internal.Log
 import org.eclipse.xtext.web.server.InvalidRequestException.InvalidDocumentStateException
 import org.eclipse.xtext.web.server.InvalidRequestException.InvalidParametersException
 import org.eclipse.xtext.web.server.InvalidRequestException.ResourceNotFoundException
+import org.eclipse.xtext.web.server.InvalidRequestException.ServiceTimeoutException
 import org.eclipse.xtext.web.server.contentassist.ContentAssistService
 import org.eclipse.xtext.web.server.formatting.FormattingService
 import org.eclipse.xtext.web.server.generator.GeneratorService
 import org.eclipse.xtext.web.server.hover.HoverService
+import org.eclipse.xtext.web.server.model.FullTextDocumentCache
 import org.eclipse.xtext.web.server.model.IWebDocumentProvider
 import org.eclipse.xtext.web.server.model.IWebResourceSetProvider
 import org.eclipse.xtext.web.server.model.PrecomputedServiceRegistry
 import org.eclipse.xtext.web.server.model.UpdateDocumentService
+import org.eclipse.xtext.web.server.model.WebDocumentRegistry
 import org.eclipse.xtext.web.server.model.XtextWebDocument
 import org.eclipse.xtext.web.server.model.XtextWebDocumentAccess
 import org.eclipse.xtext.web.server.occurrences.OccurrencesService
@@ -66,6 +75,11 @@ import org.eclipse.xtext.web.server.validation.ValidationService
 @Log
 class XtextServiceDispatcher {
 	
+	/**
+	 * The service types that can be executed within a batch request.
+	 */
+	protected static val BATCHABLE_SERVICE_TYPES = #{'validate', 'highlight', 'occurrences', 'hover', 'generate', 'assist'}
+	
 	/**
 	 * Service metadata, including a function for actually invoking the service.
 	 */
@@ -93,6 +107,57 @@ class XtextServiceDispatcher {
 		 * conflict with another request.
 		 */
 		boolean hasConflict
+		
+		/**
+		 * A tag identifying the result of the service, or {@code null} if the result is not determined
+		 * by the request parameters and the document state alone. Equal tags imply equal results, so
+		 * a transport may skip invoking the service if the client already has the result for a tag.
+		 */
+		String resultTag
+	}
+	
+	/**
+	 * Service context for a single request within a batch. The parameters of the batch request
+	 * are inherited, and parameters prefixed with the service type and a dot, e.g.
+	 * {@code occurrences.caretOffset}, override them. All requests of a batch share the
+	 * same document access.
+	 */
+	protected static class BatchRequestContext implements IServiceContext {
+		
+		val IServiceContext batchContext
+		
+		val Map<String, String> parameters = newHashMap
+		
+		@Accessors(PUBLIC_GETTER)
+		val XtextWebDocumentAccess documentAccess
+		
+		new(IServiceContext batchContext, String serviceType, XtextWebDocumentAccess documentAccess) {
+			this.batchContext = batchContext
+			this.documentAccess = documentAccess
+			val prefix = serviceType + '.'
+			for (key : batchContext.parameterKeys) {
+				if (key != 'requests' && !key.startsWith(prefix))
+					parameters.put(key, batchContext.getParameter(key))
+			}
+			for (key : batchContext.parameterKeys) {
+				if (key.startsWith(prefix))
+					parameters.put(key.substring(prefix.length), batchContext.getParameter(key))
+			}
+			parameters.put(IServiceContext.SERVICE_TYPE, serviceType)
+		}
+		
+		override getParameterKeys() {
+			Collections.unmodifiableSet(parameters.keySet)
+		}
+		
+		override getParameter(String key) {
+			parameters.get(key)
+		}
+		
+		override getSession() {
+			batchContext.session
+		}
+		
 	}
 	
 	
@@ -116,12 +181,16 @@ class XtextServiceDispatcher {
 	@Inject IResourceFactory resourceFactory
 	@Inject OperationCanceledManager operationCanceledManager
 	@Inject XtextWebDocumentAccess.Factory documentAccessFactory
+	@Inject ServiceAdmissionControl admissionControl
+	@Inject FullTextDocumentCache fullTextDocumentCache
+	@Inject WebDocumentRegistry documentRegistry
 	val randomGenerator = new Random
 	
 	@Inject
 	protected def void registerPreComputedServices(PrecomputedServiceRegistry registry) {
-		registry.addPrecomputedService(highlightingService)
-		registry.addPrecomputedService(validationService)
+		// Highlighting is started first, since it is needed to display the document properly
+		registry.addPrecomputedService(highlightingService, 1, emptyList)
+		registry.addPrecomputedService(validationService, 0, emptyList)
 	}
 	
 	/**
@@ -146,9 +215,11 @@ class XtextServiceDispatcher {
 			LOG.trace('xtext-service/' + serviceType + stringParams)
 		}
 		
+		admissionControl.checkAdmission(serviceType)
 		try {
 			return createServiceDescriptor(serviceType, context) => [
 				it.context = context
+				service = admissionControl.limit(serviceType, service)
 			]
 		} catch (InvalidDocumentStateException ire) {
 			LOG.trace('Invalid document state (' + serviceType + ')')
@@ -188,6 +259,8 @@ class XtextServiceDispatcher {
 				getFormattingService(context)
 			case 'generate':
 				getGeneratorService(context)
+			case 'batch':
+				getBatchService(context)
 			default:
 				throw new InvalidParametersException('The service type \'' + serviceType + '\' is not supported.')
 		}
@@ -241,6 +314,7 @@ class XtextServiceDispatcher {
 			// If the resource does not exist, create a dummy resource for the given full text
 			document = getFullTextDocument(fullText, resourceId, context)
 		}
+		documentRegistry.accessed(document, context.session)
 		val documentAccess = documentAccessFactory.create(document, context.getParameter('requiredStateId'), false)
 		val result = new ServiceDescriptor => [
 			hasSideEffects = true
@@ -329,13 +403,23 @@ class XtextServiceDispatcher {
 	protected def getValidationService(IServiceContext context)
 			throws InvalidRequestException {
 		val document = getDocumentAccess(context)
+		val baseStateId = context.getParameter('baseStateId')
+		val tag = getResultTag(context, document)
 		new ServiceDescriptor => [
+			resultTag = tag
 			service = [
-				try {
-					validationService.getResult(document)
-				} catch (Throwable throwable) {
-					handleError(throwable)
-				}
+				document.coalesce(tag) [
+					try {
+						validationService.getResult(document, baseStateId) [ previous, result |
+							if (previous !== null)
+								validationService.createDelta(previous, result, baseStateId)
+							else
+								result
+						]
+					} catch (Throwable throwable) {
+						handleError(throwable)
+					}
+				]
 			]
 		]
 	}
@@ -350,16 +434,20 @@ class XtextServiceDispatcher {
 		val selectionEnd = context.getInt('selectionEnd', Optional.of(selectionStart))
 		val selection = new TextRegion(selectionStart, Math.max(selectionEnd - selectionStart, 0))
 		val proposal = context.getParameter('proposal')
+		val tag = getResultTag(context, document)
 		new ServiceDescriptor => [
+			resultTag = tag
 			service = [
-				try {
-					if (proposal.nullOrEmpty)
-						hoverService.getHover(document, offset)
-					else
-						hoverService.getHover(document, proposal, selection, offset)
-				} catch (Throwable throwable) {
-					handleError(throwable)
-				}
+				document.coalesce(tag) [
+					try {
+						if (proposal.nullOrEmpty)
+							hoverService.getHover(document, offset)
+						else
+							hoverService.getHover(document, proposal, selection, offset)
+					} catch (Throwable throwable) {
+						handleError(throwable)
+					}
+				]
 			]
 		]
 	}
@@ -367,13 +455,26 @@ class XtextServiceDispatcher {
 	protected def getHighlightingService(IServiceContext context)
 			throws InvalidRequestException {
 		val document = getDocumentAccess(context)
+		val compact = getBoolean(context, 'compact', Optional.of(false))
+		val baseStateId = context.getParameter('baseStateId')
+		val tag = getResultTag(context, document)
 		new ServiceDescriptor => [
+			resultTag = tag
 			service = [
-				try {
-					highlightingService.getResult(document)
-				} catch (Throwable throwable) {
-					handleError(throwable)
-				}
+				document.coalesce(tag) [
+					try {
+						highlightingService.getResult(document, baseStateId) [ previous, result |
+							if (previous !== null)
+								highlightingService.createDelta(previous, result, baseStateId)
+							else if (compact)
+								highlightingService.toCompactResult(result)
+							else
+								result
+						]
+					} catch (Throwable throwable) {
+						handleError(throwable)
+					}
+				]
 			]
 		]
 	}
@@ -384,13 +485,17 @@ class XtextServiceDispatcher {
 		val offset = context.getInt('caretOffset', Optional.of(0))
 		if (offset < 0)
 			throw new InvalidParametersException('The parameter \'offset\' must not be negative.')
+		val tag = getResultTag(context, document)
 		new ServiceDescriptor => [
+			resultTag = tag
 			service = [
-				try {
-					occurrencesService.findOccurrences(document, offset)
-				} catch (Throwable throwable) {
-					handleError(throwable)
-				}
+				document.coalesce(tag) [
+					try {
+						occurrencesService.findOccurrences(document, offset)
+					} catch (Throwable throwable) {
+						handleError(throwable)
+					}
+				]
 			]
 		]
 	}
@@ -436,39 +541,110 @@ class XtextServiceDispatcher {
 		val document = getDocumentAccess(context)
 		val allArtifacts = getBoolean(context, 'allArtifacts', Optional.of(false))
 		val includeContent = getBoolean(context, 'includeContent', Optional.of(true))
+		val tag = getResultTag(context, document)
 		new ServiceDescriptor => [
+			resultTag = tag
 			if (allArtifacts) {
 				service = [
-					try {
-						generatorService.getResult(document, includeContent)
-					} catch (Throwable throwable) {
-						handleError(throwable)
-					}
+					document.coalesce(tag) [
+						try {
+							generatorService.getResult(document, includeContent)
+						} catch (Throwable throwable) {
+							handleError(throwable)
+						}
+					]
 				]
 			} else {
 				val artifactId = context.getParameter('artifact')
 				service = [
-					try {
-						generatorService.getArtifact(document, artifactId, includeContent)
-					} catch (Throwable throwable) {
-						handleError(throwable)
-					}
+					document.coalesce(tag) [
+						try {
+							generatorService.getArtifact(document, artifactId, includeContent)
+						} catch (Throwable throwable) {
+							handleError(throwable)
+						}
+					]
 				]
 			}
 		]
 	}
 	
+	/**
+	 * Create a service that executes multiple requests on the same document while holding the
+	 * document lock only once. The parameter 'requests' holds a comma-separated list of service types;
+	 * the results are returned in the same order. Only the service types accepted by
+	 * {@link #isBatchable(String, ServiceDescriptor)} can be batched.
+	 */
+	protected def getBatchService(IServiceContext context)
+			throws InvalidRequestException {
+		val requests = context.getParameter('requests')
+		if (requests.nullOrEmpty)
+			throw new InvalidParametersException('The parameter \'requests\' is required.')
+		val document = getDocumentAccess(context)
+		val batch = <ServiceDescriptor>newArrayList
+		val serviceTypes = new TreeSet<String>
+		for (serviceType : requests.split(',').map[trim].filter[!empty]) {
+			if (serviceType == 'batch')
+				throw new InvalidParametersException('Batch requests cannot be nested.')
+			admissionControl.checkAdmission(serviceType)
+			val requestContext = new BatchRequestContext(context, serviceType, document)
+			val descriptor = createServiceDescriptor(serviceType, requestContext)
+			if (!isBatchable(serviceType, descriptor))
+				throw new InvalidParametersException('The service type \'' + serviceType + '\' cannot be used in a batch request.')
+			descriptor.context = requestContext
+			batch += descriptor
+			serviceTypes += serviceType
+		}
+		val batchDescriptor = new ServiceDescriptor
+		var ()=>IServiceResult batchService = [
+			try {
+				new BatchResult(document.batchReadOnly[
+					batch.map[ descriptor | descriptor.service.apply() ].toList
+				])
+			} catch (Throwable throwable) {
+				batchDescriptor.handleError(throwable)
+			}
+		]
+		// The limits of the contained service types are applied before the document lock is acquired,
+		// and always in the same order, so that waiting for admission cannot lead to a deadlock
+		for (serviceType : serviceTypes) {
+			batchService = admissionControl.limit(serviceType, batchService)
+		}
+		batchDescriptor.service = batchService
+		return batchDescriptor
+	}
+	
+	/**
+	 * Whether the given service can be executed within a batch request. The batch holds the document
+	 * lock while executing its services, and that lock is not reentrant. Therefore only read-only
+	 * services that work on the shared document access of the batch are accepted; services that
+	 * create their own document access, such as 'load', would wait for the batch forever.
+	 * Override this method together with {@link #createServiceDescriptor(String, IServiceContext)}
+	 * to make additional services batchable.
+	 */
+	protected def boolean isBatchable(String serviceType, ServiceDescriptor descriptor) {
+		BATCHABLE_SERVICE_TYPES.contains(serviceType) && !descriptor.hasSideEffects
+	}
+	
 	/**
 	 * Retrieve the document access for the given service context. If the 'fullText' parameter is given,
-	 * a new document containing that text is created. Otherwise the 'resource' parameter is used
+	 * a document containing that text is created or taken from the {@link FullTextDocumentCache}. Otherwise the 'resource' parameter is used
 	 * to load a resource and put it into the session store.
 	 */
 	protected def getDocumentAccess(IServiceContext context)
 			throws InvalidRequestException {
+		if (context instanceof BatchRequestContext)
+			return context.documentAccess
 		var XtextWebDocument document
 		var initializedFromFullText = false
 		if (context.parameterKeys.contains('fullText')) {
-			document = getFullTextDocument(context.getParameter('fullText'), context.resourceID, context)
+			val fullText = context.getParameter('fullText')
+			if (isFullTextDocumentCacheable(context))
+				document = fullTextDocumentCache.get(fileExtensionProvider.primaryFileExtension, fullText, [
+					getFullTextDocument(fullText, null, context)
+				])
+			else
+				document = getFullTextDocument(fullText, context.resourceID, context)
 			initializedFromFullText = true
 		} else if (context.parameterKeys.contains('resource')) {
 			document = getResourceDocument(context.resourceID, context)
@@ -477,7 +653,59 @@ class XtextServiceDispatcher {
 		} else {
 			throw new InvalidParametersException('At least one of the parameters \'resource\' and \'fullText\' must be specified.')
 		}
-		return documentAccessFactory.create(document, context.getParameter('requiredStateId'), initializedFromFullText)
+		if (document.resourceId !== null)
+			documentRegistry.accessed(document, context.session)
+		val documentAccess = documentAccessFactory.create(document, context.getParameter('requiredStateId'),
+				initializedFromFullText)
+		documentAccess.setTimeout(getTimeout(context), TimeUnit.MILLISECONDS)
+		return documentAccess
+	}
+	
+	/**
+	 * Whether the document created from the 'fullText' parameter of the given request can be shared
+	 * through the {@link FullTextDocumentCache}. This is the case for requests that do not refer to
+	 * a resource and do not modify the document, i.e. neither formatting nor applying a text delta.
+	 */
+	protected def boolean isFullTextDocumentCacheable(IServiceContext context) {
+		context.resourceID === null && context.getParameter(IServiceContext.SERVICE_TYPE) != 'format'
+			&& !context.parameterKeys.contains('deltaText')
+	}
+	
+	/**
+	 * Determine the timeout in milliseconds for the service requested with the given context. The
+	 * parameter 'timeoutMs' overrides the {@link #getDefaultTimeout(String) default timeout}
+	 * of the service type. Zero means no timeout.
+	 */
+	protected def int getTimeout(IServiceContext context) throws InvalidRequestException {
+		val serviceType = context.getParameter(IServiceContext.SERVICE_TYPE)
+		val timeout = context.getInt('timeoutMs', Optional.of(getDefaultTimeout(serviceType)))
+		if (timeout < 0)
+			throw new InvalidParametersException('The parameter \'timeoutMs\' must not be negative.')
+		return timeout
+	}
+	
+	/**
+	 * The timeout in milliseconds that is applied to the given service type if the client
+	 * does not specify one. The default is zero, i.e. no timeout.
+	 */
+	protected def int getDefaultTimeout(String serviceType) {
+		0
+	}
+	
+	/**
+	 * Compute a tag for the result of a service that is fully determined by the document state and
+	 * the request parameters. A tag is available only if the request requires a state id that matches
+	 * the current state of the document.
+	 */
+	protected def String getResultTag(IServiceContext context, XtextWebDocumentAccess document) {
+		if (context instanceof BatchRequestContext || !document.hasRequiredState)
+			return null
+		val hasher = Hashing.murmur3_128.newHasher
+		for (key : context.parameterKeys.filter[it != 'timeoutMs'].sort) {
+			hasher.putString(key, Charsets.UTF_8).putByte(0 as byte)
+			hasher.putString(context.getParameter(key) ?: '', Charsets.UTF_8).putByte(0 as byte)
+		}
+		return hasher.hash.toString
 	}
 	
 	/**
@@ -603,4 +831,9 @@ class XtextServiceDispatcher {
 		return new ServiceConflictResult('invalidStateId')
 	}
 	
+	protected def dispatch handleError(ServiceDescriptor service, ServiceTimeoutException exception) {
+		LOG.trace('Service timed out (' + service.context.getParameter(IServiceContext.SERVICE_TYPE) + ')')
+		return new ServiceConflictResult('timeout')
+	}
+	
 }
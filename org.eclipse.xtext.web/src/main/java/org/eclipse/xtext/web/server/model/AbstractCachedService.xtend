@@ -24,6 +24,23 @@ abstract class AbstractCachedService<T extends IServiceResult> {
 	def T getResult(XtextWebDocumentAccess it) {
 		getCachedServiceResult(this, true)
 	}
+	
+	/**
+	 * Obtain the current result and pass it to the given function together with the result that
+	 * was computed for the state with the given id. If no result is retained for that state,
+	 * {@code null} is passed as first argument to the function.
+	 */
+	def <R> R getResult(XtextWebDocumentAccess it, String baseStateId, (T, T)=>R function) {
+		getCachedServiceResult(this, baseStateId, function)
+	}
+
+	/**
+	 * Whether clients may request the difference between the current result and a result computed
+	 * for a previous state. Only the results of such services are retained by the document.
+	 */
+	def boolean isDeltaSupported() {
+		false
+	}
 
 	/**
 	 * Perform the actual computations to obtain a result. This method should not be called
@@ -0,0 +1,32 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.server.model
+
+import org.eclipse.xtend.lib.annotations.FinalFieldsConstructor
+import org.eclipse.xtext.util.CancelIndicator
+
+/**
+ * Cancel indicator that reports cancellation when the delegate indicator is canceled or when
+ * the given deadline has passed. The deadline is given in terms of {@link System#nanoTime()}.
+ */
+@FinalFieldsConstructor
+class DeadlineCancelIndicator implements CancelIndicator {
+	
+	val CancelIndicator delegate
+	
+	val long deadline
+	
+	override isCanceled() {
+		delegate.canceled || isExpired
+	}
+	
+	def boolean isExpired() {
+		System.nanoTime - deadline >= 0
+	}
+	
+}
@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.server.model
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import com.google.inject.Inject
+import com.google.inject.Singleton
+import java.lang.ref.WeakReference
+import java.util.Collections
+import java.util.Set
+import java.util.WeakHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+import org.eclipse.xtend.lib.annotations.Accessors
+import org.eclipse.xtext.util.DisposableRegistry
+import org.eclipse.xtext.util.IDisposable
+import org.eclipse.xtext.util.internal.Log
+
+/**
+ * Policy for releasing the resources of documents that have not been accessed for some time. When a
+ * document has been idle for longer than the {@link #getIdleTimeout() idle timeout}, it is
+ * {@link XtextWebDocument#passivate() passivated}, i.e. its resource is unloaded and only the text,
+ * the state identifier and the dirty flag are kept. The resource is parsed again on the next access.
+ * Documents that are not associated with a resource id are never passivated.
+ */
+@Log
+@Singleton
+class DocumentPassivationPolicy implements IDisposable {
+	
+	/**
+	 * The time in milliseconds after which an idle document is passivated. Zero disables passivation.
+	 */
+	@Accessors
+	volatile long idleTimeout = TimeUnit.MINUTES.toMillis(30)
+	
+	/** Documents for which an idle check is scheduled. */
+	val Set<XtextWebDocument> scheduledDocuments = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap))
+	
+	ScheduledExecutorService scheduler
+	
+	@Inject
+	protected def void registerTo(DisposableRegistry disposableRegistry) {
+		disposableRegistry.register(this)
+	}
+	
+	/**
+	 * Record an access to the given document and schedule an idle check if necessary.
+	 */
+	def void accessed(XtextWebDocument document) {
+		document.recordAccess()
+		if (idleTimeout > 0 && isPassivationAllowed(document) && scheduledDocuments.add(document))
+			schedule(new WeakReference(document), idleTimeout)
+	}
+	
+	/**
+	 * Whether the given document may be passivated. The default allows passivation for all
+	 * documents that are associated with a resource id.
+	 */
+	protected def boolean isPassivationAllowed(XtextWebDocument document) {
+		document.resourceId !== null
+	}
+	
+	protected def void schedule(WeakReference<XtextWebDocument> reference, long delay) {
+		try {
+			getScheduler.schedule([checkIdle(reference)] as Runnable, delay, TimeUnit.MILLISECONDS)
+		} catch (RejectedExecutionException exception) {
+			val document = reference.get
+			if (document !== null)
+				scheduledDocuments.remove(document)
+		}
+	}
+	
+	/**
+	 * Passivate the referenced document if it is still idle, or schedule another check otherwise.
+	 * The document is skipped if its lock is currently held.
+	 */
+	protected def void checkIdle(WeakReference<XtextWebDocument> reference) {
+		val document = reference.get
+		if (document === null)
+			return
+		try {
+			val timeout = idleTimeout
+			if (timeout <= 0) {
+				scheduledDocuments.remove(document)
+				return
+			}
+			val remainingTime = document.lastAccessTime + timeout - System.currentTimeMillis
+			if (remainingTime > 0) {
+				schedule(reference, remainingTime)
+				return
+			}
+			val synchronizer = document.synchronizer
+			if (!synchronizer.tryAcquireLockUncancelable(true, 0, TimeUnit.MILLISECONDS)) {
+				schedule(reference, timeout)
+				return
+			}
+			try {
+				scheduledDocuments.remove(document)
+				if (document.passivate())
+					LOG.trace('Passivated idle document ' + document.resourceId)
+			} finally {
+				synchronizer.releaseLock(true)
+			}
+		} catch (RuntimeException exception) {
+			scheduledDocuments.remove(document)
+			LOG.error('Error while passivating document.', exception)
+		}
+	}
+	
+	protected def synchronized ScheduledExecutorService getScheduler() {
+		if (scheduler === null) {
+			val threadFactory = new ThreadFactoryBuilder().setNameFormat('xtext-passivation-%d').setDaemon(true).build
+			scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory)
+		}
+		return scheduler
+	}
+	
+	override synchronized dispose() {
+		scheduler?.shutdownNow()
+		scheduler = null
+		scheduledDocuments.clear()
+	}
+	
+}
@@ -0,0 +1,42 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.server.model
+
+import com.google.common.collect.ImmutableMap
+import java.util.Map
+import org.eclipse.xtend.lib.annotations.Data
+import org.eclipse.xtext.web.server.IServiceResult
+
+/**
+ * Immutable view of a document in a specific state. A snapshot is published by the {@link XtextWebDocument}
+ * once the background work that follows a modification has finished, and it is extended whenever a result
+ * of an {@link AbstractCachedService} is computed for the same state. Requests that require the state
+ * of a snapshot can obtain cached results from it without acquiring the document lock. The text is not
+ * part of the snapshot, since copying it on every publication would be too expensive for large documents.
+ */
+@Data
+class DocumentSnapshot {
+	
+	String stateId
+	
+	ImmutableMap<AbstractCachedService<?>, IServiceResult> serviceResults
+	
+	new(String stateId, Map<AbstractCachedService<?>, IServiceResult> serviceResults) {
+		this.stateId = stateId
+		this.serviceResults = ImmutableMap.copyOf(serviceResults.filter[key, value | value !== null])
+	}
+	
+	/**
+	 * Return the result of the given service contained in this snapshot, or {@code null} if
+	 * it has not been computed yet.
+	 */
+	def <T extends IServiceResult> T getServiceResult(AbstractCachedService<T> service) {
+		serviceResults.get(service) as T
+	}
+	
+}
@@ -9,6 +9,7 @@ package org.eclipse.xtext.web.server.model
 
 import com.google.inject.Inject
 import java.util.concurrent.Semaphore
+import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicInteger
 import org.eclipse.xtend.lib.annotations.Accessors
 import org.eclipse.xtext.service.OperationCanceledManager
@@ -19,10 +20,15 @@ import org.eclipse.xtext.util.CancelIndicator
  * access to a document. It holds the cancelation status and locking information. The lock
  * is not bound to a thread, so it is possible for one thread to call {@link #acquireLock(boolean)}
  * and for another thread to call {@link #releaseLock()}.
+ * 
+ * <p>This implementation grants exclusive access to every lock holder, even if shared access is
+ * requested. Use {@link ReadWriteDocumentSynchronizer} to let read-only work units run in parallel.</p>
  */
 class DocumentSynchronizer implements CancelIndicator {
 	
-	val semaphore = new Semaphore(1, true)
+	val int maxPermits
+	
+	val Semaphore semaphore
 	
     val waitingPriorityJobs = new AtomicInteger
 
@@ -31,12 +37,36 @@ class DocumentSynchronizer implements CancelIndicator {
 	@Accessors
     volatile boolean canceled
     
+    new() {
+    	this(1)
+    }
+    
+    /**
+     * Create a synchronizer whose lock can be shared by up to {@code maxPermits} holders that do
+     * not request exclusive access.
+     */
+    protected new(int maxPermits) {
+    	this.maxPermits = maxPermits
+    	this.semaphore = new Semaphore(maxPermits, true)
+    }
+    
+    /**
+     * Acquire the lock for exclusive access.
+     */
     def acquireLock(boolean priority) {
+    	acquireLock(priority, true)
+    }
+    
+    /**
+     * Acquire the lock. If {@code exclusive} is {@code false}, the lock may be shared with other
+     * holders that do not require exclusive access. Priority requests cancel the current lock holders.
+     */
+    def acquireLock(boolean priority, boolean exclusive) {
     	if (priority) {
 			waitingPriorityJobs.incrementAndGet()
 			canceled = true
 		}
-		semaphore.acquire()
+		semaphore.acquire(getPermits(exclusive))
 		if (priority) {
 			if (waitingPriorityJobs.decrementAndGet() == 0)
 				canceled = false
@@ -45,10 +75,77 @@ class DocumentSynchronizer implements CancelIndicator {
 		}
     }
     
+    /**
+     * Try to acquire the lock for exclusive access within the given time.
+     */
+    def boolean tryAcquireLock(boolean priority, long timeout, TimeUnit unit) {
+    	tryAcquireLock(priority, true, timeout, unit)
+    }
+    
+    /**
+     * Try to acquire the lock within the given time. Returns {@code false} if the lock could not be
+     * acquired in time. As with {@link #acquireLock(boolean, boolean)}, the lock is held when a
+     * cancellation exception is thrown.
+     */
+    def boolean tryAcquireLock(boolean priority, boolean exclusive, long timeout, TimeUnit unit) {
+    	if (priority) {
+			waitingPriorityJobs.incrementAndGet()
+			canceled = true
+		}
+		val acquired = semaphore.tryAcquire(getPermits(exclusive), timeout, unit)
+		if (priority) {
+			if (waitingPriorityJobs.decrementAndGet() == 0)
+				canceled = false
+		} else if (acquired) {
+			operationCanceledManager.checkCanceled(this)
+		}
+		return acquired
+    }
+
+    /**
+     * Acquire the lock without priority and without checking the cancelation status, which is left
+     * to the caller. Unlike {@link #acquireLock(boolean, boolean)}, this method never throws an
+     * exception while the lock is held.
+     */
+    def void acquireLockUncancelable(boolean exclusive) {
+    	semaphore.acquire(getPermits(exclusive))
+    }
+
+    /**
+     * Try to acquire the lock within the given time without priority and without checking the
+     * cancelation status. This is meant for housekeeping tasks, which must not fail while the
+     * lock is held. Returns {@code false} if the lock could not be acquired in time.
+     */
+    def boolean tryAcquireLockUncancelable(boolean exclusive, long timeout, TimeUnit unit) {
+    	semaphore.tryAcquire(getPermits(exclusive), timeout, unit)
+    }
+
+    /**
+     * Whether priority requests are waiting for the lock.
+     */
+    def boolean hasWaitingPriorityJobs() {
+    	waitingPriorityJobs.get > 0
+    }
+    
+    /**
+     * Release a lock that has been acquired for exclusive access.
+     */
     def releaseLock() {
-    	if (semaphore.availablePermits != 0)
+    	releaseLock(true)
+    }
+    
+    /**
+     * Release a lock. The {@code exclusive} flag must match the one used for acquiring it.
+     */
+    def releaseLock(boolean exclusive) {
+    	val permits = getPermits(exclusive)
+    	if (semaphore.availablePermits > maxPermits - permits)
     		throw new IllegalStateException('Cannot release a lock without acquiring it first.')
-    	semaphore.release()
+    	semaphore.release(permits)
+    }
+    
+    private def getPermits(boolean exclusive) {
+    	if (exclusive) maxPermits else 1
     }
     
-}
\ No newline at end of file
+}
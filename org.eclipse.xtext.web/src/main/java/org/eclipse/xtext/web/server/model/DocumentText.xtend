@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.server.model
+
+import java.util.Arrays
+import java.util.List
+import org.eclipse.xtend.lib.annotations.Data
+
+/**
+ * Text content of a document stored as a piece table. The table consists of the original text, a buffer
+ * for inserted text, and a list of pieces referring to ranges of these two. Replacing a region of the
+ * text only modifies the list of pieces, while the complete string is materialized lazily and cached
+ * until the next modification. The same holds for the index of line offsets.
+ * 
+ * <p>Instances are modified only while holding the exclusive document lock. Materialization may be
+ * triggered concurrently by readers, which is harmless since it always yields the same result.</p>
+ */
+class DocumentText implements CharSequence {
+	
+	/**
+	 * The text is compacted into a single piece when the number of pieces exceeds this limit.
+	 */
+	static val MAX_PIECES = 512
+	
+	@Data
+	protected static class Piece {
+		boolean added
+		int start
+		int length
+		
+		def Piece slice(int from, int to) {
+			if (from == 0 && to == length)
+				this
+			else
+				new Piece(added, start + from, to - from)
+		}
+	}
+	
+	String original
+	
+	val StringBuilder addBuffer = new StringBuilder
+	
+	val List<Piece> pieces = newArrayList
+	
+	int textLength
+	
+	volatile String materialized
+	
+	volatile int[] lineOffsets
+	
+	new() {
+		this('')
+	}
+	
+	new(String text) {
+		reset(text)
+	}
+	
+	/**
+	 * Replace the whole text.
+	 */
+	def void reset(String text) {
+		original = text
+		addBuffer.length = 0
+		pieces.clear()
+		if (!text.empty)
+			pieces += new Piece(false, 0, text.length)
+		textLength = text.length
+		materialized = text
+		lineOffsets = null
+	}
+	
+	/**
+	 * Replace the given region of the text.
+	 */
+	def void replace(int offset, int replaceLength, String text) {
+		if (offset < 0 || replaceLength < 0 || offset + replaceLength > textLength)
+			throw new IndexOutOfBoundsException('Invalid region: offset ' + offset + ', length ' + replaceLength)
+		if (replaceLength == 0 && text.empty)
+			return
+		val end = offset + replaceLength
+		val List<Piece> before = newArrayList
+		val List<Piece> after = newArrayList
+		var pos = 0
+		for (piece : pieces) {
+			val pieceEnd = pos + piece.length
+			if (pos < offset)
+				before += piece.slice(0, Math.min(pieceEnd, offset) - pos)
+			if (pieceEnd > end)
+				after += piece.slice(Math.max(end, pos) - pos, piece.length)
+			pos = pieceEnd
+		}
+		if (!text.empty) {
+			val last = if (before.empty) null else before.last
+			if (last !== null && last.added && last.start + last.length == addBuffer.length) {
+				// Extend the previous insertion, which is the common case while typing
+				before.set(before.size - 1, new Piece(true, last.start, last.length + text.length))
+			} else {
+				before += new Piece(true, addBuffer.length, text.length)
+			}
+			addBuffer.append(text)
+		}
+		pieces.clear()
+		pieces += before
+		pieces += after
+		textLength += text.length - replaceLength
+		materialized = null
+		lineOffsets = null
+		if (pieces.size > MAX_PIECES || addBuffer.length > 2 * textLength + 1024)
+			reset(toString)
+	}
+	
+	override length() {
+		textLength
+	}
+	
+	override charAt(int index) {
+		toString.charAt(index)
+	}
+	
+	override subSequence(int start, int end) {
+		toString.subSequence(start, end)
+	}
+	
+	override toString() {
+		var result = materialized
+		if (result === null) {
+			val builder = new StringBuilder(textLength)
+			for (piece : pieces) {
+				if (piece.added)
+					builder.append(addBuffer, piece.start, piece.start + piece.length)
+				else
+					builder.append(original, piece.start, piece.start + piece.length)
+			}
+			result = builder.toString
+			materialized = result
+		}
+		return result
+	}
+	
+	/**
+	 * The number of lines of the text. An empty text has one line.
+	 */
+	def int getLineCount() {
+		getLineOffsets.length
+	}
+	
+	/**
+	 * The offset at which the given zero-based line starts.
+	 */
+	def int getLineOffset(int line) {
+		getLineOffsets.get(line)
+	}
+	
+	/**
+	 * The zero-based line that contains the given offset.
+	 */
+	def int getLineOfOffset(int offset) {
+		if (offset < 0 || offset > textLength)
+			throw new IndexOutOfBoundsException('Invalid offset: ' + offset)
+		val index = Arrays.binarySearch(getLineOffsets, offset)
+		if (index >= 0) index else -index - 2
+	}
+	
+	protected def int[] getLineOffsets() {
+		var result = lineOffsets
+		if (result === null) {
+			val text = toString
+			var count = 1
+			for (var i = 0; i < text.length; i++) {
+				if (isLineStart(text, i + 1))
+					count++
+			}
+			result = newIntArrayOfSize(count)
+			var line = 1
+			for (var i = 0; i < text.length; i++) {
+				if (isLineStart(text, i + 1))
+					result.set(line++, i + 1)
+			}
+			lineOffsets = result
+		}
+		return result
+	}
+	
+	private def boolean isLineStart(String text, int offset) {
+		val c = text.charAt(offset - 1)
+		c == '\n'.charAt(0) || c == '\r'.charAt(0) && (offset == text.length || text.charAt(offset) != '\n'.charAt(0))
+	}
+	
+}
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.server.model
+
+import com.google.common.base.Charsets
+import com.google.common.cache.Cache
+import com.google.common.cache.CacheBuilder
+import com.google.common.cache.CacheStats
+import com.google.common.hash.Hashing
+import com.google.common.util.concurrent.UncheckedExecutionException
+import com.google.inject.Inject
+import com.google.inject.Provider
+import com.google.inject.Singleton
+import java.util.concurrent.ExecutionException
+import org.eclipse.xtext.EcoreUtil2
+import org.eclipse.xtext.util.CancelIndicator
+import org.eclipse.xtext.util.internal.Log
+import org.eclipse.xtext.xbase.lib.Exceptions
+
+/**
+ * Server-wide cache for documents that are created from the full text sent by the client and are
+ * not associated with a resource. Documents are identified by the language and a hash of their text,
+ * so requests for the same text share the parsed resource and the cached service results, even if
+ * they come from different sessions. The least recently used documents are evicted when the
+ * estimated memory usage exceeds the {@link #getMemoryBudget() budget}.
+ * 
+ * <p>Cached documents are shared between requests, hence they must not be modified. Their resources are
+ * resolved completely before they are published, and each of them gets a {@link SharedDocumentSynchronizer},
+ * so requests of one client do not cancel the work of another client.</p>
+ */
+@Log
+@Singleton
+class FullTextDocumentCache {
+	
+	@Inject Provider<SharedDocumentSynchronizer> synchronizerProvider
+	
+	@Inject ServiceResultCacheManager resultCacheManager
+	
+	val Cache<String, XtextWebDocument> cache
+	
+	new() {
+		cache = CacheBuilder.newBuilder
+			.maximumWeight(memoryBudget)
+			.weigher[ String key, XtextWebDocument document |
+				Math.min(estimateSize(document), Integer.MAX_VALUE) as int
+			]
+			.recordStats
+			.build
+	}
+	
+	/**
+	 * The maximum number of bytes used by cached documents. This method is called once when the
+	 * cache is created.
+	 */
+	protected def long getMemoryBudget() {
+		64 * 1024 * 1024
+	}
+	
+	/**
+	 * Estimate the number of bytes used by the given document, including its resource. The default
+	 * assumes that the parse tree and the semantic model take about 16 times the size of the text.
+	 */
+	protected def long estimateSize(XtextWebDocument document) {
+		1024L + 32L * document.text.length
+	}
+	
+	/**
+	 * Return the cached document for the given language and text, or create it with the given
+	 * function and store it in the cache.
+	 */
+	def XtextWebDocument get(String language, String fullText, ()=>XtextWebDocument factory) {
+		val hash = Hashing.murmur3_128.hashString(fullText, Charsets.UTF_8)
+		val key = language + ':' + hash
+		try {
+			val document = cache.get(key)[share(factory.apply())]
+			if (document.text == fullText)
+				return document
+			// Hash collision: the document cannot be shared
+			LOG.trace('Hash collision for full text document ' + key)
+			return factory.apply()
+		} catch (ExecutionException exception) {
+			throw Exceptions.sneakyThrow(exception.cause)
+		} catch (UncheckedExecutionException exception) {
+			throw Exceptions.sneakyThrow(exception.cause)
+		}
+	}
+	
+	/**
+	 * Create the shared variant of the given document, which has been created by the factory. The
+	 * resource is resolved completely, since it must not be modified by read-only services afterwards.
+	 */
+	protected def XtextWebDocument share(XtextWebDocument document) {
+		val resource = document.resource
+		EcoreUtil2.resolveLazyCrossReferences(resource, CancelIndicator.NullImpl)
+		val sharedDocument = new XtextWebDocument(document.resourceId, synchronizerProvider.get)
+		sharedDocument.setInput(resource)
+		sharedDocument.resultCacheManager = resultCacheManager
+		sharedDocument.shared = true
+		sharedDocument.fullyResolved = true
+		return sharedDocument
+	}
+	
+	/**
+	 * Remove all cached documents.
+	 */
+	def void clear() {
+		cache.invalidateAll()
+	}
+	
+	/**
+	 * Statistics about hits, misses and evictions of this cache.
+	 */
+	def CacheStats getStats() {
+		cache.stats
+	}
+	
+}
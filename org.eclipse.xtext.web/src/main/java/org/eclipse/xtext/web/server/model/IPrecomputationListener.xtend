@@ -0,0 +1,26 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.server.model
+
+import org.eclipse.xtext.web.server.IServiceResult
+
+/**
+ * Listener that is notified whenever the result of a precomputed service is available for a document.
+ * Listeners are registered with {@link XtextWebDocument#addPrecomputationListener(IPrecomputationListener)}.
+ * They are invoked in the thread that performed the precomputation after the document lock has been
+ * released, so implementations should return quickly.
+ */
+interface IPrecomputationListener {
+
+	/**
+	 * Called when the given service has produced a result for the document state with the given identifier.
+	 */
+	def void precomputationFinished(XtextWebDocument document, AbstractCachedService<?> service,
+		IServiceResult result, String stateId)
+
+}
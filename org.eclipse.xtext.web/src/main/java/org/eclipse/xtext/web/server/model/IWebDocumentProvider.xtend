@@ -26,20 +26,54 @@ interface IWebDocumentProvider {
 	def XtextWebDocument get(String resourceId, IServiceContext serviceContext)
 	
 	/**
-	 * The default implementation creates one document synchronizer per session. If stateless
-	 * mode is requested, each document gets its own synchronizer.
+	 * The default implementation creates one document synchronizer per resource and session, so
+	 * documents can be accessed independently of each other. Documents whose resources share a
+	 * resource set must share their synchronizer, too; override {@link #getSynchronizerKey(String, IServiceContext)}
+	 * for that purpose. If stateless mode is requested, each document gets its own synchronizer.
 	 */
 	class DefaultImpl implements IWebDocumentProvider {
 		
 		@Inject Provider<DocumentSynchronizer> synchronizerProvider
 		
+		@Inject ServiceResultCacheManager resultCacheManager
+		
 		override get(String resourceId, IServiceContext serviceContext) {
 			val synchronizer =
 				if (resourceId === null)
-					synchronizerProvider.get
+					createSynchronizer
 				else
-					serviceContext.session.get(DocumentSynchronizer, [synchronizerProvider.get])
-			new XtextWebDocument(resourceId, synchronizer)
+					serviceContext.session.get(DocumentSynchronizer -> getSynchronizerKey(resourceId, serviceContext),
+							[createSynchronizer])
+			val document = new XtextWebDocument(resourceId, synchronizer)
+			if (resourceId !== null)
+				document.resultCacheManager = resultCacheManager
+			return document
+		}
+		
+		/**
+		 * Returns the key under which the synchronizer for the given resource is stored in the session.
+		 * All documents with the same key share one synchronizer. The default is the resource id itself.
+		 */
+		protected def String getSynchronizerKey(String resourceId, IServiceContext serviceContext) {
+			resourceId
+		}
+		
+		protected def DocumentSynchronizer createSynchronizer() {
+			synchronizerProvider.get
+		}
+		
+	}
+	
+	/**
+	 * Variant of the default implementation that uses {@link ReadWriteDocumentSynchronizer}s, which
+	 * allow read-only services to access a document in parallel.
+	 */
+	class ReadWriteImpl extends DefaultImpl {
+		
+		@Inject Provider<ReadWriteDocumentSynchronizer> readWriteSynchronizerProvider
+		
+		override protected createSynchronizer() {
+			readWriteSynchronizerProvider.get
 		}
 		
 	}
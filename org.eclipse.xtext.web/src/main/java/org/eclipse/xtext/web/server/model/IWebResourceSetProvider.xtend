@@ -39,4 +39,20 @@ interface IWebResourceSetProvider {
 		
 	}
 	
+	/**
+	 * Creates a new resource set for each resource and attaches the {@link SharedLibraryIndex} to it,
+	 * so library models are indexed only once for all sessions.
+	 */
+	class SharedLibraryImpl extends DefaultImpl {
+		
+		@Inject SharedLibraryIndex libraryIndex
+		
+		override get(String resourceId, IServiceContext serviceContext) {
+			val resourceSet = super.get(resourceId, serviceContext)
+			libraryIndex.attach(resourceSet)
+			return resourceSet
+		}
+		
+	}
+	
 }
\ No newline at end of file
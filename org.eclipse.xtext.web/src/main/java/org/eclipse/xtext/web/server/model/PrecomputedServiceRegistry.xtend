@@ -7,7 +7,10 @@
  *******************************************************************************/
 package org.eclipse.xtext.web.server.model
 
+import com.google.common.collect.ImmutableList
 import com.google.inject.Singleton
+import java.util.List
+import java.util.Map
 import java.util.Set
 import org.eclipse.xtext.web.server.IServiceResult
 
@@ -23,14 +26,40 @@ import org.eclipse.xtext.web.server.IServiceResult
 @Singleton
 class PrecomputedServiceRegistry {
 	
-	val Set<AbstractCachedService<? extends IServiceResult>> precomputedServices = newHashSet
+	val Set<AbstractCachedService<? extends IServiceResult>> precomputedServices = newLinkedHashSet
+	
+	val Map<AbstractCachedService<? extends IServiceResult>, List<Class<?>>> dependencies = newHashMap
+	
+	val Map<AbstractCachedService<? extends IServiceResult>, Integer> priorities = newHashMap
 	
 	/**
 	 * Register a service to be precomputed after each document change.
 	 */
 	def addPrecomputedService(AbstractCachedService<? extends IServiceResult> service) {
+		addPrecomputedService(service, 0, emptyList)
+	}
+	
+	/**
+	 * Register a service to be precomputed after each document change. The service is computed
+	 * only after the services of the given classes have been computed. Services without mutual
+	 * dependencies are computed in parallel. Unknown dependencies are ignored.
+	 */
+	def addPrecomputedService(AbstractCachedService<? extends IServiceResult> service,
+			List<? extends Class<?>> dependencies) {
+		addPrecomputedService(service, 0, dependencies)
+	}
+	
+	/**
+	 * Register a service to be precomputed after each document change. Services with higher priority
+	 * are started first; services with equal priority are started in the order of their registration.
+	 * The service is computed only after the services of the given classes have been computed.
+	 */
+	def addPrecomputedService(AbstractCachedService<? extends IServiceResult> service, int priority,
+			List<? extends Class<?>> dependencies) {
 		synchronized (precomputedServices) {
 			precomputedServices += service
+			this.dependencies.put(service, ImmutableList.copyOf(dependencies))
+			priorities.put(service, priority)
 		}
 	}
 	
@@ -40,14 +69,57 @@ class PrecomputedServiceRegistry {
 	def removePrecomputedService(AbstractCachedService<? extends IServiceResult> service) {
 		synchronized (precomputedServices) {
 			precomputedServices -= service
+			dependencies.remove(service)
+			priorities.remove(service)
 		}
 	}
 	
 	/**
-	 * Return the registered services. These services should be invoked whenever the document is changed.
+	 * Return the registered services ordered by priority. A service is always preceded by the services
+	 * it depends on. These services should be invoked whenever the document is changed.
 	 */
 	def Iterable<AbstractCachedService<? extends IServiceResult>> getPrecomputedServices() {
-		precomputedServices
+		synchronized (precomputedServices) {
+			val sorted = precomputedServices.sortBy[-getPriority(it)]
+			val result = <AbstractCachedService<? extends IServiceResult>>newLinkedHashSet
+			val visited = <AbstractCachedService<? extends IServiceResult>>newHashSet
+			for (service : sorted) {
+				addWithDependencies(service, sorted, result, visited)
+			}
+			return ImmutableList.copyOf(result)
+		}
+	}
+	
+	private def void addWithDependencies(AbstractCachedService<? extends IServiceResult> service,
+			List<AbstractCachedService<? extends IServiceResult>> services,
+			Set<AbstractCachedService<? extends IServiceResult>> result,
+			Set<AbstractCachedService<? extends IServiceResult>> visited) {
+		// The visited set stops the recursion at dependency cycles
+		if (result.contains(service) || !visited.add(service))
+			return
+		val dependencyClasses = getDependencies(service)
+		for (dependency : services.filter[dependencyClasses.contains(class)]) {
+			addWithDependencies(dependency, services, result, visited)
+		}
+		result += service
+	}
+	
+	/**
+	 * Return the classes of the services that must be computed before the given service.
+	 */
+	def List<Class<?>> getDependencies(AbstractCachedService<? extends IServiceResult> service) {
+		synchronized (precomputedServices) {
+			dependencies.get(service) ?: emptyList
+		}
+	}
+	
+	/**
+	 * Return the priority of the given service.
+	 */
+	def int getPriority(AbstractCachedService<? extends IServiceResult> service) {
+		synchronized (precomputedServices) {
+			priorities.get(service) ?: 0
+		}
 	}
 	
 }
@@ -0,0 +1,28 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.server.model
+
+/**
+ * Document synchronizer that allows read-only work units to hold the lock at the same time,
+ * while modifications and background work still get exclusive access. The lock is fair, so
+ * a waiting exclusive request blocks subsequent shared requests and cannot be starved.
+ * 
+ * <p>Resolving lazy cross-references modifies the resource and is not thread-safe. Shared access is
+ * therefore granted only after the background work that follows a modification has resolved all
+ * cross-references while holding the lock exclusively (see {@link XtextWebDocument#isFullyResolved()}).
+ * Until then, e.g. when the background work has been canceled or skipped, read-only work units get
+ * exclusive access. Read-only services must not modify the resource in any other way. Select this
+ * synchronizer by binding {@link IWebDocumentProvider} to {@link IWebDocumentProvider.ReadWriteImpl}.</p>
+ */
+class ReadWriteDocumentSynchronizer extends DocumentSynchronizer {
+	
+	new() {
+		super(Integer.MAX_VALUE)
+	}
+	
+}
@@ -0,0 +1,245 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.server.model
+
+import com.google.common.collect.ImmutableMap
+import com.google.common.collect.Sets
+import java.util.LinkedHashMap
+import java.util.List
+import java.util.Map
+import java.util.Set
+import org.eclipse.xtend.lib.annotations.Accessors
+import org.eclipse.xtext.web.server.IServiceResult
+
+/**
+ * Thread-safe cache for the results of {@link AbstractCachedService}s of one document. Results are keyed
+ * by service instance, so subclasses of the same service registered for different languages do not collide.
+ * Besides the current result, results computed for previous states can be retained for services that
+ * {@link AbstractCachedService#isDeltaSupported() support deltas}. If a {@link ServiceResultCacheManager}
+ * is assigned, the size of the current and retained results is estimated and the least recently used
+ * services are evicted when the document budget or the global budget is exceeded. Results larger than the
+ * document budget are not cached at all.
+ */
+class ServiceResultCache {
+	
+	val (AbstractCachedService<?>)=>void evictionListener
+	
+	@Accessors
+	volatile ServiceResultCacheManager manager
+	
+	/** The results for the current state of the document. */
+	val Map<AbstractCachedService<?>, IServiceResult> results = newHashMap
+	
+	/** The results retained for previous states, keyed by state id in insertion order. */
+	val Map<AbstractCachedService<?>, Map<String, IServiceResult>> retainedResults = newHashMap
+	
+	/** Sizes of the current and retained results of each service in access order, i.e. the least recently used service comes first. */
+	val Map<AbstractCachedService<?>, Long> sizes = new LinkedHashMap(8, 0.75f, true)
+	
+	long size
+	
+	/**
+	 * Create a cache that invokes the given listener whenever a result is evicted.
+	 */
+	new((AbstractCachedService<?>)=>void evictionListener) {
+		this.evictionListener = evictionListener
+	}
+	
+	/**
+	 * Return the cached result of the given service, or {@code null} if there is none.
+	 */
+	def <T extends IServiceResult> T get(AbstractCachedService<T> service) {
+		val result = synchronized (this) {
+			val r = results.get(service) as T
+			if (r !== null)
+				sizes.get(service)
+			r
+		}
+		if (result !== null)
+			manager?.accessed(this, service)
+		return result
+	}
+	
+	/**
+	 * Return the result of the given service that has been retained for the given state, or {@code null}
+	 * if there is none.
+	 */
+	def synchronized <T extends IServiceResult> T getRetained(AbstractCachedService<T> service, String stateId) {
+		retainedResults.get(service)?.get(stateId) as T
+	}
+	
+	/**
+	 * Store the result of the given service, evicting other results if the document budget is exceeded.
+	 */
+	def void put(AbstractCachedService<?> service, IServiceResult result) {
+		val List<AbstractCachedService<?>> evicted = newArrayList
+		val Map<AbstractCachedService<?>, Long> updated = newHashMap
+		synchronized (this) {
+			if (result !== null)
+				results.put(service, result)
+			else
+				results.remove(service)
+			updated.put(service, updateSize(service, evicted))
+		}
+		notifyChanges(updated, evicted)
+	}
+	
+	/**
+	 * Retain the result of the given service for the given state. The oldest retained results of
+	 * the service are discarded when there are more than {@code historySize} of them.
+	 */
+	def void retain(AbstractCachedService<?> service, String stateId, IServiceResult result, int historySize) {
+		val List<AbstractCachedService<?>> evicted = newArrayList
+		val Map<AbstractCachedService<?>, Long> updated = newHashMap
+		synchronized (this) {
+			var history = retainedResults.get(service)
+			if (history === null) {
+				history = new LinkedHashMap
+				retainedResults.put(service, history)
+			}
+			history.remove(stateId)
+			history.put(stateId, result)
+			val iterator = history.keySet.iterator
+			while (history.size > historySize) {
+				iterator.next()
+				iterator.remove()
+			}
+			updated.put(service, updateSize(service, evicted))
+		}
+		notifyChanges(updated, evicted)
+	}
+	
+	/**
+	 * Remove all results for the current state. Retained results are kept.
+	 */
+	def void clear() {
+		val Map<AbstractCachedService<?>, Long> updated = newHashMap
+		synchronized (this) {
+			for (service : results.keySet.toList) {
+				results.remove(service)
+				updated.put(service, updateSize(service, newArrayList))
+			}
+		}
+		notifyChanges(updated, emptyList)
+	}
+	
+	/**
+	 * Remove all retained results.
+	 */
+	def void clearRetained() {
+		val Map<AbstractCachedService<?>, Long> updated = newHashMap
+		synchronized (this) {
+			for (service : retainedResults.keySet.toList) {
+				retainedResults.remove(service)
+				updated.put(service, updateSize(service, newArrayList))
+			}
+		}
+		notifyChanges(updated, emptyList)
+	}
+	
+	/**
+	 * Recompute the size of the results of the given service and evict the least recently used services
+	 * if the document budget is exceeded. Returns the new size, or {@code null} if nothing is cached for
+	 * the service. Must be called while holding the lock of this cache.
+	 */
+	private def Long updateSize(AbstractCachedService<?> service, List<AbstractCachedService<?>> evicted) {
+		val previousSize = sizes.remove(service)
+		if (previousSize !== null)
+			size -= previousSize
+		val current = results.get(service)
+		val history = retainedResults.get(service)
+		if (current === null && history.nullOrEmpty) {
+			retainedResults.remove(service)
+			return null
+		}
+		val manager = this.manager
+		if (manager === null) {
+			sizes.put(service, 0L)
+			return 0L
+		}
+		// The current result is usually retained as well, so each instance is counted only once
+		val Set<IServiceResult> instances = Sets.newIdentityHashSet
+		if (current !== null)
+			instances += current
+		if (history !== null)
+			instances += history.values
+		val entrySize = instances.fold(0L)[ sum, result | sum + manager.estimateSize(result) ]
+		if (entrySize > manager.documentBudget) {
+			results.remove(service)
+			retainedResults.remove(service)
+			return null
+		}
+		sizes.put(service, entrySize)
+		size += entrySize
+		val iterator = sizes.entrySet.iterator
+		while (size > manager.documentBudget && iterator.hasNext) {
+			val entry = iterator.next
+			if (entry.key !== service) {
+				iterator.remove()
+				size -= entry.value
+				results.remove(entry.key)
+				retainedResults.remove(entry.key)
+				evicted += entry.key
+			}
+		}
+		return entrySize
+	}
+	
+	/**
+	 * Report changed sizes to the manager and notify the eviction listener. This is done outside of the
+	 * synchronized blocks, since the manager may evict results from other caches.
+	 */
+	private def void notifyChanges(Map<AbstractCachedService<?>, Long> updated, List<AbstractCachedService<?>> evicted) {
+		val manager = this.manager
+		if (manager !== null) {
+			for (entry : updated.entrySet) {
+				if (entry.value !== null)
+					manager.added(this, entry.key, entry.value)
+				else
+					manager.removed(this, entry.key)
+			}
+		}
+		for (other : evicted) {
+			manager?.removed(this, other)
+			evictionListener.apply(other)
+		}
+	}
+	
+	/**
+	 * Evict the current and retained results of the given service because the global budget is exceeded.
+	 */
+	package def void evict(AbstractCachedService<?> service) {
+		val removed = synchronized (this) {
+			val previousSize = sizes.remove(service)
+			if (previousSize !== null) {
+				size -= previousSize
+				results.remove(service)
+				retainedResults.remove(service)
+				true
+			} else
+				false
+		}
+		if (removed)
+			evictionListener.apply(service)
+	}
+	
+	/**
+	 * The estimated number of bytes used by the current and retained results.
+	 */
+	def synchronized long getSize() {
+		size
+	}
+	
+	/**
+	 * Return an immutable copy of the results for the current state.
+	 */
+	def synchronized Map<AbstractCachedService<?>, IServiceResult> copyResults() {
+		ImmutableMap.copyOf(results)
+	}
+	
+}
@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.server.model
+
+import com.google.inject.Singleton
+import java.lang.ref.ReferenceQueue
+import java.lang.ref.WeakReference
+import java.util.LinkedHashMap
+import java.util.List
+import java.util.Map
+import org.eclipse.xtend.lib.annotations.Accessors
+import org.eclipse.xtext.web.server.IServiceResult
+import org.eclipse.xtext.web.server.generator.GeneratorService.GeneratedArtifacts
+import org.eclipse.xtext.web.server.syntaxcoloring.HighlightingResult
+import org.eclipse.xtext.web.server.validation.ValidationResult
+
+/**
+ * Keeps track of the memory used by the {@link ServiceResultCache}s of all documents. The size of each
+ * cached result is estimated with {@link #estimateSize(IServiceResult)}. When the global budget is
+ * exceeded, the least recently used results are evicted from their caches, regardless of the document
+ * they belong to. Each document cache is also limited by the document budget. The caches are referenced
+ * weakly, so documents that are no longer used can be reclaimed; their entries are discarded afterwards.
+ */
+@Singleton
+class ServiceResultCacheManager {
+	
+	/**
+	 * The maximum number of bytes used by cached results of all documents.
+	 */
+	@Accessors
+	volatile long globalBudget = 128 * 1024 * 1024
+	
+	/**
+	 * The maximum number of bytes used by cached results of a single document.
+	 */
+	@Accessors
+	volatile long documentBudget = 8 * 1024 * 1024
+	
+	/** Sizes of the cached results in access order, i.e. the least recently used result comes first. */
+	val Map<EntryKey, Long> entries = new LinkedHashMap(64, 0.75f, true)
+	
+	/** Queue of the keys whose caches have been reclaimed by the garbage collector. */
+	val queue = new ReferenceQueue<ServiceResultCache>
+	
+	long size
+	
+	/**
+	 * The estimated number of bytes used by all cached results.
+	 */
+	def long getSize() {
+		synchronized (entries) {
+			expungeReclaimedEntries()
+			size
+		}
+	}
+	
+	/**
+	 * Estimate the number of bytes used by the given result. Override this to provide more accurate
+	 * estimates for the results of your own services.
+	 */
+	def long estimateSize(IServiceResult result) {
+		switch result {
+			GeneratedArtifacts:
+				result.artifacts.fold(64L)[ sum, artifact |
+					sum + 64 + 2 * ((artifact.content?.length ?: 0) + (artifact.name?.length ?: 0))
+				]
+			HighlightingResult:
+				64L + 64L * result.regions.size
+			ValidationResult:
+				64L + 256L * result.issues.size
+			default:
+				1024L
+		}
+	}
+	
+	package def void added(ServiceResultCache cache, AbstractCachedService<?> service, long entrySize) {
+		val List<EntryKey> evicted = newArrayList
+		synchronized (entries) {
+			expungeReclaimedEntries()
+			val key = new EntryKey(cache, service, queue)
+			val previousSize = entries.put(key, entrySize)
+			size += entrySize - (previousSize ?: 0L)
+			val iterator = entries.entrySet.iterator
+			while (size > globalBudget && iterator.hasNext) {
+				val entry = iterator.next
+				if (entry.key != key) {
+					iterator.remove()
+					size -= entry.value
+					evicted += entry.key
+				}
+			}
+		}
+		// Evict outside of the synchronized block, since the caches have their own locks
+		for (key : evicted) {
+			key.get?.evict(key.service)
+		}
+	}
+	
+	package def void accessed(ServiceResultCache cache, AbstractCachedService<?> service) {
+		synchronized (entries) {
+			entries.get(new EntryKey(cache, service, null))
+		}
+	}
+	
+	package def void removed(ServiceResultCache cache, AbstractCachedService<?> service) {
+		synchronized (entries) {
+			val previousSize = entries.remove(new EntryKey(cache, service, null))
+			if (previousSize !== null)
+				size -= previousSize
+		}
+	}
+	
+	/**
+	 * Discard the entries of caches that have been reclaimed. Must be called while holding the lock of
+	 * the entries.
+	 */
+	private def void expungeReclaimedEntries() {
+		var reference = queue.poll
+		while (reference !== null) {
+			val previousSize = entries.remove(reference)
+			if (previousSize !== null)
+				size -= previousSize
+			reference = queue.poll
+		}
+	}
+	
+	/**
+	 * Key of an entry, referring to the cache weakly. Keys are equal if they refer to the same cache
+	 * and service; a key whose cache has been reclaimed is only equal to itself.
+	 */
+	private static class EntryKey extends WeakReference<ServiceResultCache> {
+		
+		val AbstractCachedService<?> service
+		
+		val int hash
+		
+		new(ServiceResultCache cache, AbstractCachedService<?> service, ReferenceQueue<ServiceResultCache> queue) {
+			super(cache, queue)
+			this.service = service
+			this.hash = 31 * System.identityHashCode(cache) + System.identityHashCode(service)
+		}
+		
+		def AbstractCachedService<?> getService() {
+			service
+		}
+		
+		override hashCode() {
+			hash
+		}
+		
+		override equals(Object obj) {
+			if (obj === this)
+				return true
+			if (obj instanceof EntryKey) {
+				val cache = get
+				return cache !== null && cache === obj.get && service === obj.service
+			}
+			return false
+		}
+		
+	}
+	
+}
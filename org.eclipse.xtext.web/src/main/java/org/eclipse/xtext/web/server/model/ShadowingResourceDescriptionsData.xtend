@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.server.model
+
+import java.util.Map
+import java.util.Set
+import org.eclipse.emf.common.util.URI
+import org.eclipse.emf.ecore.EClass
+import org.eclipse.emf.ecore.EObject
+import org.eclipse.emf.ecore.resource.ResourceSet
+import org.eclipse.xtext.naming.QualifiedName
+import org.eclipse.xtext.resource.IEObjectDescription
+import org.eclipse.xtext.resource.IResourceDescription
+import org.eclipse.xtext.resource.IResourceServiceProvider
+import org.eclipse.xtext.resource.ISelectable
+import org.eclipse.xtext.resource.impl.ResourceDescriptionsData
+
+/**
+ * View of a shared library index combined with the resources of one resource set. The descriptions
+ * of resources contained in the resource set take precedence over library descriptions with the same
+ * URI. Descriptions that are added or removed explicitly are recorded in this view and take precedence
+ * over both; the shared index is never modified, also not through a {@link #copy()}.
+ */
+class ShadowingResourceDescriptionsData extends ResourceDescriptionsData {
+	
+	val ResourceDescriptionsData libraryData
+	
+	val ResourceSet resourceSet
+	
+	val IResourceServiceProvider.Registry resourceServiceProviderRegistry
+	
+	/** Descriptions that have been added with {@link #addDescription(URI, IResourceDescription)}. */
+	val Map<URI, IResourceDescription> addedDescriptions = newLinkedHashMap
+	
+	/** URIs whose descriptions have been removed with {@link #removeDescription(URI)}. */
+	val Set<URI> removedURIs = newHashSet
+	
+	new(ResourceDescriptionsData libraryData, ResourceSet resourceSet,
+			IResourceServiceProvider.Registry resourceServiceProviderRegistry) {
+		super(emptyList)
+		this.libraryData = libraryData
+		this.resourceSet = resourceSet
+		this.resourceServiceProviderRegistry = resourceServiceProviderRegistry
+	}
+	
+	/**
+	 * Compute the descriptions of the resources contained in the resource set, including the explicitly
+	 * added ones. The descriptions are cached by the resource description managers until the resources
+	 * are modified.
+	 */
+	protected def Map<URI, IResourceDescription> getLocalDescriptions() {
+		val Map<URI, IResourceDescription> result = newLinkedHashMap
+		for (resource : resourceSet.resources.toList) {
+			if (!removedURIs.contains(resource.URI)) {
+				val manager = resourceServiceProviderRegistry.getResourceServiceProvider(resource.URI)?.resourceDescriptionManager
+				if (manager !== null)
+					result.put(resource.URI, manager.getResourceDescription(resource))
+			}
+		}
+		result.putAll(addedDescriptions)
+		return result
+	}
+	
+	/**
+	 * Whether the library description with the given URI is hidden by a local description or has
+	 * been removed.
+	 */
+	protected def boolean isShadowed(URI uri, Map<URI, IResourceDescription> localDescriptions) {
+		localDescriptions.containsKey(uri) || removedURIs.contains(uri)
+	}
+	
+	/**
+	 * Returns a copy that views the same resource set and shared index, and that records its own
+	 * added and removed descriptions.
+	 */
+	override copy() {
+		val result = new ShadowingResourceDescriptionsData(libraryData, resourceSet, resourceServiceProviderRegistry)
+		result.addedDescriptions.putAll(addedDescriptions)
+		result.removedURIs.addAll(removedURIs)
+		return result
+	}
+	
+	override addDescription(URI uri, IResourceDescription newDescription) {
+		removedURIs.remove(uri)
+		addedDescriptions.put(uri, newDescription)
+	}
+	
+	override removeDescription(URI uri) {
+		addedDescriptions.remove(uri)
+		removedURIs.add(uri)
+	}
+	
+	override isEmpty() {
+		allURIs.empty
+	}
+	
+	override getAllURIs() {
+		val local = localDescriptions
+		val Set<URI> result = newLinkedHashSet
+		result += local.keySet
+		result += libraryData.allURIs.filter[!isShadowed(it, local)]
+		return result
+	}
+	
+	override getAllResourceDescriptions() {
+		val local = localDescriptions
+		local.values + libraryData.allResourceDescriptions.filter[!isShadowed(it.URI, local)]
+	}
+	
+	override getResourceDescription(URI uri) {
+		if (removedURIs.contains(uri))
+			return null
+		val added = addedDescriptions.get(uri)
+		if (added !== null)
+			return added
+		val resource = resourceSet.resources.findFirst[it.URI == uri]
+		if (resource !== null) {
+			val manager = resourceServiceProviderRegistry.getResourceServiceProvider(uri)?.resourceDescriptionManager
+			if (manager !== null)
+				return manager.getResourceDescription(resource)
+		}
+		return libraryData.getResourceDescription(uri)
+	}
+	
+	override getExportedObjects() {
+		allResourceDescriptions.map[exportedObjects].flatten
+	}
+	
+	override getExportedObjects(EClass type, QualifiedName name, boolean ignoreCase) {
+		combine[getExportedObjects(type, name, ignoreCase)]
+	}
+	
+	override getExportedObjectsByType(EClass type) {
+		combine[getExportedObjectsByType(type)]
+	}
+	
+	override getExportedObjectsByObject(EObject object) {
+		combine[getExportedObjectsByObject(object)]
+	}
+	
+	/**
+	 * Apply the given query to the local descriptions and to the library descriptions that are not shadowed.
+	 */
+	protected def Iterable<IEObjectDescription> combine((ISelectable)=>Iterable<IEObjectDescription> query) {
+		val local = localDescriptions
+		local.values.map[query.apply(it)].flatten
+			+ query.apply(libraryData).filter[!isShadowed(EObjectURI.trimFragment, local)]
+	}
+	
+}
@@ -0,0 +1,28 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.server.model
+
+import java.util.concurrent.TimeUnit
+
+/**
+ * Synchronizer for documents that are shared between requests through the {@link FullTextDocumentCache}.
+ * The requests may come from different clients, so priority requests do not cancel the current lock
+ * holders. Shared documents are fully resolved and never modified, hence read-only work units may
+ * hold the lock at the same time.
+ */
+class SharedDocumentSynchronizer extends ReadWriteDocumentSynchronizer {
+
+	override acquireLock(boolean priority, boolean exclusive) {
+		super.acquireLock(false, exclusive)
+	}
+
+	override tryAcquireLock(boolean priority, boolean exclusive, long timeout, TimeUnit unit) {
+		super.tryAcquireLock(false, exclusive, timeout, unit)
+	}
+
+}
@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.server.model
+
+import com.google.inject.Inject
+import com.google.inject.Provider
+import com.google.inject.Singleton
+import java.util.List
+import org.eclipse.emf.common.util.URI
+import org.eclipse.emf.ecore.resource.ResourceSet
+import org.eclipse.xtext.EcoreUtil2
+import org.eclipse.xtext.resource.IResourceDescription
+import org.eclipse.xtext.resource.IResourceServiceProvider
+import org.eclipse.xtext.resource.impl.ResourceDescriptionsData
+import org.eclipse.xtext.resource.persistence.SerializableResourceDescription
+import org.eclipse.xtext.util.internal.Log
+
+/**
+ * Process-wide index of library models that is shared by all sessions. The library resources are
+ * indexed once with {@link #load(Iterable)}, and the index is then {@link #attach(ResourceSet) attached}
+ * to each resource set created for a document. Resources contained in a resource set shadow library
+ * resources with the same URI in the index.
+ * 
+ * <p>Only the index is shared, since it consists of immutable resource descriptions. EMF resources are
+ * not thread-safe, so library resources are not shared between resource sets; each resource set loads
+ * the library resources it references on demand when cross-references are resolved.</p>
+ */
+@Log
+@Singleton
+class SharedLibraryIndex {
+	
+	@Inject Provider<ResourceSet> resourceSetProvider
+	
+	@Inject IResourceServiceProvider.Registry resourceServiceProviderRegistry
+	
+	volatile ResourceDescriptionsData resourceDescriptions = new ResourceDescriptionsData(emptyList)
+	
+	/**
+	 * Load and index the library resources with the given URIs and replace the current index. Resources
+	 * referenced by the given ones are indexed as well. The loaded resources are discarded afterwards.
+	 */
+	def synchronized void load(Iterable<URI> uris) {
+		val resourceSet = resourceSetProvider.get
+		for (uri : uris) {
+			resourceSet.getResource(uri, true)
+		}
+		EcoreUtil2.resolveAll(resourceSet)
+		val List<IResourceDescription> descriptions = newArrayList
+		for (resource : resourceSet.resources) {
+			val manager = resourceServiceProviderRegistry.getResourceServiceProvider(resource.URI)?.resourceDescriptionManager
+			if (manager !== null)
+				descriptions += SerializableResourceDescription.createCopy(manager.getResourceDescription(resource))
+		}
+		resourceDescriptions = new ResourceDescriptionsData(descriptions)
+		LOG.info('Indexed ' + descriptions.size + ' library resources.')
+	}
+	
+	/**
+	 * Make the library index available in the given resource set.
+	 */
+	def void attach(ResourceSet resourceSet) {
+		ResourceDescriptionsData.ResourceSetAdapter.installResourceDescriptionsData(resourceSet,
+				new ShadowingResourceDescriptionsData(resourceDescriptions, resourceSet, resourceServiceProviderRegistry))
+	}
+	
+}
@@ -21,39 +21,58 @@ class UpdateDocumentService {
 	
 	/**
 	 * Update the state identifier and return it. A background process is started where the given text
-	 * is assigned to the document and the services registered in {@link PrecomputedServiceRegistry}
-	 * are invoked.
+	 * is applied to the resource and the services registered in {@link PrecomputedServiceRegistry}
+	 * are invoked. Consecutive updates are merged if they arrive faster than they can be processed.
 	 */
 	def DocumentStateResult updateFullText(XtextWebDocumentAccess document, String fullText)
 			throws InvalidRequestException {
 		document.modify([ it, cancelIndicator |
 			dirty = true
 			createNewStateId()
+			if (it instanceof XtextWebDocument)
+				it.deferTextChange(fullText)
+			else
+				text = fullText
 			return new DocumentStateResult(stateId)
 		], [ it, cancelIndicator |
-			text = fullText
+			applyPendingTextChange(it)
 			return null
 		])
 	}
 	
 	/**
 	 * Update the state identifier and return it. A background process is started where the given text change
-	 * is applied to the document and the services registered in {@link PrecomputedServiceRegistry}
-	 * are invoked.
+	 * is applied to the resource and the services registered in {@link PrecomputedServiceRegistry}
+	 * are invoked. Consecutive updates are merged if they arrive faster than they can be processed.
 	 */
 	def DocumentStateResult updateDeltaText(XtextWebDocumentAccess document, String deltaText, int offset, int replaceLength)
 			throws InvalidRequestException {
 		document.modify([ it, cancelIndicator |
 			dirty = true
 			createNewStateId()
+			if (it instanceof XtextWebDocument)
+				it.deferTextChange(deltaText, offset, replaceLength)
+			else if (offset <= text.length)
+				updateText(deltaText, offset, replaceLength)
 			return new DocumentStateResult(stateId)
 		], [ it, cancelIndicator |
-			if (offset <= text.length)
-				updateText(deltaText, offset, replaceLength)
+			applyPendingTextChange(it)
 			return null
 		])
 	}
 	
+	/**
+	 * Apply the text change that has been recorded when the state identifier was updated. If another
+	 * modification is already waiting for the document lock, the change is kept pending instead, so it
+	 * can be merged with the next one and intermediate reparsing is avoided.
+	 */
+	protected def void applyPendingTextChange(IXtextWebDocument document) {
+		if (document instanceof XtextWebDocument) {
+			if (!document.synchronizer.hasWaitingPriorityJobs)
+				document.applyPendingTextChange()
+		}
+	}
+	
 	/**
 	 * Return the current state identifier. If the services registered in {@link PrecomputedServiceRegistry}
 	 * are not cached yet, they are invoked in a background process.
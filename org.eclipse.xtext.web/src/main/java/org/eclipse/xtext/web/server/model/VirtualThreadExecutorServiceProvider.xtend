@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.server.model
+
+import com.google.inject.Singleton
+import java.lang.reflect.Method
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import org.eclipse.xtext.util.internal.Log
+
+/**
+ * Executor service provider that runs tasks on virtual threads if the Java runtime supports them.
+ * The background work and precomputation started by {@link XtextWebDocumentAccess} spend much of their
+ * time waiting for the document lock, which is cheap with virtual threads, but occupies a platform thread
+ * otherwise. On runtimes without virtual threads the default executors are created instead. The bounded
+ * precomputation executor is kept, since precomputation is limited by processors rather than threads.
+ * 
+ * <p>To use this provider, add the following binding to your web module:</p>
+ * <pre>
+ * def Class&lt;? extends ExecutorServiceProvider&gt; bindExecutorServiceProvider() {
+ *     VirtualThreadExecutorServiceProvider
+ * }
+ * </pre>
+ */
+@Log
+@Singleton
+class VirtualThreadExecutorServiceProvider extends WebExecutorServiceProvider {
+	
+	static val Method VIRTUAL_THREAD_EXECUTOR_FACTORY = findVirtualThreadExecutorFactory()
+	
+	private static def Method findVirtualThreadExecutorFactory() {
+		try {
+			return Executors.getMethod('newVirtualThreadPerTaskExecutor')
+		} catch (NoSuchMethodException exception) {
+			return null
+		}
+	}
+	
+	/**
+	 * Whether the Java runtime supports virtual threads.
+	 */
+	def boolean isVirtualThreadsSupported() {
+		VIRTUAL_THREAD_EXECUTOR_FACTORY !== null
+	}
+	
+	override protected createExecutor(String key) {
+		if (virtualThreadsSupported && useVirtualThreads(key)) {
+			try {
+				return VIRTUAL_THREAD_EXECUTOR_FACTORY.invoke(null) as ExecutorService
+			} catch (ReflectiveOperationException exception) {
+				LOG.warn('Failed to create a virtual thread executor, using the default executor instead.', exception)
+			}
+		}
+		return super.createExecutor(key)
+	}
+	
+	/**
+	 * Whether the executor with the given key shall use virtual threads. The default is {@code true}
+	 * for all executors except the one for precomputed services.
+	 */
+	protected def boolean useVirtualThreads(String key) {
+		key != PRECOMPUTATION_EXECUTOR
+	}
+	
+}
@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.server.model
+
+import com.google.inject.Singleton
+import java.lang.ref.WeakReference
+import java.util.LinkedHashMap
+import java.util.List
+import java.util.Map
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import org.eclipse.xtend.lib.annotations.Accessors
+import org.eclipse.xtend.lib.annotations.Data
+import org.eclipse.xtext.util.internal.Log
+import org.eclipse.xtext.web.server.ISession
+
+/**
+ * Server-wide registry of the documents stored in sessions. The registry tracks the approximate memory
+ * used by each document and enforces the {@link #getMemoryBudget() memory budget} across all sessions.
+ * When the budget is exceeded, the least recently used documents are released. A document is first
+ * {@link XtextWebDocument#passivate() passivated}, which keeps its text and state identifier, so clients
+ * can continue working with it. Clean documents that are already passivated or cannot be passivated are
+ * removed from their session; they are loaded again from the resource handler when requested, and they
+ * get a new state identifier then, so clients that still refer to the old state have to reload them.
+ * Dirty documents are never removed, since their text must be kept.
+ * 
+ * <p>Documents and sessions are referenced weakly, so the registry does not prevent expired sessions
+ * from being garbage collected. Hence the {@link ISession} passed to {@link #accessed(XtextWebDocument, ISession)}
+ * must be the same instance for all requests of a session, and it must live as long as the session.</p>
+ */
+@Log
+@Singleton
+class WebDocumentRegistry {
+	
+	/**
+	 * Statistics about the documents held by the registry.
+	 */
+	@Data
+	static class Stats {
+		int documentCount
+		long estimatedSize
+		long evictionCount
+		long passivationCount
+	}
+	
+	protected static class Entry {
+		val WeakReference<XtextWebDocument> document
+		val WeakReference<ISession> session
+		long size
+		
+		new(XtextWebDocument document, ISession session) {
+			this.document = new WeakReference(document)
+			this.session = new WeakReference(session)
+		}
+	}
+	
+	/**
+	 * The maximum number of bytes used by all registered documents.
+	 */
+	@Accessors
+	volatile long memoryBudget = 512 * 1024 * 1024
+	
+	/**
+	 * Entries in access order, i.e. the least recently used document comes first. The entries are
+	 * used as keys, since the documents must not be referenced strongly.
+	 */
+	val Map<Entry, Entry> entries = new LinkedHashMap(64, 0.75f, true)
+	
+	long totalSize
+	
+	val evictionCount = new AtomicLong
+	
+	val passivationCount = new AtomicLong
+	
+	/**
+	 * Record an access to the given document, which is stored in the given session, and release
+	 * other documents if the memory budget is exceeded.
+	 */
+	def void accessed(XtextWebDocument document, ISession session) {
+		if (document.resourceId === null)
+			return
+		val size = estimateSize(document)
+		val List<Entry> candidates = newArrayList
+		synchronized (entries) {
+			var entry = document.registryEntry
+			if (entry === null || entry.session.get !== session || entries.get(entry) === null) {
+				if (entry !== null && entries.remove(entry) !== null)
+					totalSize -= entry.size
+				entry = new Entry(document, session)
+				document.registryEntry = entry
+				entries.put(entry, entry)
+			}
+			totalSize += size - entry.size
+			entry.size = size
+			if (totalSize > memoryBudget) {
+				val current = entry
+				candidates += entries.keySet.filter[it !== current]
+			}
+		}
+		if (!candidates.empty)
+			release(candidates)
+	}
+	
+	/**
+	 * Release documents in the given order until the memory budget is met.
+	 */
+	protected def void release(List<Entry> candidates) {
+		for (entry : candidates) {
+			synchronized (entries) {
+				if (totalSize <= memoryBudget)
+					return
+			}
+			val document = entry.document.get
+			if (document === null) {
+				remove(entry)
+			} else if (!document.passivated && passivate(document)) {
+				passivationCount.incrementAndGet
+				update(entry, estimateSize(document))
+			} else if (!document.dirty) {
+				evict(document, entry)
+			}
+		}
+	}
+	
+	protected def boolean passivate(XtextWebDocument document) {
+		val synchronizer = document.synchronizer
+		if (!synchronizer.tryAcquireLockUncancelable(true, 0, TimeUnit.MILLISECONDS))
+			return false
+		try {
+			return document.passivate()
+		} finally {
+			synchronizer.releaseLock(true)
+		}
+	}
+	
+	/**
+	 * Remove the given clean document from its session. The document is passivated as well, since it
+	 * may still be referenced by requests that are currently processed.
+	 */
+	protected def void evict(XtextWebDocument document, Entry entry) {
+		val session = entry.session.get
+		if (session !== null) {
+			val key = XtextWebDocument -> document.resourceId
+			try {
+				if (session.get(key) === document)
+					session.remove(key)
+			} catch (IllegalStateException exception) {
+				// The session has been invalidated already
+			}
+		}
+		passivate(document)
+		remove(entry)
+		evictionCount.incrementAndGet
+		LOG.trace('Evicted document ' + document.resourceId)
+	}
+	
+	private def void update(Entry entry, long size) {
+		synchronized (entries) {
+			if (entries.containsKey(entry)) {
+				totalSize += size - entry.size
+				entry.size = size
+			}
+		}
+	}
+	
+	private def void remove(Entry entry) {
+		synchronized (entries) {
+			if (entries.remove(entry) !== null)
+				totalSize -= entry.size
+		}
+	}
+	
+	/**
+	 * Estimate the number of bytes retained by the given document. The default assumes two bytes per
+	 * character for the text, and about 16 times the size of the text for the parse tree and the
+	 * semantic model unless the document is passivated. The size of the cached service results is added.
+	 */
+	protected def long estimateSize(XtextWebDocument document) {
+		val textSize = 2L * document.textLength
+		val modelSize = if (document.passivated) 0L else 16L * textSize
+		return 256L + textSize + modelSize + document.cachedServiceResultsSize
+	}
+	
+	/**
+	 * Return statistics about the registered documents, evictions and passivations.
+	 */
+	def Stats getStats() {
+		synchronized (entries) {
+			new Stats(entries.size, totalSize, evictionCount.get, passivationCount.get)
+		}
+	}
+	
+}
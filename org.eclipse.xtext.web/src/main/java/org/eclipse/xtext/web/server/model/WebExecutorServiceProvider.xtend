@@ -0,0 +1,40 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.server.model
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder
+import com.google.inject.Singleton
+import java.util.concurrent.Executors
+import org.eclipse.xtext.ide.ExecutorServiceProvider
+
+/**
+ * Executor service provider for the web integration. Precomputed services are executed on a pool
+ * with a bounded number of threads, so that frequent document changes cannot flood the server with
+ * computations. All other executors are created by the superclass.
+ */
+@Singleton
+class WebExecutorServiceProvider extends ExecutorServiceProvider {
+	
+	public static val PRECOMPUTATION_EXECUTOR = 'precomputation'
+	
+	override protected createExecutor(String key) {
+		if (key == PRECOMPUTATION_EXECUTOR) {
+			val threadFactory = new ThreadFactoryBuilder().setNameFormat('xtext-precomputation-%d').setDaemon(true).build
+			return Executors.newFixedThreadPool(precomputationThreads, threadFactory)
+		}
+		return super.createExecutor(key)
+	}
+	
+	/**
+	 * The number of threads used for precomputed services. The default is the number of available processors.
+	 */
+	protected def int getPrecomputationThreads() {
+		Runtime.runtime.availableProcessors
+	}
+	
+}
@@ -7,11 +7,17 @@
  *******************************************************************************/
 package org.eclipse.xtext.web.server.model
 
+import java.util.List
 import java.util.Map
+import java.util.Set
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
 import org.eclipse.xtend.lib.annotations.Accessors
 import org.eclipse.xtend.lib.annotations.FinalFieldsConstructor
 import org.eclipse.xtext.resource.XtextResource
 import org.eclipse.xtext.util.CancelIndicator
+import org.eclipse.xtext.util.StringInputStream
 import org.eclipse.xtext.util.internal.Log
 import org.eclipse.xtext.web.server.IServiceResult
 
@@ -26,39 +32,223 @@ class XtextWebDocument implements IXtextWebDocument {
 	val String resourceId
 	
 	@Accessors(PACKAGE_GETTER)
-    val DocumentSynchronizer synchronizer
+	val DocumentSynchronizer synchronizer
 	
-	@Accessors(PUBLIC_GETTER)
 	XtextResource resource
 	
-	@Accessors(PUBLIC_GETTER)
-	String text
+	/**
+	 * The text content of the document, which is updated incrementally. It includes changes
+	 * that have not been applied to the resource yet.
+	 */
+	val DocumentText text = new DocumentText
+	
+	/**
+	 * Start of the region of the text that has been changed without updating the resource,
+	 * or -1 if there is no pending change.
+	 */
+	volatile int pendingOffset = -1
+	
+	/**
+	 * Length of the changed region in the text that is currently contained in the resource.
+	 */
+	int pendingOldLength
+	
+	/**
+	 * Length of the changed region in the current text.
+	 */
+	int pendingNewLength
 	
 	@Accessors
 	boolean dirty
-    
-    val Map<Class<?>, IServiceResult> cachedServiceResults = newHashMap
-    
-    /**
-     * Clear any cached result of {@link AbstractCachedService}. This method is called whenever the text
-     * content of the resource is modified, but it may be necessary to clear the cached services in other
-     * cases, too.
-     */
+	
+	/**
+	 * Whether the resource has been unloaded in order to save memory. It is parsed again on the next access.
+	 */
+	volatile boolean passivated
+	
+	/**
+	 * The modification stamp of the resource at the time it was passivated, incremented by subsequent
+	 * state changes. It is assigned to the resource again when it is parsed.
+	 */
+	long passivatedModificationStamp
+	
+	/**
+	 * Whether all lazy cross-references of the resource have been resolved since it was last modified.
+	 * As long as this is not the case, read-only access may modify the resource by resolving proxies.
+	 */
+	volatile boolean fullyResolved
+	
+	/**
+	 * Whether this document is shared between requests through the {@link FullTextDocumentCache}.
+	 * Shared documents cache their service results although they are not associated with a resource id.
+	 */
+	@Accessors(PUBLIC_GETTER, PACKAGE_SETTER)
+	boolean shared
+	
+	/**
+	 * The time of the last access to this document in milliseconds.
+	 */
+	@Accessors(PUBLIC_GETTER)
+	volatile long lastAccessTime = System.currentTimeMillis
+	
+	/**
+	 * The entry of this document in the {@link WebDocumentRegistry}.
+	 */
+	@Accessors(PACKAGE_GETTER, PACKAGE_SETTER)
+	WebDocumentRegistry.Entry registryEntry
+	
+	/**
+	 * Cached results are synchronized, since read-only services may run in parallel when
+	 * a {@link ReadWriteDocumentSynchronizer} is used. A published snapshot is discarded when
+	 * one of its results is evicted from the cache, so the evicted result can be reclaimed.
+	 */
+	val ServiceResultCache cachedServiceResults = new ServiceResultCache([ service |
+		val s = snapshot
+		if (s !== null && s.serviceResults.containsKey(service))
+			snapshot = null
+	])
+	
+	/**
+	 * The number of results of each {@link AbstractCachedService} that are retained for previous
+	 * states of the document. Retained results allow to compute the difference between the current
+	 * result and a result the client has already received, so they are kept only for services that
+	 * {@link AbstractCachedService#isDeltaSupported() support deltas}. They are counted in the budget
+	 * of the {@link ServiceResultCacheManager}.
+	 */
+	@Accessors
+	int resultHistorySize = 3
+	
+	val List<IPrecomputationListener> precomputationListeners = new CopyOnWriteArrayList
+	
+	/**
+	 * Results of requests that are currently being computed, identified by the result tags
+	 * of the requests. Used to coalesce identical concurrent requests.
+	 */
+	@Accessors(PACKAGE_GETTER)
+	val Map<String, CompletableFuture<Object>> pendingResults = new ConcurrentHashMap
+	
+	/**
+	 * The cached services whose results have been requested by the client.
+	 */
+	val Set<AbstractCachedService<?>> requestedServices = ConcurrentHashMap.newKeySet
+	
+	/**
+	 * The most recently published snapshot of this document. It may refer to an outdated state,
+	 * or it may be {@code null} if no snapshot has been published since the last modification.
+	 */
+	@Accessors(PUBLIC_GETTER)
+	volatile DocumentSnapshot snapshot
+	
+	/**
+	 * Clear any cached result of {@link AbstractCachedService}. This method is called whenever the text
+	 * content of the resource is modified, but it may be necessary to clear the cached services in other
+	 * cases, too.
+	 */
 	def clearCachedServiceResults() {
+		snapshot = null
 		cachedServiceResults.clear
 	}
 	
+	/**
+	 * Assign the manager that limits the memory used by the cached service results of this document.
+	 * Without a manager, the cached results are not limited.
+	 */
+	def void setResultCacheManager(ServiceResultCacheManager manager) {
+		cachedServiceResults.manager = manager
+	}
+	
 	def <T extends IServiceResult> T getCachedServiceResult(AbstractCachedService<T> service,
 			CancelIndicator cancelIndicator, boolean logCacheMiss) {
-		cachedServiceResults.get(service.class) as T ?: {
+		cachedServiceResults.get(service) ?: {
 			if (logCacheMiss)
 				LOG.trace("Cache miss for " + service.class.simpleName)
 			val result = service.compute(this, cancelIndicator)
-			cachedServiceResults.put(service.class, result)
+			cachedServiceResults.put(service, result)
+			if (service.deltaSupported)
+				retainServiceResult(service, result)
+			if (snapshot?.stateId == stateId)
+				publishSnapshot()
 			result
 		}
 	}
-    
+	
+	/**
+	 * Publish a snapshot of the current state including all cached service results. This must be
+	 * done while holding the document lock, so the state cannot change during the operation.
+	 */
+	protected def void publishSnapshot() {
+		if (resource === null || hasPendingTextChange)
+			return
+		snapshot = new DocumentSnapshot(stateId, cachedServiceResults.copyResults)
+	}
+	
+	/**
+	 * Return the result of the given service that was computed for the given state of the document,
+	 * or {@code null} if no such result is retained.
+	 */
+	def <T extends IServiceResult> T getRetainedServiceResult(AbstractCachedService<T> service, String stateId) {
+		if (stateId === null)
+			return null
+		return cachedServiceResults.getRetained(service, stateId)
+	}
+	
+	/**
+	 * Add the given result to the history of results for the current state. The oldest results
+	 * are discarded when the history exceeds the configured {@link #getResultHistorySize() size}.
+	 */
+	protected def void retainServiceResult(AbstractCachedService<?> service, IServiceResult result) {
+		if (resultHistorySize <= 0 || resource === null)
+			return
+		cachedServiceResults.retain(service, stateId, result, resultHistorySize)
+	}
+	
+	/**
+	 * Record that the client has requested the result of the given service.
+	 */
+	def void recordServiceRequest(AbstractCachedService<?> service) {
+		requestedServices += service
+	}
+	
+	/**
+	 * Whether the client has requested the result of the given service for this document.
+	 */
+	def boolean isServiceRequested(AbstractCachedService<?> service) {
+		requestedServices.contains(service)
+	}
+	
+	/**
+	 * Whether the client has requested the result of any cached service for this document.
+	 */
+	def boolean isAnyServiceRequested() {
+		!requestedServices.empty
+	}
+	
+	/**
+	 * Register a listener that is notified about the results of precomputed services.
+	 */
+	def void addPrecomputationListener(IPrecomputationListener listener) {
+		if (!precomputationListeners.contains(listener))
+			precomputationListeners += listener
+	}
+	
+	def void removePrecomputationListener(IPrecomputationListener listener) {
+		precomputationListeners -= listener
+	}
+	
+	/**
+	 * Notify the registered listeners that a precomputed service has produced a result.
+	 */
+	protected def void notifyPrecomputationListeners(AbstractCachedService<?> service, IServiceResult result,
+			String stateId) {
+		for (listener : precomputationListeners) {
+			try {
+				listener.precomputationFinished(this, service, result, stateId)
+			} catch (RuntimeException exception) {
+				LOG.error('Error in precomputation listener.', exception)
+			}
+		}
+	}
+	
 	override toString() {
 		if (resourceId !== null) {
 			return class.simpleName + '(' + resourceId + ')'
@@ -67,35 +257,244 @@ class XtextWebDocument implements IXtextWebDocument {
 	}
 	
 	def setInput(XtextResource resource) {
+		pendingOffset = -1
+		passivated = false
+		fullyResolved = false
 		clearCachedServiceResults()
+		cachedServiceResults.clearRetained()
 		this.resource = resource
-		refreshText()
+		text.reset(resource.parseResult?.rootNode?.text ?: '')
+	}
+	
+	/**
+	 * Return the resource of this document. A pending text change is applied before.
+	 */
+	override getResource() {
+		rehydrate()
+		applyPendingTextChange()
+		return resource
+	}
+	
+	/**
+	 * Return the text content of this document, including a pending text change. The text is
+	 * maintained incrementally, so the resource is not accessed.
+	 */
+	override getText() {
+		return text.toString
+	}
+	
+	/**
+	 * The length of the text content. This does not require materializing the text.
+	 */
+	def int getTextLength() {
+		text.length
 	}
 	
-	protected def refreshText() {
-		text = resource.parseResult?.rootNode?.text ?: ''
+	/**
+	 * The estimated number of bytes used by the cached service results of this document.
+	 */
+	def long getCachedServiceResultsSize() {
+		cachedServiceResults.size
+	}
+	
+	/**
+	 * The number of lines of the text content.
+	 */
+	def int getLineCount() {
+		text.lineCount
+	}
+	
+	/**
+	 * The offset at which the given zero-based line of the text content starts.
+	 */
+	def int getLineOffset(int line) {
+		text.getLineOffset(line)
+	}
+	
+	/**
+	 * The zero-based line of the text content that contains the given offset.
+	 */
+	def int getLineOfOffset(int offset) {
+		text.getLineOfOffset(offset)
 	}
 	
 	override getStateId() {
-		return Long.toString(resource.modificationStamp, 16)
+		val modificationStamp = if (passivated) passivatedModificationStamp else resource.modificationStamp
+		return Long.toString(modificationStamp, 16)
 	}
 	
 	/**
 	 * Replace the text contents of the contained resource with the given text.
 	 */
 	override setText(String text) {
+		rehydrate()
+		pendingOffset = -1
+		fullyResolved = false
 		clearCachedServiceResults()
 		resource.reparse(text)
-		refreshText()
+		this.text.reset(text)
 	}
 	
 	/**
-	 * Update a part of the text.
+	 * Update a part of the text. If a text change is pending, both changes are merged
+	 * so the resource is updated only once.
 	 */
 	override updateText(String text, int offset, int replaceLength) {
+		if (hasPendingTextChange) {
+			deferTextChange(text, offset, replaceLength)
+			applyPendingTextChange()
+		} else {
+			rehydrate()
+			clearCachedServiceResults()
+			fullyResolved = false
+			this.text.replace(offset, replaceLength, text)
+			resource.update(offset, replaceLength, text)
+		}
+	}
+	
+	/**
+	 * Whether a text change has been assigned to the document that has not been applied to the resource yet.
+	 */
+	def boolean hasPendingTextChange() {
+		pendingOffset >= 0
+	}
+	
+	/**
+	 * Assign the given text to the document without updating the resource. The change is applied
+	 * when the resource is accessed next, or it is merged with subsequent changes. Only the region
+	 * that actually differs from the current text is recorded, so the resource can be reparsed partially.
+	 */
+	def void deferTextChange(String fullText) {
+		val oldText = text.toString
+		val maxLength = Math.min(oldText.length, fullText.length)
+		var prefix = 0
+		while (prefix < maxLength && oldText.charAt(prefix) == fullText.charAt(prefix))
+			prefix++
+		var suffix = 0
+		while (suffix < maxLength - prefix
+				&& oldText.charAt(oldText.length - suffix - 1) == fullText.charAt(fullText.length - suffix - 1))
+			suffix++
+		clearCachedServiceResults()
+		if (prefix == oldText.length && prefix == fullText.length)
+			return
+		deferTextChange(fullText.substring(prefix, fullText.length - suffix), prefix, oldText.length - prefix - suffix)
+	}
+	
+	/**
+	 * Apply the given change to the document text without updating the resource. The change is applied
+	 * when the resource is accessed next, or it is merged with subsequent changes. Changes with an offset
+	 * beyond the end of the text are ignored.
+	 */
+	def void deferTextChange(String text, int offset, int replaceLength) {
+		if (offset > this.text.length)
+			return
+		val length = Math.min(replaceLength, this.text.length - offset)
+		clearCachedServiceResults()
+		fullyResolved = false
+		if (hasPendingTextChange) {
+			// Extend the pending region so that it covers both changes
+			val start = Math.min(pendingOffset, offset)
+			val end = Math.max(pendingOffset + pendingNewLength, offset + length)
+			pendingOldLength = end - start - pendingNewLength + pendingOldLength
+			pendingNewLength = end - start + text.length - length
+			pendingOffset = start
+		} else {
+			pendingOldLength = length
+			pendingNewLength = text.length
+			pendingOffset = offset
+		}
+		this.text.replace(offset, length, text)
+	}
+	
+	/**
+	 * Apply a pending text change to the resource. Only the region covered by the pending
+	 * changes is passed to the resource, so it can be reparsed partially.
+	 */
+	def void applyPendingTextChange() {
+		val offset = pendingOffset
+		if (offset < 0)
+			return
+		pendingOffset = -1
+		if (passivated) {
+			// The resource is parsed from the current text anyway
+			rehydrate()
+			return
+		}
+		clearCachedServiceResults()
+		fullyResolved = false
+		resource.update(offset, pendingOldLength, text.subSequence(offset, offset + pendingNewLength).toString)
+	}
+	
+	/**
+	 * Whether the resource of this document has been unloaded with {@link #passivate()}.
+	 */
+	def boolean isPassivated() {
+		passivated
+	}
+	
+	/**
+	 * Whether read-only access to this document must be exclusive nevertheless, because accessing
+	 * the resource would modify it. This is the case if a text change is pending, the resource
+	 * has been passivated, or its lazy cross-references have not been resolved yet.
+	 */
+	def boolean requiresExclusiveAccess() {
+		hasPendingTextChange || passivated || !fullyResolved
+	}
+	
+	/**
+	 * Whether all lazy cross-references of the resource have been resolved since it was last modified.
+	 */
+	def boolean isFullyResolved() {
+		fullyResolved
+	}
+	
+	/**
+	 * Record that all lazy cross-references of the resource have been resolved. This must be done while
+	 * holding the exclusive document lock. The flag is reset whenever the resource is modified.
+	 */
+	package def void setFullyResolved(boolean fullyResolved) {
+		this.fullyResolved = fullyResolved
+	}
+	
+	package def void recordAccess() {
+		lastAccessTime = System.currentTimeMillis
+	}
+	
+	/**
+	 * Unload the resource of this document in order to save memory. Only the text, the state identifier
+	 * and the dirty flag are kept; cached service results are discarded. The resource is parsed again with
+	 * the same state identifier when it is accessed next. Resources that share their resource set with
+	 * other resources are not passivated, since references from those resources could trigger loading
+	 * the original content from the resource URI. This must be done while holding the exclusive document lock.
+	 * 
+	 * @return whether the document has been passivated
+	 */
+	def boolean passivate() {
+		if (resource === null || passivated)
+			return false
+		val resourceSet = resource.resourceSet
+		if (resourceSet !== null && resourceSet.resources.exists[it !== resource])
+			return false
+		pendingOffset = -1
+		fullyResolved = false
 		clearCachedServiceResults()
-		resource.update(offset, replaceLength, text)
-		refreshText()
+		cachedServiceResults.clearRetained()
+		passivatedModificationStamp = resource.modificationStamp
+		resource.unload()
+		passivated = true
+		return true
+	}
+	
+	/**
+	 * Parse the text of a passivated document again, keeping the state identifier.
+	 */
+	protected def void rehydrate() {
+		if (!passivated)
+			return
+		resource.load(new StringInputStream(text.toString), emptyMap)
+		resource.modificationStamp = passivatedModificationStamp
+		pendingOffset = -1
+		passivated = false
 	}
 	
 	/**
@@ -104,8 +503,12 @@ class XtextWebDocument implements IXtextWebDocument {
 	 * is received by the server, the request is rejected.
 	 */
 	override createNewStateId() {
-		val newStateId = resource.modificationStamp + 1
-		resource.modificationStamp = newStateId
+		if (passivated) {
+			passivatedModificationStamp = passivatedModificationStamp + 1
+		} else {
+			val newStateId = resource.modificationStamp + 1
+			resource.modificationStamp = newStateId
+		}
 	}
 	
 }
\ No newline at end of file
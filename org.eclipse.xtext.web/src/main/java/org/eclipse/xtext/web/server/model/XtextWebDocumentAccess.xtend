@@ -9,8 +9,13 @@ package org.eclipse.xtext.web.server.model
 
 import com.google.inject.Inject
 import com.google.inject.Provider
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.ExecutionException
 import java.util.concurrent.ExecutorService
 import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
 import org.eclipse.xtend.lib.annotations.Delegate
 import org.eclipse.xtend.lib.annotations.FinalFieldsConstructor
 import org.eclipse.xtext.EcoreUtil2
@@ -19,8 +24,10 @@ import org.eclipse.xtext.service.OperationCanceledManager
 import org.eclipse.xtext.util.CancelIndicator
 import org.eclipse.xtext.util.concurrent.CancelableUnitOfWork
 import org.eclipse.xtext.util.internal.Log
+import org.eclipse.xtext.xbase.lib.Exceptions
 import org.eclipse.xtext.web.server.IServiceResult
 import org.eclipse.xtext.web.server.InvalidRequestException.InvalidDocumentStateException
+import org.eclipse.xtext.web.server.InvalidRequestException.ServiceTimeoutException
 
 /** 
  * Accessor class for documents. Use {@link #readOnly(CancelableUnitOfWork)} to
@@ -37,6 +44,8 @@ import org.eclipse.xtext.web.server.InvalidRequestException.InvalidDocumentState
 	@Inject PrecomputedServiceRegistry preComputedServiceRegistry
 	
 	@Inject OperationCanceledManager operationCanceledManager
+	
+	@Inject DocumentPassivationPolicy passivationPolicy
 
 	/** 
 	 * Executor service for runnables that are run when the lock is already acquired 
@@ -46,11 +55,26 @@ import org.eclipse.xtext.web.server.InvalidRequestException.InvalidDocumentState
 	 * A second executor service for runnables that aquire the document lock themselves 
 	 */
 	ExecutorService executorService2
+	/**
+	 * Executor service for the precomputation of cached services
+	 */
+	ExecutorService precomputationExecutor
 	
 	XtextWebDocument document
 
 	String requiredStateId
 	boolean skipAsyncWork
+	
+	/**
+	 * Whether the document lock is currently held by a batch started with {@code batchReadOnly}.
+	 */
+	boolean batchLockHeld
+	
+	/**
+	 * The deadline for work units executed with this accessor in terms of {@link System#nanoTime()},
+	 * or {@code null} if there is no deadline.
+	 */
+	Long deadline
 
 	static class Factory {
 
@@ -75,12 +99,14 @@ import org.eclipse.xtext.web.server.InvalidRequestException.InvalidDocumentState
 	protected def void setExecutorServiceProvider(ExecutorServiceProvider executorServiceProvider) {
 		executorService1 = executorServiceProvider.get(DOCUMENT_LOCK_EXECUTOR)
 		executorService2 = executorServiceProvider.get
+		precomputationExecutor = executorServiceProvider.get(WebExecutorServiceProvider.PRECOMPUTATION_EXECUTOR)
 	}
 
 	protected def void init(XtextWebDocument document, String requiredStateId, boolean skipAsyncWork) {
 		this.document = document
 		this.requiredStateId = requiredStateId
 		this.skipAsyncWork = skipAsyncWork
+		passivationPolicy.accessed(document)
 	}
 
 	protected def void checkStateId() throws InvalidDocumentStateException {
@@ -89,6 +115,93 @@ import org.eclipse.xtext.web.server.InvalidRequestException.InvalidDocumentState
 		}
 	}
 
+	/**
+	 * Execute the given function, unless an identical request with the same tag is already being
+	 * processed for the same document. In that case, wait for the result of that request and
+	 * return it instead of computing it again. Exceptions thrown by the first request are rethrown
+	 * to all coalesced requests. If no tag is given, the function is always executed. Coalesced
+	 * requests wait no longer than the deadline of this accessor.
+	 */
+	def <T> T coalesce(String tag, ()=>T function) {
+		if (tag === null)
+			return function.apply()
+		val pendingResults = document.pendingResults
+		val future = new CompletableFuture<Object>
+		val existing = pendingResults.putIfAbsent(tag, future)
+		if (existing !== null) {
+			LOG.trace('Coalescing request with pending request for ' + document.resourceId)
+			try {
+				if (deadline === null)
+					return existing.get() as T
+				else
+					return existing.get(deadline - System.nanoTime, TimeUnit.NANOSECONDS) as T
+			} catch (ExecutionException exception) {
+				throw Exceptions.sneakyThrow(exception.cause)
+			} catch (TimeoutException exception) {
+				throw new ServiceTimeoutException('The request could not be completed in time.', exception)
+			}
+		}
+		try {
+			val result = function.apply()
+			future.complete(result)
+			return result
+		} catch (Throwable throwable) {
+			future.completeExceptionally(throwable)
+			throw throwable
+		} finally {
+			pendingResults.remove(tag, future)
+		}
+	}
+
+	/**
+	 * Set a timeout for the work units executed with this accessor, starting now. If the document lock
+	 * cannot be obtained in time, a {@link ServiceTimeoutException} is thrown. Read-only work units are
+	 * canceled when the timeout expires, which also leads to a {@code ServiceTimeoutException}. A timeout
+	 * of zero means no timeout.
+	 */
+	def void setTimeout(long timeout, TimeUnit unit) {
+		if (timeout > 0)
+			deadline = System.nanoTime + unit.toNanos(timeout)
+		else
+			deadline = null
+	}
+
+	/**
+	 * Create the cancel indicator to be passed to work units. Read-only work units are canceled
+	 * when the deadline of this accessor has passed.
+	 */
+	protected def CancelIndicator createCancelIndicator(DocumentSynchronizer synchronizer, boolean modify) {
+		if (deadline === null || modify)
+			return synchronizer
+		else
+			return new DeadlineCancelIndicator(synchronizer, deadline)
+	}
+
+	/**
+	 * Execute the given work unit with the given cancel indicator, translating a cancellation caused
+	 * by an expired deadline into a {@link ServiceTimeoutException}.
+	 */
+	protected def <T> T exec(CancelableUnitOfWork<T, IXtextWebDocument> work, IXtextWebDocument documentAccess,
+			CancelIndicator cancelIndicator) {
+		work.cancelIndicator = cancelIndicator
+		try {
+			return work.exec(documentAccess)
+		} catch (Throwable throwable) {
+			if (cancelIndicator instanceof DeadlineCancelIndicator && (cancelIndicator as DeadlineCancelIndicator).expired
+					&& operationCanceledManager.isOperationCanceledException(throwable))
+				throw new ServiceTimeoutException('The request could not be completed in time.', throwable)
+			throw throwable
+		}
+	}
+
+	/**
+	 * Whether the access requires a specific state id and the document is currently in that state.
+	 * The document lock is not acquired, so the state may change right after this method returns.
+	 */
+	def boolean hasRequiredState() {
+		requiredStateId !== null && requiredStateId == document.stateId
+	}
+
 	/** 
 	 * Execute the given work unit with read-only access and return its result.
 	 */
@@ -128,18 +241,84 @@ import org.eclipse.xtext.web.server.InvalidRequestException.InvalidDocumentState
 		return doAccess(work, true, true, null)
 	}
 
+	/**
+	 * Execute the given function while holding the document lock for read-only access. The state
+	 * identifier is checked once before the function is invoked. All read-only work units that are
+	 * passed to this accessor from within the function reuse the lock instead of acquiring it again;
+	 * no background work is started for them. Modifying the document is not allowed in a batch.
+	 */
+	def <T> T batchReadOnly(()=>T batch) {
+		if (batchLockHeld)
+			return batch.apply()
+		val synchronizer = document.synchronizer
+		// A pending text change or a passivated resource requires exclusive access
+		var exclusive = document.requiresExclusiveAccess
+		var currentThreadOwnsLock = true
+		try {
+			if (!acquireLock(synchronizer, false, exclusive)) {
+				currentThreadOwnsLock = false
+				throw new ServiceTimeoutException('The document lock could not be obtained in time.')
+			}
+			if (!exclusive && document.requiresExclusiveAccess) {
+				synchronizer.releaseLock(false)
+				exclusive = true
+				if (!acquireLock(synchronizer, false, exclusive)) {
+					currentThreadOwnsLock = false
+					throw new ServiceTimeoutException('The document lock could not be obtained in time.')
+				}
+			}
+			checkStateId()
+			batchLockHeld = true
+			return batch.apply()
+		} finally {
+			batchLockHeld = false
+			if (currentThreadOwnsLock)
+				synchronizer.releaseLock(exclusive)
+		}
+	}
+	
+	/**
+	 * Acquire the document lock, respecting the deadline of this accessor if there is one.
+	 * Returns {@code false} if the lock could not be acquired in time.
+	 */
+	protected def boolean acquireLock(DocumentSynchronizer synchronizer, boolean priority, boolean exclusive) {
+		if (deadline === null) {
+			synchronizer.acquireLock(priority, exclusive)
+			return true
+		}
+		return synchronizer.tryAcquireLock(priority, exclusive, deadline - System.nanoTime, TimeUnit.NANOSECONDS)
+	}
+	
 	protected def <T> T doAccess(CancelableUnitOfWork<T, IXtextWebDocument> synchronousWork, boolean priority,
 			boolean modify, CancelableUnitOfWork<?, IXtextWebDocument> asynchronousWork) {
+		if (batchLockHeld)
+			return doBatchAccess(synchronousWork, modify)
 		val synchronizer = document.synchronizer
 		val documentAccess = if (modify) document else createReadAccess(document)
+		// Background work is started only for priority access, and it requires exclusive access;
+		// the same holds for applying a pending text change or rehydrating a passivated resource
+		var exclusive = modify || priority || document.requiresExclusiveAccess
 		var currentThreadOwnsLock = true
 		var T result
 		try {
 			// Acquire the lock and execute the main unit of work
-			synchronizer.acquireLock(priority)
+			if (!acquireLock(synchronizer, priority, exclusive)) {
+				currentThreadOwnsLock = false
+				throw new ServiceTimeoutException('The document lock could not be obtained in time.')
+			}
+			if (!exclusive && document.requiresExclusiveAccess) {
+				synchronizer.releaseLock(false)
+				exclusive = true
+				if (!acquireLock(synchronizer, priority, exclusive)) {
+					currentThreadOwnsLock = false
+					throw new ServiceTimeoutException('The document lock could not be obtained in time.')
+				}
+			}
 			checkStateId()
-			synchronousWork.cancelIndicator = synchronizer
-			result = synchronousWork.exec(documentAccess)
+			// The work unit may modify the resource in arbitrary ways
+			if (modify)
+				document.fullyResolved = false
+			result = exec(synchronousWork, documentAccess, createCancelIndicator(synchronizer, modify))
 			requiredStateId = document.stateId
 			
 			if (!skipAsyncWork && priority && documentAccess !== null && !synchronizer.canceled
@@ -152,7 +331,15 @@ import org.eclipse.xtext.web.server.InvalidRequestException.InvalidDocumentState
 							asynchronousWork.cancelIndicator = synchronizer
 							asynchronousWork.exec(documentAccess)
 						}
-						EcoreUtil2.resolveLazyCrossReferences(documentAccess.resource, synchronizer)
+						// A text change that is still pending will be merged with the next modification
+						if (!document.hasPendingTextChange) {
+							EcoreUtil2.resolveLazyCrossReferences(documentAccess.resource, synchronizer)
+							if (!synchronizer.canceled) {
+								// From now on, read-only work units may share the lock
+								document.fullyResolved = true
+								document.publishSnapshot()
+							}
+						}
 					} catch (VirtualMachineError error) {
 						throw error
 					} catch (Throwable throwable) {
@@ -190,27 +377,145 @@ import org.eclipse.xtext.web.server.InvalidRequestException.InvalidDocumentState
 			LOG.error('Failed to start background work.', ree)
 		} finally {
 			if (currentThreadOwnsLock)
-				synchronizer.releaseLock()
+				synchronizer.releaseLock(exclusive)
 		}
 		return result
 	}
 
-	protected def void performPrecomputation(CancelIndicator cancelIndicator) {
-		for (service : preComputedServiceRegistry.getPrecomputedServices()) {
-			operationCanceledManager.checkCanceled(cancelIndicator)
-			getCachedServiceResult(service, false)
+	/**
+	 * Execute a work unit within a batch, i.e. while the lock is already held by the current thread.
+	 */
+	protected def <T> T doBatchAccess(CancelableUnitOfWork<T, IXtextWebDocument> work, boolean modify) {
+		if (modify)
+			throw new IllegalStateException('Cannot modify the document within a read-only batch.')
+		return exec(work, createReadAccess(document), createCancelIndicator(document.synchronizer, false))
+	}
+
+	/**
+	 * Compute the results of the registered precomputed services. Each result is published as soon as it
+	 * is available, and this method returns when all services have been computed. The document lock is
+	 * acquired on the calling thread before a service is handed to the precomputation executor, so the
+	 * threads of that executor never wait for a lock. Services run in parallel only if the synchronizer
+	 * grants shared access, e.g. a {@link ReadWriteDocumentSynchronizer}; the default
+	 * {@link DocumentSynchronizer} computes them one at a time. The deadline of this accessor applies
+	 * to the client request only and is not used for precomputation.
+	 */
+	protected def void performPrecomputation(DocumentSynchronizer synchronizer) {
+		val futures = <Class<?>, CompletableFuture<Void>>newHashMap
+		try {
+			for (service : preComputedServiceRegistry.getPrecomputedServices().filter[isPrecomputationRequired]) {
+				val dependencies = preComputedServiceRegistry.getDependencies(service).map[futures.get(it)].filterNull.toList
+				CompletableFuture.allOf(dependencies).join()
+				operationCanceledManager.checkCanceled(synchronizer)
+				futures.put(service.class, precompute(service, synchronizer))
+			}
+			CompletableFuture.allOf(futures.values.toList).join()
+		} catch (CompletionException exception) {
+			throw Exceptions.sneakyThrow(exception.cause)
+		}
+	}
+
+	/**
+	 * Acquire the document lock for the given service and compute its result on the precomputation
+	 * executor, which releases the lock before notifying the listeners. Results that are already
+	 * available in the published snapshot are notified immediately.
+	 */
+	protected def CompletableFuture<Void> precompute(AbstractCachedService<?> service, DocumentSynchronizer synchronizer) {
+		val snapshotResult = getSnapshotResult(service)
+		if (snapshotResult !== null) {
+			document.notifyPrecomputationListeners(service, snapshotResult, requiredStateId)
+			return CompletableFuture.completedFuture(null)
+		}
+		var exclusive = document.requiresExclusiveAccess
+		synchronizer.acquireLockUncancelable(exclusive)
+		if (!exclusive && document.requiresExclusiveAccess) {
+			synchronizer.releaseLock(false)
+			exclusive = true
+			synchronizer.acquireLockUncancelable(exclusive)
+		}
+		val lockedExclusively = exclusive
+		var submitted = false
+		try {
+			operationCanceledManager.checkCanceled(synchronizer)
+			checkStateId()
+			val future = CompletableFuture.runAsync([
+				var IServiceResult result
+				try {
+					result = computeServiceResult(service, synchronizer, false)
+				} finally {
+					synchronizer.releaseLock(lockedExclusively)
+				}
+				document.notifyPrecomputationListeners(service, result, requiredStateId)
+			], precomputationExecutor)
+			submitted = true
+			return future
+		} finally {
+			if (!submitted)
+				synchronizer.releaseLock(lockedExclusively)
 		}
 	}
 
+	/**
+	 * Whether the given service shall be precomputed for the document. Once the client has requested
+	 * the result of any cached service, only the services it has actually requested are precomputed.
+	 */
+	protected def boolean isPrecomputationRequired(AbstractCachedService<?> service) {
+		!document.anyServiceRequested || document.isServiceRequested(service)
+	}
+
 	protected def <T extends IServiceResult> T getCachedServiceResult(AbstractCachedService<T> service, boolean logCacheMiss) {
+		// Cache misses are logged for client requests, but not for precomputation
+		if (logCacheMiss)
+			document.recordServiceRequest(service)
+		val snapshotResult = getSnapshotResult(service)
+		if (snapshotResult !== null)
+			return snapshotResult
 		return readOnly [d, cancelIndicator |
-			if (document.resourceId !== null) 
-				return document.getCachedServiceResult(service, cancelIndicator, logCacheMiss) 
-			else 
-				return service.compute(document, cancelIndicator)
+			computeServiceResult(service, cancelIndicator, logCacheMiss)
 		]
 	}
 
+	/**
+	 * Compute the result of the given service, using the cache of the document if possible. The
+	 * document lock must be held by the caller.
+	 */
+	protected def <T extends IServiceResult> T computeServiceResult(AbstractCachedService<T> service,
+			CancelIndicator cancelIndicator, boolean logCacheMiss) {
+		if (document.resourceId !== null || document.shared)
+			return document.getCachedServiceResult(service, cancelIndicator, logCacheMiss)
+		else
+			return service.compute(document, cancelIndicator)
+	}
+
+	protected def <T extends IServiceResult, R> R getCachedServiceResult(AbstractCachedService<T> service,
+			String baseStateId, (T, T)=>R function) {
+		document.recordServiceRequest(service)
+		val snapshotResult = getSnapshotResult(service)
+		if (snapshotResult !== null)
+			return function.apply(document.getRetainedServiceResult(service, baseStateId), snapshotResult)
+		return readOnly [d, cancelIndicator |
+			if (document.resourceId !== null || document.shared) {
+				val result = document.getCachedServiceResult(service, cancelIndicator, true)
+				return function.apply(document.getRetainedServiceResult(service, baseStateId), result)
+			} else
+				return function.apply(null, service.compute(document, cancelIndicator))
+		]
+	}
+
+	/**
+	 * Obtain the result of the given service from the published snapshot of the document without
+	 * acquiring the lock. This is possible only if the required state id matches the snapshot and the
+	 * result has already been computed for that state; otherwise {@code null} is returned.
+	 */
+	protected def <T extends IServiceResult> T getSnapshotResult(AbstractCachedService<T> service) {
+		if (batchLockHeld || requiredStateId === null || document.resourceId === null)
+			return null
+		val snapshot = document.snapshot
+		if (snapshot === null || snapshot.stateId != requiredStateId)
+			return null
+		return snapshot.getServiceResult(service)
+	}
+
 	/**
 	 * @since 2.11
 	 */
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.server.persistence
+
+import com.google.common.base.Charsets
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.IOException
+import org.eclipse.xtend.lib.annotations.Data
+
+/**
+ * Compact representation of a document that is sufficient to rebuild it on any server node.
+ * The resource itself is not stored; it is parsed again from the text.
+ */
+@Data
+class DocumentRecord {
+	
+	static val VERSION = 1
+	
+	String resourceId
+	
+	/**
+	 * The URI of the document resource.
+	 */
+	String uri
+	
+	String text
+	
+	String stateId
+	
+	boolean dirty
+	
+	/**
+	 * Encode this record in binary form.
+	 */
+	def byte[] toBytes() {
+		val bytes = new ByteArrayOutputStream(text.length + 64)
+		val output = new DataOutputStream(bytes)
+		output.writeByte(VERSION)
+		output.writeString(resourceId)
+		output.writeString(uri)
+		output.writeString(text)
+		output.writeString(stateId)
+		output.writeBoolean(dirty)
+		output.close()
+		return bytes.toByteArray
+	}
+	
+	/**
+	 * Decode a record that has been encoded with {@link #toBytes()}.
+	 */
+	static def DocumentRecord fromBytes(byte[] bytes) throws IOException {
+		val input = new DataInputStream(new ByteArrayInputStream(bytes))
+		val version = input.readByte
+		if (version != VERSION)
+			throw new IOException('Unsupported document record version: ' + version)
+		return new DocumentRecord(input.readString, input.readString, input.readString, input.readString,
+				input.readBoolean)
+	}
+	
+	private static def void writeString(DataOutputStream output, String value) {
+		// writeUTF is limited to 64KB, which is not sufficient for document texts
+		val bytes = value.getBytes(Charsets.UTF_8)
+		output.writeInt(bytes.length)
+		output.write(bytes)
+	}
+	
+	private static def String readString(DataInputStream input) {
+		val bytes = newByteArrayOfSize(input.readInt)
+		input.readFully(bytes)
+		return new String(bytes, Charsets.UTF_8)
+	}
+	
+}
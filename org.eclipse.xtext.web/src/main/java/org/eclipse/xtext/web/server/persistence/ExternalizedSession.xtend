@@ -0,0 +1,332 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.server.persistence
+
+import com.google.common.base.Charsets
+import com.google.inject.Inject
+import com.google.inject.Provider
+import java.util.Map
+import java.util.concurrent.ConcurrentHashMap
+import org.eclipse.emf.common.util.URI
+import org.eclipse.xtend.lib.annotations.Accessors
+import org.eclipse.xtext.resource.IResourceFactory
+import org.eclipse.xtext.resource.XtextResource
+import org.eclipse.xtext.util.StringInputStream
+import org.eclipse.xtext.util.internal.Log
+import org.eclipse.xtext.web.server.IServiceContext
+import org.eclipse.xtext.web.server.ISession
+import org.eclipse.xtext.web.server.model.IWebDocumentProvider
+import org.eclipse.xtext.web.server.model.IWebResourceSetProvider
+import org.eclipse.xtext.web.server.model.XtextWebDocument
+import org.eclipse.xtext.web.server.model.XtextWebDocumentAccess
+
+/**
+ * Session whose documents are stored in an {@link IKeyValueStore}, so the session can be continued on
+ * any server node that has access to the same store. Documents are externalized as
+ * {@link DocumentRecord}s when they are put into the session and whenever {@link #flush()} is called,
+ * which should happen at the end of each request. A document that is not present on the current node,
+ * or whose record has been changed by another node, is rebuilt from its record, keeping its state
+ * identifier and dirty flag, so requests need not be routed to the same node.
+ * 
+ * <p>Each document is stored as a small version entry, consisting of the state identifier and the
+ * dirty flag, and a record that is stored under a key derived from that version. Looking up a document
+ * reads only the version entry; the record is read only when the document is rebuilt. The version
+ * entry is replaced with {@link IKeyValueStore#compareAndPut(String, byte[], byte[])}, so concurrent
+ * modifications of the same document on different nodes are not merged: a node does not overwrite a
+ * document that has been changed by another node since it was read, but discards its own changes
+ * instead.</p>
+ * 
+ * <p>Other session values, such as document synchronizers and resource sets, are kept only on the
+ * current node, since they can be recreated on demand.</p>
+ */
+@Log
+class ExternalizedSession implements ISession {
+	
+	/**
+	 * Creates sessions for a given session identifier and store. Use the factory of the injector of
+	 * the respective language, since documents are rebuilt with the resource factory of that language.
+	 */
+	static class Factory {
+		
+		@Inject Provider<ExternalizedSession> provider
+		
+		def ExternalizedSession create(String sessionId, IKeyValueStore store) {
+			val session = provider.get
+			session.init(sessionId, store)
+			return session
+		}
+		
+	}
+	
+	@Inject IWebResourceSetProvider resourceSetProvider
+	
+	@Inject IWebDocumentProvider documentProvider
+	
+	@Inject IResourceFactory resourceFactory
+	
+	@Inject XtextWebDocumentAccess.Factory documentAccessFactory
+	
+	@Accessors(PUBLIC_GETTER)
+	String sessionId
+	
+	IKeyValueStore store
+	
+	/** Values that are available on the current node. */
+	val Map<Object, Object> localValues = new ConcurrentHashMap
+	
+	/** The records that have been written to or read from the store most recently, identified by resource id. */
+	val Map<String, DocumentRecord> writtenRecords = new ConcurrentHashMap
+	
+	protected def void init(String sessionId, IKeyValueStore store) {
+		this.sessionId = sessionId
+		this.store = store
+	}
+	
+	/**
+	 * Returns the resource id if the given key identifies a document, or {@code null} otherwise.
+	 */
+	protected def String getDocumentResourceId(Object key) {
+		if (key instanceof Pair<?, ?>) {
+			if (key.key == XtextWebDocument && key.value instanceof String)
+				return key.value as String
+		}
+		return null
+	}
+	
+	/**
+	 * Returns the key under which the version of the document with the given resource id is stored.
+	 */
+	protected def String getStoreKey(String resourceId) {
+		sessionId + '/' + resourceId
+	}
+	
+	/**
+	 * Returns the key under which the record of the given version of a document is stored.
+	 */
+	protected def String getRecordKey(String resourceId, String version) {
+		getStoreKey(resourceId) + '@' + version
+	}
+	
+	/**
+	 * Returns the version of the given record, which changes whenever its state identifier or its
+	 * dirty flag changes.
+	 */
+	protected def String getVersion(DocumentRecord record) {
+		record.stateId + ':' + record.dirty
+	}
+	
+	override <T> get(Object key) {
+		val resourceId = getDocumentResourceId(key)
+		if (resourceId === null)
+			return localValues.get(key) as T
+		val local = localValues.get(key)
+		if (local !== null && !isOutdated(resourceId, readVersion(resourceId)))
+			return local as T
+		synchronized (this) {
+			var version = readVersion(resourceId)
+			val current = localValues.get(key)
+			if (current !== null && !isOutdated(resourceId, version))
+				return current as T
+			// The document is not present on this node, or it has been changed or removed on another node
+			localValues.remove(key)
+			writtenRecords.remove(resourceId)
+			var DocumentRecord stored = null
+			while (stored === null && version !== null) {
+				stored = readRecord(resourceId, version)
+				if (stored === null) {
+					// Another node has replaced the record after the version was read
+					version = readVersion(resourceId)
+				}
+			}
+			if (stored === null)
+				return null
+			val document = restoreDocument(resourceId, stored)
+			localValues.put(key, document)
+			return document as T
+		}
+	}
+	
+	override synchronized <T> get(Object key, ()=>T factory) {
+		val sessionValue = get(key)
+		if (sessionValue !== null) {
+			return sessionValue as T
+		} else {
+			val factoryValue = factory.apply
+			put(key, factoryValue)
+			return factoryValue
+		}
+	}
+	
+	/**
+	 * Store the given value. A {@code null} value removes the key, as with {@link #remove(Object)}.
+	 * A document replaces the record that is currently stored for it.
+	 */
+	override put(Object key, Object value) {
+		if (value === null) {
+			remove(key)
+			return
+		}
+		localValues.put(key, value)
+		val resourceId = getDocumentResourceId(key)
+		if (value instanceof XtextWebDocument && resourceId !== null)
+			writeRecord(value as XtextWebDocument, true)
+	}
+	
+	override remove(Object key) {
+		localValues.remove(key)
+		val resourceId = getDocumentResourceId(key)
+		if (resourceId !== null) {
+			writtenRecords.remove(resourceId)
+			val version = readVersion(resourceId)
+			store.remove(getStoreKey(resourceId))
+			if (version !== null)
+				store.remove(getRecordKey(resourceId, version))
+		}
+	}
+	
+	/**
+	 * Write the records of all documents of this session that have changed since they were written last.
+	 */
+	def void flush() {
+		for (value : localValues.values) {
+			if (value instanceof XtextWebDocument) {
+				if (value.resourceId !== null)
+					writeRecord(value, false)
+			}
+		}
+	}
+	
+	/**
+	 * Write the record of the given document if it has changed since it was written or read last.
+	 * The record is written first, and the version entry that refers to it is replaced afterwards. If
+	 * another node has changed the version entry in the meantime, it is not overwritten unless
+	 * {@code replace} is {@code true}; the local copy of the document is discarded instead, so it is
+	 * rebuilt from the newer record when it is requested next.
+	 */
+	protected def void writeRecord(XtextWebDocument document, boolean replace) {
+		val resourceId = document.resourceId
+		val previous = writtenRecords.get(resourceId)
+		if (!replace && previous !== null && previous.stateId == document.stateId && previous.dirty == document.dirty)
+			return
+		val record = createRecord(document, previous?.uri)
+		val version = record.version
+		val storedVersion = if (replace) readVersion(resourceId) else previous?.version
+		if (storedVersion == version) {
+			writtenRecords.put(resourceId, record)
+			return
+		}
+		val recordKey = getRecordKey(resourceId, version)
+		store.put(recordKey, record.toBytes)
+		if (!store.compareAndPut(getStoreKey(resourceId), storedVersion?.toVersionBytes, version.toVersionBytes)) {
+			if (readVersion(resourceId) != version)
+				store.remove(recordKey)
+			LOG.warn('Document ' + resourceId + ' of session ' + sessionId
+				+ ' has been changed on another node; discarding local changes.')
+			localValues.remove(XtextWebDocument -> resourceId, document)
+			writtenRecords.remove(resourceId, previous)
+			return
+		}
+		if (storedVersion !== null)
+			store.remove(getRecordKey(resourceId, storedVersion))
+		writtenRecords.put(resourceId, record)
+	}
+	
+	/**
+	 * Read the version of the document with the given resource id from the store, or return {@code null}
+	 * if the document is not stored.
+	 */
+	protected def String readVersion(String resourceId) {
+		val bytes = store.get(getStoreKey(resourceId))
+		if (bytes === null)
+			return null
+		return new String(bytes, Charsets.UTF_8)
+	}
+	
+	/**
+	 * Read the record of the given version of a document from the store, or return {@code null}
+	 * if no such record is stored.
+	 */
+	protected def DocumentRecord readRecord(String resourceId, String version) {
+		val bytes = store.get(getRecordKey(resourceId, version))
+		if (bytes === null)
+			return null
+		return DocumentRecord.fromBytes(bytes)
+	}
+	
+	private def byte[] toVersionBytes(String version) {
+		version.getBytes(Charsets.UTF_8)
+	}
+	
+	/**
+	 * Whether the given stored version differs from the version that has been written or read by this
+	 * node most recently, i.e. whether another node has changed or removed the document.
+	 */
+	protected def boolean isOutdated(String resourceId, String storedVersion) {
+		val known = writtenRecords.get(resourceId)
+		return known !== null && storedVersion != known.version
+	}
+	
+	/**
+	 * Create a record of the given document while holding its lock, so the text and the state
+	 * identifier are consistent. The resource is accessed only if the URI is not known yet.
+	 */
+	protected def DocumentRecord createRecord(XtextWebDocument document, String knownUri) {
+		documentAccessFactory.create(document, true).readOnly[ it, cancelIndicator |
+			val uri = knownUri ?: resource.URI.toString
+			new DocumentRecord(resourceId, uri, text, stateId, dirty)
+		]
+	}
+	
+	/**
+	 * Rebuild the document with the given resource id from the given record.
+	 */
+	protected def XtextWebDocument restoreDocument(String resourceId, DocumentRecord record) {
+		val context = new RestoreContext(this)
+		val resourceSet = resourceSetProvider.get(resourceId, context)
+		val uri = URI.createURI(record.uri)
+		val existingResource = resourceSet.getResource(uri, false)
+		if (existingResource !== null)
+			resourceSet.resources.remove(existingResource)
+		val resource = resourceFactory.createResource(uri) as XtextResource
+		resourceSet.resources.add(resource)
+		resource.load(new StringInputStream(record.text), emptyMap)
+		resource.modificationStamp = Long.parseLong(record.stateId, 16)
+		val document = documentProvider.get(resourceId, context)
+		document.setInput(resource)
+		document.dirty = record.dirty
+		writtenRecords.put(resourceId, record)
+		LOG.trace('Restored document ' + resourceId + ' of session ' + sessionId)
+		return document
+	}
+	
+	/**
+	 * Service context used for rebuilding documents. It provides access to the session only.
+	 */
+	protected static class RestoreContext implements IServiceContext {
+		
+		val ISession session
+		
+		new(ISession session) {
+			this.session = session
+		}
+		
+		override getParameterKeys() {
+			emptySet
+		}
+		
+		override getParameter(String key) {
+			null
+		}
+		
+		override getSession() {
+			session
+		}
+		
+	}
+	
+}
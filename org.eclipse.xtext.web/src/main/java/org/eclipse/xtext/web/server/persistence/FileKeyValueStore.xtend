@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.server.persistence
+
+import com.google.common.base.Charsets
+import com.google.common.hash.Hashing
+import com.google.common.util.concurrent.Striped
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.NoSuchFileException
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
+import java.util.Arrays
+import java.util.concurrent.locks.Lock
+
+/**
+ * Key-value store that keeps each value in a file of a directory. The directory can be located on
+ * a shared file system in order to make the values available to multiple server nodes. Values are
+ * written to a temporary file first and then moved to their final location, so readers never
+ * observe partially written values.
+ * 
+ * <p>Write operations hold a lock on a separate lock file of the respective key, which makes them
+ * atomic across server nodes if the file system supports file locks. Lock files are not deleted,
+ * since another node may be waiting for them.</p>
+ */
+class FileKeyValueStore implements IKeyValueStore {
+	
+	val Path directory
+	
+	/** File locks are held by the whole process, so threads of this process are synchronized separately. */
+	val Striped<Lock> localLocks = Striped.lock(64)
+	
+	new(Path directory) {
+		this.directory = directory
+		Files.createDirectories(directory)
+	}
+	
+	/**
+	 * Returns the file that holds the value for the given key. File names are derived from a hash
+	 * of the key, so arbitrary keys can be used.
+	 */
+	protected def Path getFile(String key) {
+		directory.resolve(Hashing.sha256.hashString(key, Charsets.UTF_8).toString)
+	}
+	
+	/**
+	 * Returns the file that is locked while the value for the given key is written.
+	 */
+	protected def Path getLockFile(String key) {
+		directory.resolve(getFile(key).fileName.toString + '.lock')
+	}
+	
+	override get(String key) {
+		try {
+			return Files.readAllBytes(getFile(key))
+		} catch (NoSuchFileException exception) {
+			return null
+		}
+	}
+	
+	override put(String key, byte[] value) {
+		withLock(key) [|
+			write(key, value)
+			return null
+		]
+	}
+	
+	override compareAndPut(String key, byte[] expected, byte[] value) {
+		withLock(key) [|
+			if (!Arrays.equals(get(key), expected))
+				return false
+			write(key, value)
+			return true
+		]
+	}
+	
+	override remove(String key) {
+		withLock(key) [|
+			Files.deleteIfExists(getFile(key))
+			return null
+		]
+	}
+	
+	private def void write(String key, byte[] value) {
+		val file = getFile(key)
+		val tempFile = Files.createTempFile(directory, file.fileName.toString, '.tmp')
+		try {
+			Files.write(tempFile, value)
+			Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+		} finally {
+			Files.deleteIfExists(tempFile)
+		}
+	}
+	
+	/**
+	 * Execute the given operation while holding the lock for the given key.
+	 */
+	protected def <T> T withLock(String key, ()=>T operation) {
+		val localLock = localLocks.get(key)
+		localLock.lock()
+		try {
+			val channel = FileChannel.open(getLockFile(key), StandardOpenOption.CREATE, StandardOpenOption.WRITE)
+			try {
+				val fileLock = channel.lock()
+				try {
+					return operation.apply()
+				} finally {
+					fileLock.release()
+				}
+			} finally {
+				channel.close()
+			}
+		} finally {
+			localLock.unlock()
+		}
+	}
+	
+}
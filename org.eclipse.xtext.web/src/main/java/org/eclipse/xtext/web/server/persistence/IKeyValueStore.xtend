@@ -0,0 +1,40 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.server.persistence
+
+import java.io.IOException
+
+/**
+ * Storage for binary values that is shared by all server nodes, used by {@link ExternalizedSession}.
+ * Implementations must be thread-safe, and all write operations on the same key must be atomic with
+ * respect to each other, also across server nodes.
+ */
+interface IKeyValueStore {
+	
+	/**
+	 * Returns the value stored for the given key, or {@code null} if there is none.
+	 */
+	def byte[] get(String key) throws IOException
+	
+	/**
+	 * Store the given value, replacing any previous value for the same key.
+	 */
+	def void put(String key, byte[] value) throws IOException
+	
+	/**
+	 * Store the given value only if the current value for the same key is equal to {@code expected},
+	 * where {@code null} means that no value is stored. Returns whether the value has been stored.
+	 */
+	def boolean compareAndPut(String key, byte[] expected, byte[] value) throws IOException
+	
+	/**
+	 * Remove the value stored for the given key, if any.
+	 */
+	def void remove(String key) throws IOException
+	
+}
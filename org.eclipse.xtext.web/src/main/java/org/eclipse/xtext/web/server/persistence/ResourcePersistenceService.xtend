@@ -14,6 +14,7 @@ import org.eclipse.xtext.web.server.IServiceContext
 import org.eclipse.xtext.web.server.InvalidRequestException
 import org.eclipse.xtext.web.server.InvalidRequestException.ResourceNotFoundException
 import org.eclipse.xtext.web.server.model.DocumentStateResult
+import org.eclipse.xtext.web.server.model.WebDocumentRegistry
 import org.eclipse.xtext.web.server.model.XtextWebDocument
 import org.eclipse.xtext.web.server.model.XtextWebDocumentAccess
 
@@ -27,6 +28,8 @@ class ResourcePersistenceService {
 	
 	@Inject XtextWebDocumentAccess.Factory documentAccessFactory
 	
+	@Inject WebDocumentRegistry documentRegistry
+	
 	/**
 	 * Load the content of a document.
 	 */
@@ -39,6 +42,7 @@ class ResourcePersistenceService {
 				throw new ResourceNotFoundException('The requested resource was not found.', ioe)
 			}
 		])
+		documentRegistry.accessed(document, serviceContext.session)
 		documentAccessFactory.create(document, false).readOnly[ it, cancelIndicator |
 			new ResourceContentResult(text, stateId, dirty)
 		]
@@ -52,6 +56,7 @@ class ResourcePersistenceService {
 		try {
 			val document = resourceHandler.get(resourceId, serviceContext)
 			serviceContext.session.put(XtextWebDocument -> resourceId, document)
+			documentRegistry.accessed(document, serviceContext.session)
 			return new ResourceContentResult(document.text, document.stateId, false)
 		} catch (IOException ioe) {
 			throw new ResourceNotFoundException('The requested resource was not found.', ioe)
@@ -0,0 +1,31 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.server.syntaxcoloring
+
+import java.util.List
+import org.eclipse.xtend.lib.annotations.Data
+import org.eclipse.xtext.web.server.IServiceResult
+
+/**
+ * Compact encoding of a {@link HighlightingResult}. Each distinct combination of style classes is
+ * listed once in the {@code legend}. The regions are sorted by offset and encoded as a flat
+ * {@code data} array containing three integers per region:
+ * <ol>
+ *   <li>the offset relative to the offset of the previous region (absolute for the first region),</li>
+ *   <li>the length, and</li>
+ *   <li>the index of the style classes in the legend.</li>
+ * </ol>
+ */
+@Data
+class CompactHighlightingResult implements IServiceResult {
+
+	List<String[]> legend
+
+	int[] data
+
+}
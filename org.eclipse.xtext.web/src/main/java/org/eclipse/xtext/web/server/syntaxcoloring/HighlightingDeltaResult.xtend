@@ -0,0 +1,28 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.server.syntaxcoloring
+
+import java.util.List
+import org.eclipse.xtend.lib.annotations.Data
+import org.eclipse.xtext.web.server.IServiceResult
+
+/**
+ * Result object returned by the highlighting service when the client requests the difference
+ * to a result it has received for a previous state of the document. Applying the removed and
+ * added regions to the previous result yields the current result.
+ */
+@Data
+class HighlightingDeltaResult implements IServiceResult {
+	
+	String baseStateId
+	
+	val List<HighlightingResult.Region> added = newArrayList
+	
+	val List<HighlightingResult.Region> removed = newArrayList
+	
+}
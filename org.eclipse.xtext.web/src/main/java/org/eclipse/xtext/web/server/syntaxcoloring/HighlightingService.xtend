@@ -10,6 +10,7 @@ package org.eclipse.xtext.web.server.syntaxcoloring
 import com.google.inject.Inject
 import com.google.inject.Singleton
 import java.util.List
+import java.util.Map
 import org.eclipse.xtext.ide.editor.syntaxcoloring.IHighlightedPositionAcceptor
 import org.eclipse.xtext.ide.editor.syntaxcoloring.ISemanticHighlightingCalculator
 import org.eclipse.xtext.util.CancelIndicator
@@ -38,6 +39,68 @@ class HighlightingService extends AbstractCachedService<HighlightingResult> {
 		return result
 	}
 	
+	/**
+	 * Highlighting results can be sent as deltas, so previous results are retained.
+	 */
+	override isDeltaSupported() {
+		true
+	}
+	
+	/**
+	 * Convert the given highlighting result into the compact encoding.
+	 */
+	def CompactHighlightingResult toCompactResult(HighlightingResult result) {
+		val regions = result.regions.sortBy[offset]
+		val legend = <String[]>newArrayList
+		val Map<List<String>, Integer> legendIndices = newHashMap
+		val data = newIntArrayOfSize(3 * regions.size)
+		var previousOffset = 0
+		for (var i = 0; i < regions.size; i++) {
+			val region = regions.get(i)
+			val styleClasses = region.styleClasses
+			var index = legendIndices.get(styleClasses.toList)
+			if (index === null) {
+				index = legend.size
+				legend += styleClasses
+				legendIndices.put(styleClasses.toList, index)
+			}
+			data.set(3 * i, region.offset - previousOffset)
+			data.set(3 * i + 1, region.length)
+			data.set(3 * i + 2, index)
+			previousOffset = region.offset
+		}
+		return new CompactHighlightingResult(legend, data)
+	}
+	
+	/**
+	 * Compute the regions that have been added and removed between the given previous result
+	 * and the current result. Regions are compared as a multiset, so duplicate regions are added
+	 * or removed as often as their number changes.
+	 */
+	def HighlightingDeltaResult createDelta(HighlightingResult previous, HighlightingResult current,
+			String baseStateId) {
+		val delta = new HighlightingDeltaResult(baseStateId)
+		val Map<HighlightingResult.Region, Integer> previousCount = newHashMap
+		for (region : previous.regions) {
+			previousCount.put(region, (previousCount.get(region) ?: 0) + 1)
+		}
+		for (region : current.regions) {
+			val count = previousCount.get(region) ?: 0
+			if (count > 0)
+				previousCount.put(region, count - 1)
+			else
+				delta.added += region
+		}
+		for (region : previous.regions) {
+			val count = previousCount.get(region) ?: 0
+			if (count > 0) {
+				previousCount.put(region, count - 1)
+				delta.removed += region
+			}
+		}
+		return delta
+	}
+	
 	protected def IHighlightedPositionAcceptor createHighlightedPositionAcceptor(List<HighlightingResult.Region> positions) {
 		[ offset, length, ids |
 			positions += new HighlightingResult.Region(offset, length, ids)			
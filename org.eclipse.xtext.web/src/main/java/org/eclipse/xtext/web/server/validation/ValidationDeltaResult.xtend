@@ -0,0 +1,27 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.server.validation
+
+import java.util.List
+import org.eclipse.xtend.lib.annotations.Data
+import org.eclipse.xtext.web.server.IServiceResult
+
+/**
+ * Result object returned by the validation service when the client requests the difference
+ * to a result it has received for a previous state of the document.
+ */
+@Data
+class ValidationDeltaResult implements IServiceResult {
+	
+	String baseStateId
+	
+	val List<ValidationResult.Issue> added = newArrayList
+	
+	val List<ValidationResult.Issue> removed = newArrayList
+	
+}
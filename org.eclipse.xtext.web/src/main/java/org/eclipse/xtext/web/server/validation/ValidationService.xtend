@@ -9,6 +9,7 @@ package org.eclipse.xtext.web.server.validation
 
 import com.google.inject.Inject
 import com.google.inject.Singleton
+import java.util.Map
 import org.eclipse.xtext.diagnostics.Severity
 import org.eclipse.xtext.util.CancelIndicator
 import org.eclipse.xtext.validation.CheckMode
@@ -39,6 +40,41 @@ class ValidationService extends AbstractCachedService<ValidationResult> {
 		return result
 	}
 	
+	/**
+	 * The client may request validation deltas, see {@link #createDelta}.
+	 */
+	override isDeltaSupported() {
+		true
+	}
+	
+	/**
+	 * Compute the issues that have been added and removed between the given previous result
+	 * and the current result. Equal issues that occur several times are counted separately.
+	 */
+	def ValidationDeltaResult createDelta(ValidationResult previous, ValidationResult current,
+			String baseStateId) {
+		val delta = new ValidationDeltaResult(baseStateId)
+		val Map<ValidationResult.Issue, Integer> previousCount = newHashMap
+		for (issue : previous.issues) {
+			previousCount.put(issue, (previousCount.get(issue) ?: 0) + 1)
+		}
+		for (issue : current.issues) {
+			val count = previousCount.get(issue) ?: 0
+			if (count > 0)
+				previousCount.put(issue, count - 1)
+			else
+				delta.added += issue
+		}
+		for (issue : previous.issues) {
+			val count = previousCount.get(issue) ?: 0
+			if (count > 0) {
+				previousCount.put(issue, count - 1)
+				delta.removed += issue
+			}
+		}
+		return delta
+	}
+	
 	protected def translate(Severity severity) {
 		switch severity {
 			case WARNING : "warning"
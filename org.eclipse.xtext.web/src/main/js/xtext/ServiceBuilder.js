@@ -16,10 +16,11 @@ define([
 	'xtext/services/ContentAssistService',
 	'xtext/services/HoverService',
 	'xtext/services/OccurrencesService',
-	'xtext/services/FormattingService'
+	'xtext/services/FormattingService',
+	'xtext/services/WebSocketConnection'
 ], function(jQuery, XtextService, LoadResourceService, SaveResourceService, HighlightingService,
 		ValidationService, UpdateService, ContentAssistService, HoverService, OccurrencesService,
-		FormattingService) {
+		FormattingService, WebSocketConnection) {
 	
 	/**
 	 * Builder class for the Xtext services.
@@ -44,6 +45,12 @@ define([
 				options.baseUrl = '/' + options.baseUrl;
 			options.serviceUrl = window.location.protocol + '//' + window.location.host + options.baseUrl + 'xtext-service';
 		}
+		if (options.enableWebSocket && typeof(WebSocket) !== 'undefined') {
+			var webSocketUrl = options.webSocketUrl;
+			if (!webSocketUrl)
+				webSocketUrl = options.serviceUrl.replace(/^http/, 'ws') + '-ws';
+			services.webSocketConnection = new WebSocketConnection(webSocketUrl, options.webSocketPushTimeout);
+		}
 		if (options.resourceId) {
 			if (!options.xtextLang)
 				options.xtextLang = options.resourceId.split(/[?#]/)[0].split('.').pop();
@@ -29,6 +29,8 @@ define(['xtext/services/XtextService', 'jquery'], function(XtextService, jQuery)
 			serverData.caretOffset = params.offset;
 		else
 			serverData.caretOffset = editorContext.getCaretOffset();
+		if (params.serviceTimeout)
+			serverData.timeoutMs = params.serviceTimeout;
 		var selection = params.selection ? params.selection : editorContext.getSelection();
 		if (selection.start != serverData.caretOffset || selection.end != serverData.caretOffset) {
 			serverData.selectionStart = selection.start;
@@ -67,6 +69,13 @@ define(['xtext/services/XtextService', 'jquery'], function(XtextService, jQuery)
 			data: serverData,
 			
 			success: function(result) {
+				if (result.conflict == 'timeout') {
+					// The request has not been processed, so the server state is unknown
+					delete knownServerState.text;
+					delete knownServerState.stateId;
+					deferred.reject(result.conflict);
+					return false;
+				}
 				if (result.conflict) {
 					// The server has lost its session state and the resource is loaded from the server
 					if (self._increaseRecursionCount(editorContext)) {
@@ -21,6 +21,52 @@ define(['xtext/services/XtextService', 'jquery'], function(XtextService, jQuery)
 		return this._state === undefined;
 	}
 
+	HighlightingService.prototype._initServerData = function(serverData, editorContext, params) {
+		if (params.compactHighlighting)
+			serverData.compact = true;
+		this._incremental = params.incrementalHighlighting && !params.sendFullText;
+		if (this._incremental && this._lastResult)
+			serverData.baseStateId = this._lastResult.stateId;
+		// The result is computed for the state required by the request
+		this._requestStateId = editorContext.getServerState().stateId;
+	};
+	
+	/**
+	 * Apply a difference result to the last received result if incremental highlighting is enabled.
+	 * If the difference is based on another state than the last received result, the full result
+	 * is requested instead.
+	 */
+	HighlightingService.prototype._processResult = function(result, editorContext) {
+		if (!this._incremental) {
+			delete this._lastResult;
+			return undefined;
+		}
+		var regions = [];
+		if (result.added || result.removed) {
+			if (!this._lastResult || this._lastResult.stateId !== result.baseStateId) {
+				delete this._lastResult;
+				return {repeatRequest: true};
+			}
+			regions = XtextService.applyDelta(this._lastResult.regions, result.added, result.removed, HighlightingService._regionKey);
+			regions.sort(function(r1, r2) {
+				return r1.offset - r2.offset;
+			});
+		} else {
+			HighlightingService.forEachRegion(result, function(offset, length, styleClasses) {
+				regions.push({offset: offset, length: length, styleClasses: styleClasses});
+			});
+		}
+		this._lastResult = {
+			stateId: this._requestStateId,
+			regions: regions
+		};
+		return {regions: regions};
+	};
+	
+	HighlightingService._regionKey = function(region) {
+		return region.offset + ':' + region.length + ':' + region.styleClasses.join(' ');
+	};
+
 	HighlightingService.prototype._onConflict = function(editorContext, cause) {
 		this.setState(undefined);
 		return {
@@ -28,5 +74,24 @@ define(['xtext/services/XtextService', 'jquery'], function(XtextService, jQuery)
 		};
 	};
 	
+	/**
+	 * Invoke the given callback with offset, length, and style classes for each region
+	 * of a highlighting result. Both the regular and the compact result format are supported.
+	 */
+	HighlightingService.forEachRegion = function(result, callback) {
+		if (result.data) {
+			var offset = 0;
+			for (var i = 0; i + 2 < result.data.length; i += 3) {
+				offset += result.data[i];
+				callback(offset, result.data[i + 1], result.legend[result.data[i + 2]]);
+			}
+		} else if (result.regions) {
+			for (var j = 0; j < result.regions.length; ++j) {
+				var region = result.regions[j];
+				callback(region.offset, region.length, region.styleClasses);
+			}
+		}
+	};
+	
 	return HighlightingService;
 });
\ No newline at end of file
@@ -21,6 +21,45 @@ define(['xtext/services/XtextService', 'jquery'], function(XtextService, jQuery)
 		return this._state === undefined;
 	}
 
+	ValidationService.prototype._initServerData = function(serverData, editorContext, params) {
+		this._incremental = params.incrementalValidation && !params.sendFullText;
+		if (this._incremental && this._lastResult)
+			serverData.baseStateId = this._lastResult.stateId;
+		// The result is computed for the state required by the request
+		this._requestStateId = editorContext.getServerState().stateId;
+	};
+	
+	/**
+	 * Apply a difference result to the last received result if incremental validation is enabled.
+	 * If the difference is based on another state than the last received result, the full result
+	 * is requested instead.
+	 */
+	ValidationService.prototype._processResult = function(result, editorContext) {
+		if (!this._incremental) {
+			delete this._lastResult;
+			return undefined;
+		}
+		var issues;
+		if (result.added || result.removed) {
+			if (!this._lastResult || this._lastResult.stateId !== result.baseStateId) {
+				delete this._lastResult;
+				return {repeatRequest: true};
+			}
+			issues = XtextService.applyDelta(this._lastResult.issues, result.added, result.removed, ValidationService._issueKey);
+		} else {
+			issues = result.issues;
+		}
+		this._lastResult = {
+			stateId: this._requestStateId,
+			issues: issues
+		};
+		return {issues: issues};
+	};
+	
+	ValidationService._issueKey = function(issue) {
+		return [issue.severity, issue.offset, issue.length, issue.line, issue.column, issue.description].join(':');
+	};
+
 	ValidationService.prototype._onConflict = function(editorContext, cause) {
 		this.setState(undefined);
 		return {
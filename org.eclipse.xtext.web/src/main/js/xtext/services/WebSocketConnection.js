@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+define(['jquery'], function(jQuery) {
+
+	/**
+	 * A WebSocket connection to the Xtext server. Service requests are sent as Json messages
+	 * and answered with messages carrying the same id. The server also pushes the results of
+	 * precomputed services (highlighting and validation) after each document update; requests
+	 * for these services are answered from the pushed results when possible.
+	 */
+	function WebSocketConnection(url, pushTimeout) {
+		this._url = url;
+		this._pushTimeout = pushTimeout === undefined ? 2000 : pushTimeout;
+		this._nextId = 1;
+		this._pendingRequests = {};
+		this._queuedMessages = [];
+		this._pushedResults = {};
+		this._awaitedPushes = {};
+		this._connect();
+	};
+
+	/**
+	 * Service types whose results are pushed by the server.
+	 */
+	WebSocketConnection.PUSHED_SERVICE_TYPES = ['highlight', 'validate'];
+
+	WebSocketConnection.prototype._connect = function() {
+		var self = this;
+		try {
+			self._socket = new WebSocket(self._url);
+		} catch (error) {
+			self._failed = true;
+			return;
+		}
+		self._socket.onopen = function() {
+			var queuedMessages = self._queuedMessages;
+			self._queuedMessages = [];
+			for (var i = 0; i < queuedMessages.length; i++) {
+				self._socket.send(queuedMessages[i].message);
+			}
+		};
+		self._socket.onmessage = function(event) {
+			self._receive(JSON.parse(event.data));
+		};
+		self._socket.onclose = self._socket.onerror = function() {
+			self._fail();
+		};
+	}
+
+	/**
+	 * Mark the connection as failed: messages that have not been sent yet are handed to their
+	 * fallback function, and requests that are still pending are reported as errors.
+	 */
+	WebSocketConnection.prototype._fail = function() {
+		if (this._failed)
+			return;
+		this._failed = true;
+		var queuedMessages = this._queuedMessages;
+		this._queuedMessages = [];
+		for (var i = 0; i < queuedMessages.length; i++) {
+			var queued = queuedMessages[i];
+			delete this._pendingRequests[queued.id];
+			queued.fallback();
+		}
+		var pendingRequests = this._pendingRequests;
+		this._pendingRequests = {};
+		for (var id in pendingRequests) {
+			if (pendingRequests.hasOwnProperty(id) && jQuery.isFunction(pendingRequests[id].error))
+				pendingRequests[id].error({status: 0}, 'error', 'The WebSocket connection was closed.');
+		}
+		for (var serviceType in this._awaitedPushes) {
+			if (this._awaitedPushes.hasOwnProperty(serviceType))
+				this._stopAwaitingPush(serviceType).fallback();
+		}
+	}
+
+	/**
+	 * Whether requests can be sent through this connection.
+	 */
+	WebSocketConnection.prototype.isAvailable = function() {
+		return !this._failed;
+	}
+
+	/**
+	 * Send a service request. The success and error callbacks have the same signature as
+	 * those used for jQuery.ajax. The fallback function is invoked if the request cannot
+	 * be sent because the connection has failed. Returns false if the connection is not
+	 * available, in which case the request has to be sent by other means.
+	 */
+	WebSocketConnection.prototype.sendRequest = function(serviceType, data, success, error, fallback) {
+		if (this._failed)
+			return false;
+		var self = this;
+		var send = function() {
+			if (self._failed) {
+				fallback();
+				return;
+			}
+			var id = self._nextId++;
+			var message = {id: id, serviceType: serviceType};
+			for (var p in data) {
+				if (data.hasOwnProperty(p) && data[p] !== undefined)
+					message[p] = data[p];
+			}
+			self._pendingRequests[id] = {serviceType: serviceType, resource: data.resource, success: success, error: error};
+			var messageText = JSON.stringify(message);
+			if (self._socket.readyState === 1)
+				self._socket.send(messageText);
+			else
+				self._queuedMessages.push({id: id, message: messageText, fallback: fallback});
+		};
+		if (WebSocketConnection.PUSHED_SERVICE_TYPES.indexOf(serviceType) >= 0 && data.requiredStateId !== undefined)
+			this._awaitPush(serviceType, data.resource, data.requiredStateId, success, send);
+		else
+			send();
+		return true;
+	}
+
+	WebSocketConnection.prototype._receive = function(message) {
+		if (message.id !== undefined && message.id !== null) {
+			var request = this._pendingRequests[message.id];
+			if (request) {
+				delete this._pendingRequests[message.id];
+				if (message.error !== undefined) {
+					if (jQuery.isFunction(request.error))
+						request.error({
+							status: message.error,
+							responseText: message.message,
+							getResponseHeader: function(name) {
+								return name === 'Retry-After' && message.retryAfter !== undefined ? String(message.retryAfter) : null;
+							}
+						}, 'error', message.message);
+				} else {
+					if (request.serviceType == 'update' && message.result && message.result.stateId)
+						this._expectedPush = {resource: request.resource, stateId: message.result.stateId};
+					if (jQuery.isFunction(request.success))
+						request.success(message.result);
+				}
+			}
+		} else if (message.serviceType) {
+			this._receivePush(message);
+		}
+	}
+
+	WebSocketConnection.prototype._receivePush = function(message) {
+		this._pushedResults[message.serviceType] = message;
+		var awaited = this._awaitedPushes[message.serviceType];
+		if (awaited && awaited.resource == message.resource && awaited.stateId == message.stateId) {
+			this._stopAwaitingPush(message.serviceType);
+			awaited.success(message.result);
+		}
+	}
+
+	/**
+	 * Answer a request for a precomputed service from the pushed results. If the result for the
+	 * required state has not been pushed yet, but is expected because the document has just been
+	 * updated through this connection, wait a limited time for it before sending the request.
+	 */
+	WebSocketConnection.prototype._awaitPush = function(serviceType, resource, stateId, success, send) {
+		var pushed = this._pushedResults[serviceType];
+		if (pushed && pushed.resource == resource && pushed.stateId == stateId) {
+			success(pushed.result);
+			return;
+		}
+		var expected = this._expectedPush;
+		if (!expected || expected.resource != resource || expected.stateId != stateId || this._pushTimeout <= 0) {
+			send();
+			return;
+		}
+		if (this._awaitedPushes[serviceType])
+			this._stopAwaitingPush(serviceType).fallback();
+		var self = this;
+		this._awaitedPushes[serviceType] = {
+			resource: resource,
+			stateId: stateId,
+			success: success,
+			fallback: send,
+			timeout: setTimeout(function() {
+				self._stopAwaitingPush(serviceType);
+				send();
+			}, this._pushTimeout)
+		};
+	}
+
+	WebSocketConnection.prototype._stopAwaitingPush = function(serviceType) {
+		var awaited = this._awaitedPushes[serviceType];
+		delete this._awaitedPushes[serviceType];
+		clearTimeout(awaited.timeout);
+		return awaited;
+	}
+
+	/**
+	 * Close the connection. Subsequent requests have to be sent by other means.
+	 */
+	WebSocketConnection.prototype.close = function() {
+		if (this._socket)
+			this._socket.close();
+		this._fail();
+	}
+
+	return WebSocketConnection;
+});
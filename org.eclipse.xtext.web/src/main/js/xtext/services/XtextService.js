@@ -58,6 +58,8 @@ define(['jquery'], function(jQuery) {
 		var serverData = {
 			contentType: params.contentType
 		};
+		if (params.serviceTimeout)
+			serverData.timeoutMs = params.serviceTimeout;
 		var initResult;
 		if (jQuery.isFunction(this._initServerData))
 			initResult = this._initServerData(serverData, editorContext, params);
@@ -92,6 +94,11 @@ define(['jquery'], function(jQuery) {
 			onSuccess = this._getSuccessCallback(editorContext, params, deferred);
 		} else {
 			onSuccess = function(result) {
+				if (result.conflict == 'timeout') {
+					// Retrying would most likely exceed the timeout again
+					deferred.reject(result.conflict);
+					return false;
+				}
 				if (result.conflict) {
 					if (self._increaseRecursionCount(editorContext)) {
 						var onConflictResult;
@@ -117,6 +124,15 @@ define(['jquery'], function(jQuery) {
 				}
 				if (jQuery.isFunction(self._processResult)) {
 					var processedResult = self._processResult(result, editorContext);
+					if (processedResult && processedResult.repeatRequest) {
+						// The result cannot be used, e.g. because it is based on a state that is unknown to the client
+						self.setState(undefined);
+						if (self._increaseRecursionCount(editorContext))
+							self.invoke(editorContext, params, deferred);
+						else
+							deferred.reject();
+						return false;
+					}
 					if (processedResult) {
 						deferred.resolve(processedResult);
 						return true;
@@ -127,6 +143,14 @@ define(['jquery'], function(jQuery) {
 		}
 		
 		var onError = function(xhr, textStatus, errorThrown) {
+			if (xhr.status == 503 && self._increaseRecursionCount(editorContext)) {
+				// The server is overloaded, so try again after the requested delay
+				self.setState(undefined);
+				setTimeout(function() {
+					self.invoke(editorContext, params, deferred);
+				}, self._getRetryDelay(xhr));
+				return true;
+			}
 			if (xhr.status == 404 && !params.loadFromServer && self._increaseRecursionCount(editorContext)) {
 				var onConflictResult;
 				if (jQuery.isFunction(self._onConflict)) {
@@ -159,7 +183,8 @@ define(['jquery'], function(jQuery) {
 	}
 
 	/**
-	 * Send an HTTP request to invoke the service.
+	 * Send a request to invoke the service. If a WebSocket connection is available, the request
+	 * is sent through that connection, otherwise an HTTP request is sent.
 	 */
 	XtextService.prototype.sendRequest = function(editorContext, settings, needsSession) {
 		var self = this;
@@ -204,12 +229,44 @@ define(['jquery'], function(jQuery) {
 		};
 		
 		settings.async = true;
-		var requestUrl = self._requestUrl;
-		if (!settings.data.resource && self._encodedResourceId) {
+		var webSocketConnection = editorContext.xtextServices ? editorContext.xtextServices.webSocketConnection : undefined;
+		if (webSocketConnection && webSocketConnection.isAvailable()) {
+			var data = {};
+			for (var p in settings.data) {
+				if (settings.data.hasOwnProperty(p))
+					data[p] = settings.data[p];
+			}
+			if (!data.resource && self._encodedResourceId)
+				data.resource = decodeURIComponent(self._encodedResourceId);
+			var sent = webSocketConnection.sendRequest(self._serviceType, data, function(result) {
+				settings.success(result);
+				if (jQuery.isFunction(settings.complete))
+					settings.complete({}, 'success');
+			}, function(xhr, textStatus, errorThrown) {
+				settings.error(xhr, textStatus, errorThrown);
+				if (jQuery.isFunction(settings.complete))
+					settings.complete(xhr, textStatus);
+			}, function() {
+				self._sendHttpRequest(settings, needsSession);
+			});
+			if (sent)
+				return;
+		}
+		self._sendHttpRequest(settings, needsSession);
+	}
+	
+	/**
+	 * Send the request defined by the given settings with jQuery.ajax.
+	 */
+	XtextService.prototype._sendHttpRequest = function(settings, needsSession) {
+		if (settings.type === 'GET')
+			this._addEntityTagValidation(settings);
+		var requestUrl = this._requestUrl;
+		if (!settings.data.resource && this._encodedResourceId) {
 			if (requestUrl.indexOf('?') >= 0)
-				requestUrl += '&resource=' + self._encodedResourceId;
+				requestUrl += '&resource=' + this._encodedResourceId;
 			else
-				requestUrl += '?resource=' + self._encodedResourceId;
+				requestUrl += '?resource=' + this._encodedResourceId;
 		}
 		
 		if (needsSession && globalState._initPending) {
@@ -241,6 +298,47 @@ define(['jquery'], function(jQuery) {
 		}
 	}
 	
+	/**
+	 * Send the entity tag of the last result received for this service, and reuse that result
+	 * if the server responds that it has not been modified.
+	 */
+	XtextService.prototype._addEntityTagValidation = function(settings) {
+		var self = this;
+		if (self._entityTag && self._taggedResult !== undefined) {
+			if (!settings.headers)
+				settings.headers = {};
+			settings.headers['If-None-Match'] = self._entityTag;
+		}
+		var onSuccess = settings.success;
+		settings.success = function(result, textStatus, xhr) {
+			if (xhr && xhr.status === 304 && self._taggedResult !== undefined) {
+				result = self._taggedResult;
+			} else {
+				var entityTag = xhr && jQuery.isFunction(xhr.getResponseHeader) ? xhr.getResponseHeader('ETag') : null;
+				if (entityTag) {
+					self._entityTag = entityTag;
+					self._taggedResult = result;
+				} else {
+					delete self._entityTag;
+					delete self._taggedResult;
+				}
+			}
+			if (jQuery.isFunction(onSuccess))
+				return onSuccess(result, textStatus, xhr);
+		};
+	}
+	
+	/**
+	 * Compute the delay in milliseconds before retrying a request that has been rejected because
+	 * the server is overloaded. The delay requested by the server is increased with each attempt.
+	 */
+	XtextService.prototype._getRetryDelay = function(xhr) {
+		var retryAfter = xhr && jQuery.isFunction(xhr.getResponseHeader) ? parseInt(xhr.getResponseHeader('Retry-After'), 10) : NaN;
+		if (isNaN(retryAfter) || retryAfter < 0)
+			retryAfter = 1;
+		return 1000 * retryAfter * (this._recursionCount || 1);
+	}
+	
 	/**
 	 * Use this in case of a conflict before retrying the service invocation. If the number
 	 * of retries exceeds the limit, an error is reported and the function returns false.
@@ -258,6 +356,32 @@ define(['jquery'], function(jQuery) {
 		return true;
 	},
 	
+	/**
+	 * Apply a difference result to the given list of previous elements. Elements are identified
+	 * by the string returned from the key function; an element listed as removed is removed only
+	 * once, even if the previous list contains it several times.
+	 */
+	XtextService.applyDelta = function(previous, added, removed, keyFunction) {
+		var removedCount = {};
+		if (removed) {
+			for (var i = 0; i < removed.length; i++) {
+				var key = keyFunction(removed[i]);
+				removedCount[key] = (removedCount[key] || 0) + 1;
+			}
+		}
+		var result = [];
+		for (var j = 0; j < previous.length; j++) {
+			var previousKey = keyFunction(previous[j]);
+			if (removedCount[previousKey])
+				removedCount[previousKey]--;
+			else
+				result.push(previous[j]);
+		}
+		if (added)
+			result = result.concat(added);
+		return result;
+	}
+	
 	/**
 	 * Report an error to the listeners.
 	 */
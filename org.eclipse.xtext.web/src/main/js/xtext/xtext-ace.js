@@ -37,6 +37,12 @@
  *     Whether the save action should be bound to the standard keystroke ctrl+s / cmd+s.
  * enableValidationService = true {Boolean}
  *     Whether validation should be enabled.
+ * enableWebSocket = false {Boolean}
+ *     Whether service requests should be sent through a WebSocket connection, through which the server
+ *     also pushes highlighting and validation results after each document update.
+ * incrementalValidation = false {Boolean}
+ *     Whether validation results should be requested as difference to the previous result received
+ *     for the same document.
  * loadFromServer = true {Boolean}
  *     Whether to load the editor content from the server.
  * parent = 'xtext-editor' {String | DOMElement}
@@ -56,6 +62,9 @@
  * serviceUrl {String}
  *     The URL of the Xtext servlet; if no value is given, it is constructed using the baseUrl option in the form
  *     {location.protocol}//{location.host}{baseUrl}xtext-service
+ * serviceTimeout {Number}
+ *     The number of milliseconds after which the server shall give up processing a service request;
+ *     requests that exceed this time are rejected without being retried.
  * showErrorDialogs = false {Boolean}
  *     Whether errors should be displayed in popup dialogs.
  * syntaxDefinition {String}
@@ -66,6 +75,11 @@
  *     The number of milliseconds to wait after a text change before Xtext services are invoked.
  * theme {String}
  *     The path name of the Ace theme for the editor.
+ * webSocketPushTimeout = 2000 {Number}
+ *     The number of milliseconds to wait for pushed results after a document update before requesting them.
+ * webSocketUrl {String}
+ *     The URL of the Xtext WebSocket endpoint; if no value is given, it is constructed from the serviceUrl
+ *     option in the form ws{serviceUrl without 'http'}-ws
  * xtextLang {String}
  *     The language name (usually the file extension configured for the language).
  */
@@ -15,6 +15,9 @@
  *
  * baseUrl = "/" {String}
  *     The path segment where the Xtext service is found; see serviceUrl option.
+ * compactHighlighting = false {Boolean}
+ *     Whether semantic highlighting results should be requested in the compact encoding, which reduces
+ *     the size of the responses for large documents.
  * contentType {String}
  *     The content type included in requests to the Xtext server.
  * dirtyElement {String | DOMElement}
@@ -42,6 +45,15 @@
  *     Whether the save action should be bound to the standard keystroke ctrl+s / cmd+s.
  * enableValidationService = true {Boolean}
  *     Whether validation should be enabled.
+ * enableWebSocket = false {Boolean}
+ *     Whether service requests should be sent through a WebSocket connection, through which the server
+ *     also pushes highlighting and validation results after each document update.
+ * incrementalHighlighting = false {Boolean}
+ *     Whether semantic highlighting results should be requested as difference to the previous result
+ *     received for the same document.
+ * incrementalValidation = false {Boolean}
+ *     Whether validation results should be requested as difference to the previous result received
+ *     for the same document.
  * loadFromServer = true {Boolean}
  *     Whether to load the editor content from the server.
  * mode {String}
@@ -62,6 +74,9 @@
  * serviceUrl {String}
  *     The URL of the Xtext servlet; if no value is given, it is constructed using the baseUrl option in the form
  *     {location.protocol}//{location.host}{baseUrl}xtext-service
+ * serviceTimeout {Number}
+ *     The number of milliseconds after which the server shall give up processing a service request;
+ *     requests that exceed this time are rejected without being retried.
  * showErrorDialogs = false {Boolean}
  *     Whether errors should be displayed in popup dialogs.
  * syntaxDefinition {String}
@@ -69,6 +84,11 @@
  *     'none' to suppress this behavior and disable syntax highlighting.
  * textUpdateDelay = 500 {Number}
  *     The number of milliseconds to wait after a text change before Xtext services are invoked.
+ * webSocketPushTimeout = 2000 {Number}
+ *     The number of milliseconds to wait for pushed results after a document update before requesting them.
+ * webSocketUrl {String}
+ *     The URL of the Xtext WebSocket endpoint; if no value is given, it is constructed from the serviceUrl
+ *     option in the form ws{serviceUrl without 'http'}-ws
  * xtextLang {String}
  *     The language name (usually the file extension configured for the language).
  */
@@ -79,8 +99,9 @@ define([
     'xtext/compatibility',
     'xtext/ServiceBuilder',
 	'xtext/CodeMirrorEditorContext',
+	'xtext/services/HighlightingService',
 	'codemirror/mode/javascript/javascript'
-], function(jQuery, CodeMirror, ShowHint, compatibility, ServiceBuilder, EditorContext) {
+], function(jQuery, CodeMirror, ShowHint, compatibility, ServiceBuilder, EditorContext, HighlightingService) {
 	
 	var exports = {};
 	
@@ -302,15 +323,14 @@ define([
 			}
 			editorContext._highlightingMarkers = [];
 		}).done(function(result) {
-			for (var i = 0; i < result.regions.length; ++i) {
-				var region = result.regions[i];
-				var from = editor.posFromIndex(region.offset);
-				var to = editor.posFromIndex(region.offset + region.length);
-				region.styleClasses.forEach(function(styleClass) {
+			HighlightingService.forEachRegion(result, function(offset, length, styleClasses) {
+				var from = editor.posFromIndex(offset);
+				var to = editor.posFromIndex(offset + length);
+				styleClasses.forEach(function(styleClass) {
 					var marker =  editor.markText(from, to, {className: styleClass});
 					editorContext._highlightingMarkers.push(marker);
 				});
-			}
+			});
 		});
 	}
 	
@@ -14,6 +14,9 @@
  *
  * baseUrl = "/" {String}
  *     The path segment where the Xtext service is found; see serviceUrl option.
+ * compactHighlighting = false {Boolean}
+ *     Whether semantic highlighting results should be requested in the compact encoding, which reduces
+ *     the size of the responses for large documents.
  * contentAssistCharTriggers {String}
  *     Characters that invoke the content assist service when typed (see Orion documentation).
  * contentAssistExcludedStyles {String}
@@ -45,6 +48,15 @@
  *     Whether the save action should be bound to the standard keystroke ctrl+s / cmd+s.
  * enableValidationService = true {Boolean}
  *     Whether validation should be enabled.
+ * enableWebSocket = false {Boolean}
+ *     Whether service requests should be sent through a WebSocket connection, through which the server
+ *     also pushes highlighting and validation results after each document update.
+ * incrementalHighlighting = false {Boolean}
+ *     Whether semantic highlighting results should be requested as difference to the previous result
+ *     received for the same document.
+ * incrementalValidation = false {Boolean}
+ *     Whether validation results should be requested as difference to the previous result received
+ *     for the same document.
  * loadFromServer = true {Boolean}
  *     Whether to load the editor content from the server.
  * mouseHoverDelay = 500 {Number}
@@ -66,6 +78,9 @@
  * serviceUrl {String}
  *     The URL of the Xtext servlet; if no value is given, it is constructed using the baseUrl option in the form
  *     {location.protocol}//{location.host}{baseUrl}xtext-service
+ * serviceTimeout {Number}
+ *     The number of milliseconds after which the server shall give up processing a service request;
+ *     requests that exceed this time are rejected without being retried.
  * showErrorDialogs = false {Boolean}
  *     Whether errors should be displayed in popup dialogs.
  * syntaxDefinition {String}
@@ -74,6 +89,11 @@
  *     disable syntax highlighting.
  * textUpdateDelay = 500 {Number}
  *     The number of milliseconds to wait after a text change before Xtext services are invoked.
+ * webSocketPushTimeout = 2000 {Number}
+ *     The number of milliseconds to wait for pushed results after a document update before requesting them.
+ * webSocketUrl {String}
+ *     The URL of the Xtext WebSocket endpoint; if no value is given, it is constructed from the serviceUrl
+ *     option in the form ws{serviceUrl without 'http'}-ws
  * xtextLang {String}
  *     The language name (usually the file extension configured for the language).
  */
@@ -85,9 +105,10 @@ define([
 	'embeddedEditor/builder/embeddedEditor',
 	'xtext/compatibility',
 	'xtext/ServiceBuilder',
-	'xtext/OrionEditorContext'
+	'xtext/OrionEditorContext',
+	'xtext/services/HighlightingService'
 ], function(jQuery, OrionDeferred, mKeyBinding, mAnnotations, mEmbeddedEditor, compatibility,
-		ServiceBuilder, EditorContext) {
+		ServiceBuilder, EditorContext, HighlightingService) {
 	
 	var exports = {};
 	
@@ -382,17 +403,16 @@ define([
 		var self = this;
 		services.computeHighlighting().done(function(result) {
 			var annotations = [];
-			for (var i = 0; i < result.regions.length; ++i) {
-				var region = result.regions[i];
-				region.styleClasses.forEach(function(styleClass) {
+			HighlightingService.forEachRegion(result, function(offset, length, styleClasses) {
+				styleClasses.forEach(function(styleClass) {
 					annotations.push({
 						description: '',
-						start: region.offset,
-						end: region.offset + region.length,
+						start: offset,
+						end: offset + length,
 						styleClass: styleClass
 					});
 				});
-			}
+			});
 			editorViewer.editor.showAnnotations(annotations, services._highlightAnnotationTypes, null, function(annotation) {
 				return self._getHighlightAnnotationType(annotation.styleClass, editorViewer, services);
 			});
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.server.test
+
+import com.google.inject.Inject
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import org.eclipse.xtext.web.server.IServiceResult
+import org.eclipse.xtext.web.server.InvalidRequestException.ServiceUnavailableException
+import org.eclipse.xtext.web.server.ServiceAdmissionControl
+import org.eclipse.xtext.web.server.ServiceConflictResult
+import org.junit.After
+import org.junit.Test
+
+import static org.junit.Assert.*
+
+class AdmissionControlTest extends AbstractWebServerTest {
+	
+	@Inject ServiceAdmissionControl admissionControl
+	
+	@After
+	def void removeLimits() {
+		admissionControl.removeLimit('test')
+		admissionControl.removeLimit('validate')
+	}
+	
+	@Test def testRejectWhenQueueIsFull() {
+		admissionControl.setLimit('test', 1, 0)
+		val started = new CountDownLatch(1)
+		val finish = new CountDownLatch(1)
+		val service = admissionControl.limit('test') [
+			started.countDown
+			finish.await
+			new ServiceConflictResult('test') as IServiceResult
+		]
+		val running = CompletableFuture.supplyAsync[service.apply()]
+		try {
+			assertTrue(started.await(5, TimeUnit.SECONDS))
+			try {
+				admissionControl.checkAdmission('test')
+				fail('Expected ServiceUnavailableException')
+			} catch (ServiceUnavailableException exception) {
+				assertEquals(admissionControl.retryAfter, exception.retryAfter)
+			}
+			try {
+				service.apply()
+				fail('Expected ServiceUnavailableException')
+			} catch (ServiceUnavailableException exception) {
+				// expected
+			}
+		} finally {
+			finish.countDown
+		}
+		assertEquals('test', (running.get(5, TimeUnit.SECONDS) as ServiceConflictResult).conflict)
+		admissionControl.checkAdmission('test')
+	}
+	
+	@Test def testUnlimitedServiceType() {
+		admissionControl.checkAdmission('unlimited')
+		val service = [new ServiceConflictResult('test') as IServiceResult]
+		assertSame(service, admissionControl.limit('unlimited', service))
+	}
+	
+	@Test def testLimitAppliedByDispatcher() {
+		admissionControl.setLimit('validate', 1, 0)
+		val parameters = #{'serviceType' -> 'validate', 'fullText' -> 'state foo end'}
+		val batchParameters = #{'serviceType' -> 'batch', 'requests' -> 'highlight,validate', 'fullText' -> 'state foo end'}
+		val started = new CountDownLatch(1)
+		val finish = new CountDownLatch(1)
+		// Occupy the only slot for the validation service
+		val blocker = CompletableFuture.supplyAsync[
+			admissionControl.limit('validate') [
+				started.countDown
+				finish.await
+				new ServiceConflictResult('test') as IServiceResult
+			].apply()
+		]
+		try {
+			assertTrue(started.await(5, TimeUnit.SECONDS))
+			for (rejected : #[parameters, batchParameters]) {
+				try {
+					getService(rejected).service.apply()
+					fail('Expected ServiceUnavailableException')
+				} catch (ServiceUnavailableException exception) {
+					// expected
+				}
+			}
+		} finally {
+			finish.countDown
+		}
+		blocker.get(5, TimeUnit.SECONDS)
+		assertNotNull(getService(parameters).service.apply())
+		assertNotNull(getService(batchParameters).service.apply())
+	}
+	
+}
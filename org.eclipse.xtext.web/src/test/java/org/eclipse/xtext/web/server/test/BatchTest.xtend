@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.server.test
+
+import com.google.inject.Inject
+import com.google.inject.Provider
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeUnit
+import org.eclipse.xtext.service.OperationCanceledManager
+import org.eclipse.xtext.web.server.BatchResult
+import org.eclipse.xtext.web.server.InvalidRequestException.InvalidParametersException
+import org.eclipse.xtext.web.server.ServiceConflictResult
+import org.eclipse.xtext.web.server.model.DocumentStateResult
+import org.eclipse.xtext.web.server.model.DocumentSynchronizer
+import org.eclipse.xtext.web.server.model.XtextWebDocument
+import org.eclipse.xtext.web.server.model.XtextWebDocumentAccess
+import org.eclipse.xtext.web.server.occurrences.OccurrencesResult
+import org.eclipse.xtext.web.server.syntaxcoloring.HighlightingResult
+import org.eclipse.xtext.web.server.validation.ValidationResult
+import org.junit.Test
+
+import static org.hamcrest.core.IsInstanceOf.*
+import static org.junit.Assert.*
+
+class BatchTest extends AbstractWebServerTest {
+	
+	@Inject XtextWebDocumentAccess.Factory documentAccessFactory
+	
+	@Inject Provider<DocumentSynchronizer> synchronizerProvider
+	
+	@Inject OperationCanceledManager operationCanceledManager
+
+	@Test def testValidateAndHighlight() {
+		val batch = getService(#{
+				'serviceType' -> 'batch',
+				'requests' -> 'validate, highlight',
+				'fullText' -> 'stat foo end'
+			})
+		assertFalse(batch.hasSideEffects)
+		val result = batch.service.apply() as BatchResult
+		assertEquals(2, result.results.size)
+		assertThat(result.results.get(0), instanceOf(ValidationResult))
+		assertEquals(1, (result.results.get(0) as ValidationResult).issues.size)
+		assertThat(result.results.get(1), instanceOf(HighlightingResult))
+	}
+
+	@Test def testPrefixedParameters() {
+		val batch = getService(#{
+				'serviceType' -> 'batch',
+				'requests' -> 'occurrences,validate',
+				'fullText' -> 'output signal foo state bar set foo = true end',
+				'occurrences.caretOffset' -> '15'
+			})
+		val result = batch.service.apply() as BatchResult
+		val occurrences = result.results.get(0) as OccurrencesResult
+		assertEquals('[14:3]', occurrences.writeRegions.join(','))
+		assertEquals('[32:3]', occurrences.readRegions.join(','))
+		assertTrue((result.results.get(1) as ValidationResult).issues.empty)
+	}
+
+	@Test def testRequiredStateId() {
+		val file = createFile('state foo end')
+		val session = new HashMapSession
+		val update = getService(#{
+				'serviceType' -> 'update',
+				'resource' -> file.name,
+				'deltaText' -> 'bar',
+				'deltaOffset' -> '6',
+				'deltaReplaceLength' -> '3'
+			}, session)
+		val updateResult = update.service.apply() as DocumentStateResult
+
+		var batch = getService(#{
+				'serviceType' -> 'batch',
+				'requests' -> 'validate,highlight',
+				'resource' -> file.name,
+				'requiredStateId' -> updateResult.stateId
+			}, session)
+		assertFalse(batch.hasConflict)
+		assertEquals(2, (batch.service.apply() as BatchResult).results.size)
+
+		batch = getService(#{
+				'serviceType' -> 'batch',
+				'requests' -> 'validate,highlight',
+				'resource' -> file.name,
+				'requiredStateId' -> 'totalerquatsch'
+			}, session)
+		assertTrue(batch.hasConflict)
+		val result = batch.service.apply()
+		assertThat(result, instanceOf(ServiceConflictResult))
+		assertEquals('invalidStateId', (result as ServiceConflictResult).conflict)
+	}
+
+	@Test(expected = InvalidParametersException)
+	def testSideEffectsNotAllowed() {
+		getService(#{
+				'serviceType' -> 'batch',
+				'requests' -> 'validate,format',
+				'fullText' -> 'state foo end'
+			})
+	}
+
+	@Test(expected = InvalidParametersException)
+	def testLoadNotAllowed() {
+		val file = createFile('state foo end')
+		getService(#{
+				'serviceType' -> 'batch',
+				'requests' -> 'load,validate',
+				'resource' -> file.name
+			})
+	}
+
+	@Test(expected = InvalidParametersException)
+	def testAssistWithUpdateNotAllowed() {
+		getService(#{
+				'serviceType' -> 'batch',
+				'requests' -> 'validate,assist',
+				'fullText' -> 'state foo end',
+				'assist.deltaText' -> 'bar',
+				'assist.deltaOffset' -> '6',
+				'assist.deltaReplaceLength' -> '3'
+			})
+	}
+
+	@Test(expected = InvalidParametersException)
+	def testNestedBatchNotAllowed() {
+		getService(#{
+				'serviceType' -> 'batch',
+				'requests' -> 'batch',
+				'fullText' -> 'state foo end'
+			})
+	}
+
+	@Test(expected = InvalidParametersException)
+	def testMissingRequests() {
+		getService(#{
+				'serviceType' -> 'batch',
+				'fullText' -> 'state foo end'
+			})
+	}
+
+	@Test def testCanceledBatchReleasesLock() {
+		val synchronizer = synchronizerProvider.get
+		val document = new XtextWebDocument('test', synchronizer)
+		synchronizer.acquireLock(false)
+		val batch = CompletableFuture.supplyAsync[
+			documentAccessFactory.create(document, false).batchReadOnly['result']
+		]
+		// An update that arrives while the batch is waiting cancels it
+		synchronizer.canceled = true
+		synchronizer.releaseLock()
+		try {
+			batch.get(5, TimeUnit.SECONDS)
+			fail('The batch should have been canceled.')
+		} catch (ExecutionException exception) {
+			assertTrue(operationCanceledManager.isOperationCanceledException(exception.cause))
+		}
+		synchronizer.canceled = false
+		assertTrue(synchronizer.tryAcquireLock(false, 5, TimeUnit.SECONDS))
+		synchronizer.releaseLock()
+	}
+
+}
@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.server.test
+
+import com.google.inject.Inject
+import com.google.inject.Provider
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
+import org.eclipse.xtext.web.server.model.DocumentSynchronizer
+import org.eclipse.xtext.web.server.model.IWebDocumentProvider
+import org.eclipse.xtext.web.server.model.ReadWriteDocumentSynchronizer
+import org.eclipse.xtext.web.server.model.XtextWebDocument
+import org.junit.Test
+
+import static org.junit.Assert.*
+
+class DocumentSynchronizerTest extends AbstractWebServerTest {
+	
+	@Inject Provider<DocumentSynchronizer> synchronizerProvider
+	
+	@Inject Provider<ReadWriteDocumentSynchronizer> readWriteSynchronizerProvider
+	
+	@Inject IWebDocumentProvider documentProvider
+	
+	@Test def testDefaultLockIsExclusive() {
+		val synchronizer = synchronizerProvider.get
+		synchronizer.acquireLock(false, false)
+		assertFalse(synchronizer.tryAcquireLock(false, false, 10, TimeUnit.MILLISECONDS))
+		synchronizer.releaseLock(false)
+		assertTrue(synchronizer.tryAcquireLock(false, false, 10, TimeUnit.MILLISECONDS))
+		synchronizer.releaseLock(false)
+	}
+	
+	@Test def testReadLocksAreShared() {
+		val synchronizer = readWriteSynchronizerProvider.get
+		synchronizer.acquireLock(false, false)
+		assertTrue(synchronizer.tryAcquireLock(false, false, 10, TimeUnit.MILLISECONDS))
+		assertFalse(synchronizer.tryAcquireLock(false, true, 10, TimeUnit.MILLISECONDS))
+		synchronizer.releaseLock(false)
+		synchronizer.releaseLock(false)
+		assertTrue(synchronizer.tryAcquireLock(false, true, 10, TimeUnit.MILLISECONDS))
+		assertFalse(synchronizer.tryAcquireLock(false, false, 10, TimeUnit.MILLISECONDS))
+		synchronizer.releaseLock(true)
+	}
+	
+	@Test def testPriorityRequestCancelsReaders() {
+		val synchronizer = readWriteSynchronizerProvider.get
+		synchronizer.acquireLock(false, false)
+		assertFalse(synchronizer.canceled)
+		val writer = CompletableFuture.runAsync[synchronizer.acquireLock(true)]
+		val timeout = System.currentTimeMillis + 5000
+		while (!synchronizer.canceled && System.currentTimeMillis < timeout)
+			Thread.sleep(10)
+		assertTrue(synchronizer.canceled)
+		synchronizer.releaseLock(false)
+		writer.get(5, TimeUnit.SECONDS)
+		assertFalse(synchronizer.canceled)
+		synchronizer.releaseLock()
+	}
+	
+	@Test(expected = IllegalStateException)
+	def testReleaseWithoutAcquire() {
+		readWriteSynchronizerProvider.get.releaseLock(false)
+	}
+	
+	@Test def testSynchronizerPerResource() {
+		val session = new HashMapSession
+		val context = new MockServiceContext(emptyMap, session)
+		documentProvider.get('first.statemachine', context)
+		documentProvider.get('second.statemachine', context)
+		val DocumentSynchronizer first = session.get(DocumentSynchronizer -> 'first.statemachine')
+		val DocumentSynchronizer second = session.get(DocumentSynchronizer -> 'second.statemachine')
+		assertNotNull(first)
+		assertNotNull(second)
+		assertNotSame(first, second)
+	}
+	
+	@Test def testSharedAccessRequiresResolvedDocument() {
+		val file = createFile('input signal x state foo if x == true goto foo end')
+		val session = new HashMapSession
+		getService(#{'serviceType' -> 'load', 'resource' -> file.name}, session).service.apply()
+		val XtextWebDocument document = session.get(XtextWebDocument -> file.name)
+		assertFalse(document.fullyResolved)
+		assertTrue(document.requiresExclusiveAccess)
+		
+		getService(#{
+				'serviceType' -> 'update',
+				'resource' -> file.name,
+				'deltaText' -> 'bar',
+				'deltaOffset' -> '21',
+				'deltaReplaceLength' -> '3'
+			}, session).service.apply()
+		// Wait until the background work has released the lock
+		val DocumentSynchronizer synchronizer = session.get(DocumentSynchronizer -> file.name)
+		synchronizer.acquireLock(false)
+		synchronizer.releaseLock()
+		assertTrue(document.fullyResolved)
+		assertFalse(document.requiresExclusiveAccess)
+		
+		document.deferTextChange(' ', 0, 0)
+		assertFalse(document.fullyResolved)
+		assertTrue(document.requiresExclusiveAccess)
+	}
+	
+}
@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.server.test
+
+import java.util.Random
+import org.eclipse.xtext.web.server.model.DocumentText
+import org.junit.Test
+
+import static org.junit.Assert.*
+
+class DocumentTextTest {
+	
+	@Test def testReplace() {
+		val text = new DocumentText('state foo end')
+		text.replace(6, 3, 'bar')
+		assertEquals('state bar end', text.toString)
+		text.replace(9, 0, ' set x = true')
+		assertEquals('state bar set x = true end', text.toString)
+		text.replace(0, 6, '')
+		assertEquals('bar set x = true end', text.toString)
+		assertEquals(20, text.length)
+	}
+	
+	@Test def testTyping() {
+		val text = new DocumentText('state  end')
+		for (c : 'foo'.toCharArray) {
+			text.replace(text.toString.indexOf(' end'), 0, String.valueOf(c))
+		}
+		assertEquals('state foo end', text.toString)
+	}
+	
+	@Test def testRandomEdits() {
+		val random = new Random(42)
+		val text = new DocumentText('input signal x state foo end')
+		val expected = new StringBuilder(text.toString)
+		for (i : 0 ..< 2000) {
+			val offset = random.nextInt(expected.length + 1)
+			val length = random.nextInt(Math.min(5, expected.length - offset) + 1)
+			val replacement = 'abc\n'.substring(random.nextInt(4))
+			text.replace(offset, length, replacement)
+			expected.replace(offset, offset + length, replacement)
+			if (i % 100 == 0)
+				assertEquals(expected.toString, text.toString)
+		}
+		assertEquals(expected.toString, text.toString)
+	}
+	
+	@Test def testLineIndex() {
+		val text = new DocumentText('state foo\nend\r\nstate bar\rend')
+		assertEquals(4, text.lineCount)
+		assertEquals(0, text.getLineOffset(0))
+		assertEquals(10, text.getLineOffset(1))
+		assertEquals(15, text.getLineOffset(2))
+		assertEquals(25, text.getLineOffset(3))
+		assertEquals(0, text.getLineOfOffset(9))
+		assertEquals(1, text.getLineOfOffset(10))
+		assertEquals(3, text.getLineOfOffset(28))
+		text.replace(0, 10, '')
+		assertEquals(3, text.lineCount)
+		assertEquals(0, text.getLineOfOffset(3))
+	}
+	
+	@Test(expected = IndexOutOfBoundsException)
+	def testInvalidRegion() {
+		new DocumentText('state foo end').replace(10, 5, 'x')
+	}
+	
+}
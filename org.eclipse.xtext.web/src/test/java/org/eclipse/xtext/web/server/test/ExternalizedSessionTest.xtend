@@ -0,0 +1,213 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.server.test
+
+import com.google.inject.Inject
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.Comparator
+import java.util.List
+import org.eclipse.xtend.lib.annotations.Accessors
+import org.eclipse.xtext.web.server.model.DocumentStateResult
+import org.eclipse.xtext.web.server.model.XtextWebDocument
+import org.eclipse.xtext.web.server.persistence.DocumentRecord
+import org.eclipse.xtext.web.server.persistence.ExternalizedSession
+import org.eclipse.xtext.web.server.persistence.FileKeyValueStore
+import org.eclipse.xtext.web.server.persistence.ResourceContentResult
+import org.junit.After
+import org.junit.Test
+
+import static org.junit.Assert.*
+
+class ExternalizedSessionTest extends AbstractWebServerTest {
+	
+	@Inject ExternalizedSession.Factory sessionFactory
+	
+	val List<Path> directories = newArrayList
+	
+	@After
+	def void deleteDirectories() {
+		for (directory : directories) {
+			val files = Files.walk(directory)
+			try {
+				files.sorted(Comparator.reverseOrder).forEach[Files.delete(it)]
+			} finally {
+				files.close()
+			}
+		}
+	}
+	
+	protected def FileKeyValueStore createStore() {
+		val directory = Files.createTempDirectory('xtext-web')
+		directories += directory
+		return new FileKeyValueStore(directory)
+	}
+	
+	@Test def testDocumentRecordEncoding() {
+		val record = new DocumentRecord('foo', 'file:/foo.statemachine', 'state foo end', '1a', true)
+		assertEquals(record, DocumentRecord.fromBytes(record.toBytes))
+	}
+	
+	@Test def testFileKeyValueStore() {
+		val store = createStore()
+		assertNull(store.get('session/foo'))
+		val byte[] value = #[1 as byte, 2 as byte]
+		store.put('session/foo', value)
+		assertArrayEquals(value, store.get('session/foo'))
+		store.remove('session/foo')
+		assertNull(store.get('session/foo'))
+	}
+	
+	@Test def testFileKeyValueStoreCompareAndPut() {
+		val store = createStore()
+		val byte[] value1 = #[1 as byte]
+		val byte[] value2 = #[2 as byte]
+		assertFalse(store.compareAndPut('session/foo', value1, value2))
+		assertNull(store.get('session/foo'))
+		assertTrue(store.compareAndPut('session/foo', null, value1))
+		assertFalse(store.compareAndPut('session/foo', null, value2))
+		assertTrue(store.compareAndPut('session/foo', value1, value2))
+		assertArrayEquals(value2, store.get('session/foo'))
+	}
+	
+	@Test def testLookupDoesNotReadText() {
+		val directory = Files.createTempDirectory('xtext-web')
+		directories += directory
+		val store = new CountingKeyValueStore(directory)
+		val text = 'input signal x state foo end ' + (1..1000).map['state s' + it + ' end'].join(' ')
+		val file = createFile(text)
+		val session1 = sessionFactory.create('session', store)
+		getService(#{'serviceType' -> 'load', 'resource' -> file.name}, session1).service.apply()
+		session1.flush()
+		store.bytesRead = 0
+		for (i : 1..10) {
+			assertNotNull(session1.get(XtextWebDocument -> file.name))
+		}
+		assertTrue(store.bytesRead < text.length)
+	}
+	
+	@Test def testDocumentIsRestoredOnOtherNode() {
+		val store = createStore()
+		val file = createFile('input signal x state foo end')
+		val session1 = sessionFactory.create('session', store)
+		getService(#{'serviceType' -> 'load', 'resource' -> file.name}, session1).service.apply()
+		val update = getService(#{
+				'serviceType' -> 'update',
+				'resource' -> file.name,
+				'deltaText' -> 'bar',
+				'deltaOffset' -> '21',
+				'deltaReplaceLength' -> '3'
+			}, session1)
+		val updateResult = update.service.apply() as DocumentStateResult
+		session1.flush()
+		
+		val session2 = sessionFactory.create('session', store)
+		val XtextWebDocument document = session2.get(XtextWebDocument -> file.name)
+		assertNotSame(session1.get(XtextWebDocument -> file.name), document)
+		assertEquals(updateResult.stateId, document.stateId)
+		assertTrue(document.dirty)
+		assertEquals('input signal x state bar end', document.text)
+		val load = getService(#{'serviceType' -> 'load', 'resource' -> file.name}, session2)
+		val loadResult = load.service.apply() as ResourceContentResult
+		assertEquals('input signal x state bar end', loadResult.fullText)
+		assertEquals(updateResult.stateId, loadResult.stateId)
+	}
+	
+	@Test def testRemovedDocumentIsNotRestored() {
+		val store = createStore()
+		val file = createFile('input signal x state foo end')
+		val session1 = sessionFactory.create('session', store)
+		getService(#{'serviceType' -> 'load', 'resource' -> file.name}, session1).service.apply()
+		session1.remove(XtextWebDocument -> file.name)
+		val session2 = sessionFactory.create('session', store)
+		assertNull(session2.get(XtextWebDocument -> file.name))
+	}
+	
+	@Test def testOutdatedDocumentIsRestored() {
+		val store = createStore()
+		val file = createFile('input signal x state foo end')
+		val session1 = sessionFactory.create('session', store)
+		getService(#{'serviceType' -> 'load', 'resource' -> file.name}, session1).service.apply()
+		session1.flush()
+		val session2 = sessionFactory.create('session', store)
+		val XtextWebDocument document2 = session2.get(XtextWebDocument -> file.name)
+		assertNotNull(document2)
+		
+		// The next request is routed to the first node
+		val update = getService(#{
+				'serviceType' -> 'update',
+				'resource' -> file.name,
+				'deltaText' -> 'bar',
+				'deltaOffset' -> '21',
+				'deltaReplaceLength' -> '3'
+			}, session1)
+		val updateResult = update.service.apply() as DocumentStateResult
+		session1.flush()
+		
+		// The second node must not serve its outdated copy
+		val XtextWebDocument document = session2.get(XtextWebDocument -> file.name)
+		assertNotSame(document2, document)
+		assertEquals(updateResult.stateId, document.stateId)
+		assertEquals('input signal x state bar end', document.text)
+	}
+	
+	@Test def testOutdatedDocumentDoesNotOverwriteRecord() {
+		val store = createStore()
+		val file = createFile('input signal x state foo end')
+		val session1 = sessionFactory.create('session', store)
+		getService(#{'serviceType' -> 'load', 'resource' -> file.name}, session1).service.apply()
+		session1.flush()
+		val session2 = sessionFactory.create('session', store)
+		val XtextWebDocument document2 = session2.get(XtextWebDocument -> file.name)
+		
+		val update = getService(#{
+				'serviceType' -> 'update',
+				'resource' -> file.name,
+				'deltaText' -> 'bar',
+				'deltaOffset' -> '21',
+				'deltaReplaceLength' -> '3'
+			}, session1)
+		val updateResult = update.service.apply() as DocumentStateResult
+		session1.flush()
+		
+		// A change of the outdated copy is discarded instead of overwriting the newer record
+		document2.dirty = true
+		session2.flush()
+		val session3 = sessionFactory.create('session', store)
+		val XtextWebDocument document = session3.get(XtextWebDocument -> file.name)
+		assertEquals(updateResult.stateId, document.stateId)
+		assertEquals('input signal x state bar end', document.text)
+	}
+	
+	@Test def testPutNullRemovesValue() {
+		val session = sessionFactory.create('session', createStore())
+		session.put('key', 'value')
+		assertEquals('value', session.get('key'))
+		session.put('key', null)
+		assertNull(session.get('key'))
+	}
+	
+	static class CountingKeyValueStore extends FileKeyValueStore {
+		
+		@Accessors
+		long bytesRead
+		
+		new(Path directory) {
+			super(directory)
+		}
+		
+		override get(String key) {
+			val value = super.get(key)
+			if (value !== null)
+				bytesRead += value.length
+			return value
+		}
+		
+	}
+	
+}
@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.server.test
+
+import com.google.inject.Inject
+import com.google.inject.Provider
+import org.eclipse.xtext.web.server.model.FullTextDocumentCache
+import org.eclipse.xtext.web.server.model.SharedDocumentSynchronizer
+import org.junit.Test
+
+import static org.junit.Assert.*
+
+class FullTextDocumentCacheTest extends AbstractWebServerTest {
+	
+	@Inject FullTextDocumentCache fullTextDocumentCache
+	
+	@Inject Provider<SharedDocumentSynchronizer> synchronizerProvider
+	
+	@Test def testSameTextIsShared() {
+		val validate1 = getService(#{'serviceType' -> 'validate', 'fullText' -> 'state foo end'}, new HashMapSession)
+		val result1 = validate1.service.apply()
+		val validate2 = getService(#{'serviceType' -> 'validate', 'fullText' -> 'state foo end'}, new HashMapSession)
+		val result2 = validate2.service.apply()
+		assertSame(result1, result2)
+		assertEquals(1, fullTextDocumentCache.stats.missCount)
+		assertEquals(1, fullTextDocumentCache.stats.hitCount)
+	}
+	
+	@Test def testDifferentTextIsNotShared() {
+		val validate1 = getService(#{'serviceType' -> 'validate', 'fullText' -> 'state foo end'})
+		val result1 = validate1.service.apply()
+		val validate2 = getService(#{'serviceType' -> 'validate', 'fullText' -> 'state bar end'})
+		val result2 = validate2.service.apply()
+		assertNotSame(result1, result2)
+		assertEquals(2, fullTextDocumentCache.stats.missCount)
+	}
+	
+	@Test def testFormattingIsNotCached() {
+		val format = getService(#{'serviceType' -> 'format', 'fullText' -> 'state foo end'})
+		format.service.apply()
+		assertEquals(0, fullTextDocumentCache.stats.requestCount)
+	}
+	
+	@Test def testDeltaTextIsNotCached() {
+		val assist = getService(#{
+				'serviceType' -> 'assist',
+				'fullText' -> 'state foo end',
+				'deltaText' -> 'bar',
+				'deltaOffset' -> '6',
+				'deltaReplaceLength' -> '3',
+				'caretOffset' -> '9'
+			})
+		assist.service.apply()
+		assertEquals(0, fullTextDocumentCache.stats.requestCount)
+	}
+	
+	@Test def testPriorityAccessDoesNotCancelSharedDocument() {
+		val synchronizer = synchronizerProvider.get
+		synchronizer.acquireLock(false, false)
+		try {
+			synchronizer.acquireLock(true, false)
+			assertFalse(synchronizer.canceled)
+			synchronizer.releaseLock(false)
+		} finally {
+			synchronizer.releaseLock(false)
+		}
+	}
+	
+}
@@ -7,13 +7,21 @@
  *******************************************************************************/
 package org.eclipse.xtext.web.server.test
 
+import com.google.inject.Inject
 import org.eclipse.xtext.web.server.hover.HoverResult
+import org.eclipse.xtext.web.server.model.DocumentStateResult
+import org.eclipse.xtext.web.server.syntaxcoloring.CompactHighlightingResult
+import org.eclipse.xtext.web.server.syntaxcoloring.HighlightingDeltaResult
 import org.eclipse.xtext.web.server.syntaxcoloring.HighlightingResult
+import org.eclipse.xtext.web.server.syntaxcoloring.HighlightingService
 import org.junit.Test
 
 import static org.junit.Assert.*
 
 class HighlightingTest extends AbstractWebServerTest {
+	
+	@Inject HighlightingService highlightingService
+	
 	def protected assertHighlighting(CharSequence resourceContent, String... styleClasses) {
 		val content = resourceContent.toString
 		val highlighting = getService(#{
@@ -92,4 +100,73 @@ class HighlightingTest extends AbstractWebServerTest {
 			end
 		'''.assertHighlighting('InputSignal', 'OutputSignal', 'OutputSignal', 'InputSignal')
 	}
-}
\ No newline at end of file
+
+	@Test
+	def void testCompactResult() {
+		val highlighting = getService(#{
+			'serviceType' -> 'highlight',
+			'fullText' -> 'input signal in output signal out state State set out = true if in == true goto State end',
+			'compact' -> 'true'
+		})
+		val result = highlighting.service.apply() as CompactHighlightingResult
+		assertEquals(2, result.legend.size)
+		assertEquals('InputSignal', result.legend.get(0).head)
+		assertEquals('OutputSignal', result.legend.get(1).head)
+		assertEquals(#[13, 2, 0, 17, 3, 1, 20, 3, 1, 14, 2, 0], result.data.toList)
+	}
+
+	@Test
+	def void testDeltaResult() {
+		val file = createFile('input signal in output signal out state State set out = true end')
+		val session = new HashMapSession
+		val firstUpdate = getService(#{
+				'serviceType' -> 'update',
+				'resource' -> file.name,
+				'deltaText' -> 'false',
+				'deltaOffset' -> '56',
+				'deltaReplaceLength' -> '4'
+			}, session).service.apply() as DocumentStateResult
+		val firstResult = getService(#{
+				'serviceType' -> 'highlight',
+				'resource' -> file.name,
+				'requiredStateId' -> firstUpdate.stateId,
+				'baseStateId' -> 'unknown'
+			}, session).service.apply() as HighlightingResult
+		assertEquals(3, firstResult.regions.size)
+		
+		val secondUpdate = getService(#{
+				'serviceType' -> 'update',
+				'resource' -> file.name,
+				'deltaText' -> ' if in == true goto State',
+				'deltaOffset' -> '61',
+				'deltaReplaceLength' -> '0',
+				'requiredStateId' -> firstUpdate.stateId
+			}, session).service.apply() as DocumentStateResult
+		val secondResult = getService(#{
+				'serviceType' -> 'highlight',
+				'resource' -> file.name,
+				'requiredStateId' -> secondUpdate.stateId,
+				'baseStateId' -> firstUpdate.stateId
+			}, session).service.apply() as HighlightingDeltaResult
+		assertEquals(firstUpdate.stateId, secondResult.baseStateId)
+		assertEquals(1, secondResult.added.size)
+		assertEquals(65, secondResult.added.head.offset)
+		assertEquals('InputSignal', secondResult.added.head.styleClasses.head)
+		assertTrue(secondResult.removed.empty)
+	}
+
+	@Test
+	def void testDeltaWithDuplicateRegions() {
+		val previous = new HighlightingResult
+		previous.regions += #[region(0, 3, 'Keyword'), region(0, 3, 'Keyword'), region(5, 2, 'Signal')]
+		val current = new HighlightingResult
+		current.regions += #[region(0, 3, 'Keyword'), region(5, 2, 'Signal'), region(5, 2, 'Signal')]
+		val delta = highlightingService.createDelta(previous, current, 'base')
+		assertEquals(#[region(5, 2, 'Signal')], delta.added)
+		assertEquals(#[region(0, 3, 'Keyword')], delta.removed)
+	}
+	
+	protected def region(int offset, int length, String styleClass) {
+		new HighlightingResult.Region(offset, length, #[styleClass])
+	}
+}
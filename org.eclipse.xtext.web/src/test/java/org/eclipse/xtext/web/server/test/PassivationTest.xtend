@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.server.test
+
+import java.lang.ref.WeakReference
+import java.util.concurrent.TimeUnit
+import org.eclipse.xtext.web.server.model.DocumentPassivationPolicy
+import org.eclipse.xtext.web.server.model.DocumentStateResult
+import org.eclipse.xtext.web.server.model.DocumentSynchronizer
+import org.eclipse.xtext.web.server.model.XtextWebDocument
+import org.eclipse.xtext.web.server.validation.ValidationResult
+import org.junit.Test
+
+import static org.junit.Assert.*
+
+class PassivationTest extends AbstractWebServerTest {
+	
+	@Test def testPassivateAndRehydrate() {
+		val file = createFile('input signal x state foo end')
+		val session = new HashMapSession
+		getService(#{'serviceType' -> 'load', 'resource' -> file.name}, session).service.apply()
+		val XtextWebDocument document = session.get(XtextWebDocument -> file.name)
+		val stateId = document.stateId
+		document.dirty = true
+		assertTrue(document.passivate())
+		assertTrue(document.passivated)
+		assertEquals(stateId, document.stateId)
+		assertEquals('input signal x state foo end', document.text)
+		assertTrue(document.dirty)
+		
+		val validate = getService(#{
+				'serviceType' -> 'validate',
+				'resource' -> file.name,
+				'requiredStateId' -> stateId
+			}, session)
+		assertTrue(validate.service.apply() instanceof ValidationResult)
+		assertFalse(document.passivated)
+		assertEquals(stateId, document.stateId)
+		assertEquals('input signal x state foo end', document.resource.parseResult.rootNode.text)
+	}
+	
+	@Test def testUpdatePassivatedDocument() {
+		val file = createFile('input signal x state foo end')
+		val session = new HashMapSession
+		getService(#{'serviceType' -> 'load', 'resource' -> file.name}, session).service.apply()
+		val XtextWebDocument document = session.get(XtextWebDocument -> file.name)
+		assertTrue(document.passivate())
+		val update = getService(#{
+				'serviceType' -> 'update',
+				'resource' -> file.name,
+				'deltaText' -> 'bar',
+				'deltaOffset' -> '21',
+				'deltaReplaceLength' -> '3',
+				'requiredStateId' -> document.stateId
+			}, session)
+		val updateResult = update.service.apply() as DocumentStateResult
+		assertEquals(updateResult.stateId, document.stateId)
+		assertEquals('input signal x state bar end', document.resource.parseResult.rootNode.text)
+	}
+	
+	@Test def testIdleDocumentIsPassivated() {
+		val file = createFile('input signal x state foo end')
+		val session = new HashMapSession
+		getService(#{'serviceType' -> 'load', 'resource' -> file.name}, session).service.apply()
+		val XtextWebDocument document = session.get(XtextWebDocument -> file.name)
+		val DocumentSynchronizer synchronizer = session.get(DocumentSynchronizer -> file.name)
+		awaitBackgroundWork(synchronizer)
+		val policy = new TestPassivationPolicy => [idleTimeout = 1]
+		try {
+			Thread.sleep(10)
+			policy.checkIdle(document)
+			assertTrue(document.passivated)
+			assertEquals('input signal x state foo end', document.text)
+		} finally {
+			policy.dispose()
+		}
+	}
+	
+	@Test def testLockedDocumentIsNotPassivated() {
+		val file = createFile('input signal x state foo end')
+		val session = new HashMapSession
+		getService(#{'serviceType' -> 'load', 'resource' -> file.name}, session).service.apply()
+		val XtextWebDocument document = session.get(XtextWebDocument -> file.name)
+		val DocumentSynchronizer synchronizer = session.get(DocumentSynchronizer -> file.name)
+		awaitBackgroundWork(synchronizer)
+		val policy = new TestPassivationPolicy => [idleTimeout = 1]
+		try {
+			Thread.sleep(10)
+			synchronizer.acquireLock(true)
+			try {
+				policy.checkIdle(document)
+				assertFalse(document.passivated)
+			} finally {
+				synchronizer.releaseLock()
+			}
+		} finally {
+			policy.dispose()
+		}
+	}
+	
+	@Test def testCanceledDocumentReleasesLock() {
+		val file = createFile('input signal x state foo end')
+		val session = new HashMapSession
+		getService(#{'serviceType' -> 'load', 'resource' -> file.name}, session).service.apply()
+		val XtextWebDocument document = session.get(XtextWebDocument -> file.name)
+		val DocumentSynchronizer synchronizer = session.get(DocumentSynchronizer -> file.name)
+		awaitBackgroundWork(synchronizer)
+		val policy = new TestPassivationPolicy => [idleTimeout = 1]
+		try {
+			Thread.sleep(10)
+			synchronizer.canceled = true
+			policy.checkIdle(document)
+			assertTrue(document.passivated)
+			synchronizer.canceled = false
+			assertTrue(synchronizer.tryAcquireLock(false, 0, TimeUnit.MILLISECONDS))
+			synchronizer.releaseLock()
+		} finally {
+			policy.dispose()
+		}
+	}
+	
+	private def void awaitBackgroundWork(DocumentSynchronizer synchronizer) {
+		synchronizer.acquireLock(false)
+		synchronizer.releaseLock()
+	}
+	
+	static class TestPassivationPolicy extends DocumentPassivationPolicy {
+		def void checkIdle(XtextWebDocument document) {
+			checkIdle(new WeakReference(document))
+		}
+	}
+	
+}
@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.server.test
+
+import com.google.inject.Inject
+import java.util.concurrent.TimeUnit
+import org.eclipse.xtext.util.CancelIndicator
+import org.eclipse.xtext.web.server.IServiceResult
+import org.eclipse.xtext.web.server.model.AbstractCachedService
+import org.eclipse.xtext.web.server.model.IXtextWebDocument
+import org.eclipse.xtext.web.server.model.PrecomputedServiceRegistry
+import org.eclipse.xtext.web.server.model.XtextWebDocument
+import org.eclipse.xtext.web.server.model.XtextWebDocumentAccess
+import org.eclipse.xtext.web.server.syntaxcoloring.HighlightingService
+import org.eclipse.xtext.web.server.validation.ValidationService
+import org.junit.Test
+
+import static org.junit.Assert.*
+
+class PrecomputationTest extends AbstractWebServerTest {
+	
+	@Inject PrecomputedServiceRegistry registry
+	
+	@Inject HighlightingService highlightingService
+	
+	@Inject ValidationService validationService
+	
+	@Inject XtextWebDocumentAccess.Factory documentAccessFactory
+	
+	@Test def testRegistrationOrder() {
+		val services = registry.precomputedServices.toList
+		assertEquals(#[highlightingService, validationService], services)
+		assertEquals(#[], registry.getDependencies(validationService))
+		assertTrue(registry.getPriority(highlightingService) > registry.getPriority(validationService))
+	}
+	
+	@Test def testAllServicesArePrecomputed() {
+		val file = createFile('input signal x state foo end')
+		val session = new HashMapSession
+		val notified = <Class<?>>newArrayList
+		val load = getService(#{'serviceType' -> 'load', 'resource' -> file.name}, session)
+		load.service.apply()
+		val XtextWebDocument document = session.get(XtextWebDocument -> file.name)
+		document.addPrecomputationListener[ doc, service, result, stateId |
+			synchronized (notified) {
+				notified += service.class
+				notified.notifyAll()
+			}
+		]
+		val update = getService(#{
+				'serviceType' -> 'update',
+				'resource' -> file.name,
+				'deltaText' -> 'bar',
+				'deltaOffset' -> '21',
+				'deltaReplaceLength' -> '3'
+			}, session)
+		update.service.apply()
+		val startTime = System.currentTimeMillis
+		synchronized (notified) {
+			while (notified.size < 2) {
+				assertTrue(System.currentTimeMillis - startTime < 8000)
+				notified.wait(1000)
+			}
+		}
+		assertEquals(#{HighlightingService, ValidationService}, notified.toSet)
+	}
+	
+	@Test def testPrecomputationIgnoresDeadline() {
+		val file = createFile('input signal x state foo end')
+		val session = new HashMapSession
+		val notified = <Class<?>>newArrayList
+		getService(#{'serviceType' -> 'load', 'resource' -> file.name}, session).service.apply()
+		val XtextWebDocument document = session.get(XtextWebDocument -> file.name)
+		document.addPrecomputationListener[ doc, service, result, stateId |
+			synchronized (notified) {
+				notified += service.class
+				notified.notifyAll()
+			}
+		]
+		val access = documentAccessFactory.create(document, false)
+		access.setTimeout(50, TimeUnit.MILLISECONDS)
+		// The deadline has passed when precomputation starts
+		access.modify[ doc, cancelIndicator |
+			doc.createNewStateId()
+			Thread.sleep(100)
+			return null
+		]
+		val startTime = System.currentTimeMillis
+		synchronized (notified) {
+			while (notified.size < 2) {
+				assertTrue(System.currentTimeMillis - startTime < 8000)
+				notified.wait(1000)
+			}
+		}
+		assertEquals(#{HighlightingService, ValidationService}, notified.toSet)
+	}
+	
+	@Test def testDependencies() {
+		val first = new TestService
+		val second = new TestService
+		val registry = new PrecomputedServiceRegistry
+		registry.addPrecomputedService(first)
+		registry.addPrecomputedService(second, #[TestService])
+		assertEquals(#[first, second], registry.precomputedServices.toList)
+		assertEquals(#[TestService], registry.getDependencies(second))
+		registry.removePrecomputedService(second)
+		assertEquals(#[], registry.getDependencies(second))
+	}
+	
+	@Test def testPriorityOrder() {
+		val first = new TestService
+		val second = new OtherTestService
+		val third = new TestService
+		val registry = new PrecomputedServiceRegistry
+		registry.addPrecomputedService(first, 0, emptyList)
+		registry.addPrecomputedService(second, 0, emptyList)
+		registry.addPrecomputedService(third, 1, emptyList)
+		assertEquals(#[third, first, second], registry.precomputedServices.toList)
+		// A dependency is started before the dependent service regardless of its priority
+		registry.addPrecomputedService(third, 1, #[OtherTestService])
+		assertEquals(#[second, third, first], registry.precomputedServices.toList)
+	}
+	
+	@Test def testOnlyRequestedServicesArePrecomputed() {
+		val file = createFile('input signal x state foo end')
+		val session = new HashMapSession
+		val notified = <Class<?>>newArrayList
+		getService(#{'serviceType' -> 'highlight', 'resource' -> file.name}, session).service.apply()
+		val XtextWebDocument document = session.get(XtextWebDocument -> file.name)
+		document.addPrecomputationListener[ doc, service, result, stateId |
+			synchronized (notified) {
+				notified += service.class
+				notified.notifyAll()
+			}
+		]
+		val update = getService(#{
+				'serviceType' -> 'update',
+				'resource' -> file.name,
+				'deltaText' -> 'bar',
+				'deltaOffset' -> '21',
+				'deltaReplaceLength' -> '3'
+			}, session)
+		update.service.apply()
+		val startTime = System.currentTimeMillis
+		synchronized (notified) {
+			while (notified.empty) {
+				assertTrue(System.currentTimeMillis - startTime < 8000)
+				notified.wait(1000)
+			}
+			notified.wait(200)
+		}
+		assertEquals(#[HighlightingService], notified)
+	}
+	
+	static class OtherTestService extends AbstractCachedService<IServiceResult> {
+		override compute(IXtextWebDocument it, CancelIndicator cancelIndicator) {
+			new IServiceResult {}
+		}
+	}
+	
+	static class TestService extends AbstractCachedService<IServiceResult> {
+		override compute(IXtextWebDocument it, CancelIndicator cancelIndicator) {
+			new IServiceResult {}
+		}
+	}
+	
+}
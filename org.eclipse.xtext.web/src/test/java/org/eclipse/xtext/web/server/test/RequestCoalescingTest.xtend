@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.server.test
+
+import com.google.inject.Inject
+import com.google.inject.Provider
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import org.eclipse.xtext.web.server.InvalidRequestException.ServiceTimeoutException
+import org.eclipse.xtext.web.server.model.DocumentSynchronizer
+import org.eclipse.xtext.web.server.model.XtextWebDocument
+import org.eclipse.xtext.web.server.model.XtextWebDocumentAccess
+import org.junit.Test
+
+import static org.junit.Assert.*
+
+class RequestCoalescingTest extends AbstractWebServerTest {
+	
+	@Inject XtextWebDocumentAccess.Factory documentAccessFactory
+	
+	@Inject Provider<DocumentSynchronizer> synchronizerProvider
+	
+	@Test def testIdenticalRequestsAreCoalesced() {
+		val document = new XtextWebDocument('test', synchronizerProvider.get)
+		val computations = new AtomicInteger
+		val started = new CountDownLatch(1)
+		val finish = new CountDownLatch(1)
+		val executor = Executors.newFixedThreadPool(2)
+		try {
+			val first = CompletableFuture.supplyAsync([
+				documentAccessFactory.create(document, false).coalesce('tag') [
+					computations.incrementAndGet
+					started.countDown
+					finish.await
+					'result'
+				]
+			], executor)
+			assertTrue(started.await(5, TimeUnit.SECONDS))
+			val second = CompletableFuture.supplyAsync([
+				documentAccessFactory.create(document, false).coalesce('tag') [
+					computations.incrementAndGet
+					'other'
+				]
+			], executor)
+			Thread.sleep(100)
+			finish.countDown
+			assertEquals('result', first.get(5, TimeUnit.SECONDS))
+			assertEquals('result', second.get(5, TimeUnit.SECONDS))
+		} finally {
+			finish.countDown
+			executor.shutdown
+		}
+		assertEquals(1, computations.get)
+	}
+	
+	@Test def testCoalescedRequestRespectsDeadline() {
+		val document = new XtextWebDocument('test', synchronizerProvider.get)
+		val started = new CountDownLatch(1)
+		val finish = new CountDownLatch(1)
+		val executor = Executors.newFixedThreadPool(2)
+		try {
+			val first = CompletableFuture.supplyAsync([
+				documentAccessFactory.create(document, false).coalesce('tag') [
+					started.countDown
+					finish.await
+					'result'
+				]
+			], executor)
+			assertTrue(started.await(5, TimeUnit.SECONDS))
+			val second = CompletableFuture.supplyAsync([
+				val access = documentAccessFactory.create(document, false)
+				access.setTimeout(50, TimeUnit.MILLISECONDS)
+				access.coalesce('tag') ['other']
+			], executor)
+			try {
+				second.get(5, TimeUnit.SECONDS)
+				fail('The coalesced request should have timed out.')
+			} catch (ExecutionException exception) {
+				assertTrue(exception.cause instanceof ServiceTimeoutException)
+			}
+			finish.countDown
+			assertEquals('result', first.get(5, TimeUnit.SECONDS))
+		} finally {
+			finish.countDown
+			executor.shutdown
+		}
+	}
+	
+	@Test def testDifferentTagsAreNotCoalesced() {
+		val document = new XtextWebDocument('test', synchronizerProvider.get)
+		val access = documentAccessFactory.create(document, false)
+		assertEquals('a', access.coalesce('tag1') ['a'])
+		assertEquals('b', access.coalesce('tag2') ['b'])
+		assertEquals('c', access.coalesce(null) ['c'])
+	}
+	
+}
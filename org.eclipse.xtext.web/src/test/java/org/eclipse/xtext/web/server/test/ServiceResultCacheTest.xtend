@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.server.test
+
+import java.lang.ref.WeakReference
+import java.util.List
+import org.eclipse.xtext.util.CancelIndicator
+import org.eclipse.xtext.web.server.IServiceResult
+import org.eclipse.xtext.web.server.model.AbstractCachedService
+import org.eclipse.xtext.web.server.model.IXtextWebDocument
+import org.eclipse.xtext.web.server.model.ServiceResultCache
+import org.eclipse.xtext.web.server.model.ServiceResultCacheManager
+import org.junit.Test
+
+import static org.junit.Assert.*
+
+class ServiceResultCacheTest {
+	
+	static class TestResult implements IServiceResult {
+	}
+	
+	static class TestService extends AbstractCachedService<TestResult> {
+		override compute(IXtextWebDocument it, CancelIndicator cancelIndicator) {
+			new TestResult
+		}
+	}
+	
+	static class TestCacheManager extends ServiceResultCacheManager {
+		override estimateSize(IServiceResult result) {
+			100
+		}
+	}
+	
+	@Test def testDocumentBudget() {
+		val manager = new TestCacheManager => [
+			documentBudget = 250
+			globalBudget = 1000
+		]
+		val List<AbstractCachedService<?>> evicted = newArrayList
+		val cache = new ServiceResultCache([evicted += it]) => [it.manager = manager]
+		val service1 = new TestService
+		val service2 = new TestService
+		val service3 = new TestService
+		cache.put(service1, new TestResult)
+		cache.put(service2, new TestResult)
+		assertNotNull(cache.get(service1))
+		cache.put(service3, new TestResult)
+		assertEquals(#[service2], evicted)
+		assertNull(cache.get(service2))
+		assertNotNull(cache.get(service1))
+		assertNotNull(cache.get(service3))
+		assertEquals(200, cache.size)
+		assertEquals(200, manager.size)
+	}
+	
+	@Test def testGlobalBudget() {
+		val manager = new TestCacheManager => [
+			documentBudget = 250
+			globalBudget = 300
+		]
+		val List<AbstractCachedService<?>> evicted = newArrayList
+		val cache1 = new ServiceResultCache([evicted += it]) => [it.manager = manager]
+		val cache2 = new ServiceResultCache([evicted += it]) => [it.manager = manager]
+		val service1 = new TestService
+		val service2 = new TestService
+		cache1.put(service1, new TestResult)
+		cache2.put(service1, new TestResult)
+		cache1.put(service2, new TestResult)
+		assertNotNull(cache1.get(service1))
+		cache2.put(service2, new TestResult)
+		assertEquals(#[service1], evicted)
+		assertNull(cache2.get(service1))
+		assertNotNull(cache1.get(service1))
+		assertEquals(300, manager.size)
+		cache1.clear()
+		assertEquals(100, manager.size)
+	}
+	
+	@Test def testOversizedResultIsNotCached() {
+		val manager = new TestCacheManager => [
+			documentBudget = 50
+		]
+		val cache = new ServiceResultCache([]) => [it.manager = manager]
+		val service = new TestService
+		cache.put(service, new TestResult)
+		assertNull(cache.get(service))
+		assertEquals(0, manager.size)
+	}
+	
+	@Test def testRetainedResultsCountInBudget() {
+		val manager = new TestCacheManager => [
+			documentBudget = 250
+			globalBudget = 1000
+		]
+		val List<AbstractCachedService<?>> evicted = newArrayList
+		val cache = new ServiceResultCache([evicted += it]) => [it.manager = manager]
+		val service1 = new TestService
+		val service2 = new TestService
+		val result1 = new TestResult
+		val result2 = new TestResult
+		cache.put(service1, result1)
+		cache.retain(service1, 'state1', result1, 3)
+		assertEquals(100, cache.size)
+		cache.clear()
+		cache.put(service1, result2)
+		cache.retain(service1, 'state2', result2, 3)
+		assertSame(result1, cache.getRetained(service1, 'state1'))
+		assertEquals(200, cache.size)
+		assertEquals(200, manager.size)
+		cache.put(service2, new TestResult)
+		assertEquals(#[service1], evicted)
+		assertNull(cache.getRetained(service1, 'state1'))
+		assertEquals(100, cache.size)
+		assertEquals(100, manager.size)
+	}
+	
+	@Test def testRetainedResultsAreLimited() {
+		val cache = new ServiceResultCache([])
+		val service = new TestService
+		for (i : 1..5) {
+			cache.retain(service, 'state' + i, new TestResult, 3)
+		}
+		assertNull(cache.getRetained(service, 'state2'))
+		assertNotNull(cache.getRetained(service, 'state3'))
+		cache.clearRetained()
+		assertNull(cache.getRetained(service, 'state5'))
+	}
+	
+	@Test def testReclaimedCacheIsDiscarded() {
+		val manager = new TestCacheManager
+		var cache = new ServiceResultCache([]) => [it.manager = manager]
+		cache.put(new TestService, new TestResult)
+		assertEquals(100, manager.size)
+		val reference = new WeakReference(cache)
+		cache = null
+		for (var i = 0; i < 100 && manager.size > 0; i++) {
+			System.gc()
+			Thread.sleep(20)
+		}
+		assertNull(reference.get)
+		assertEquals(0, manager.size)
+	}
+	
+	@Test def testUnboundedWithoutManager() {
+		val cache = new ServiceResultCache([])
+		val services = (1..100).map[new TestService].toList
+		for (service : services) {
+			cache.put(service, new TestResult)
+		}
+		assertTrue(services.forall[cache.get(it) !== null])
+	}
+	
+}
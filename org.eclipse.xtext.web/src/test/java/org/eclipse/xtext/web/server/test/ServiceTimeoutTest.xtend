@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.server.test
+
+import com.google.inject.Inject
+import com.google.inject.Provider
+import java.util.concurrent.TimeUnit
+import org.eclipse.xtext.service.OperationCanceledManager
+import org.eclipse.xtext.web.server.InvalidRequestException.ServiceTimeoutException
+import org.eclipse.xtext.web.server.model.DocumentSynchronizer
+import org.eclipse.xtext.web.server.model.XtextWebDocument
+import org.eclipse.xtext.web.server.model.XtextWebDocumentAccess
+import org.junit.Test
+
+import static org.junit.Assert.*
+
+class ServiceTimeoutTest extends AbstractWebServerTest {
+	
+	@Inject XtextWebDocumentAccess.Factory documentAccessFactory
+	
+	@Inject Provider<DocumentSynchronizer> synchronizerProvider
+	
+	@Inject OperationCanceledManager operationCanceledManager
+	
+	@Test(expected = ServiceTimeoutException)
+	def testLockNotObtainedInTime() {
+		val synchronizer = synchronizerProvider.get
+		val document = new XtextWebDocument('test', synchronizer)
+		synchronizer.acquireLock(true)
+		try {
+			val access = documentAccessFactory.create(document, false)
+			access.setTimeout(50, TimeUnit.MILLISECONDS)
+			access.readOnly[ doc, cancelIndicator | 'result' ]
+		} finally {
+			synchronizer.releaseLock()
+		}
+	}
+	
+	@Test(expected = ServiceTimeoutException)
+	def testReadOnlyWorkCanceledAfterDeadline() {
+		val document = new XtextWebDocument('test', synchronizerProvider.get)
+		val access = documentAccessFactory.create(document, false)
+		access.setTimeout(50, TimeUnit.MILLISECONDS)
+		access.readOnly[ doc, cancelIndicator |
+			Thread.sleep(100)
+			operationCanceledManager.checkCanceled(cancelIndicator)
+			'result'
+		]
+	}
+	
+	@Test def testNoTimeout() {
+		val document = new XtextWebDocument('test', synchronizerProvider.get)
+		val access = documentAccessFactory.create(document, false)
+		access.setTimeout(0, TimeUnit.MILLISECONDS)
+		assertEquals('result', access.readOnly[ doc, cancelIndicator |
+			assertFalse(cancelIndicator.canceled)
+			'result'
+		])
+	}
+	
+}
@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.server.test
+
+import com.google.inject.Inject
+import org.eclipse.emf.common.util.URI
+import org.eclipse.xtext.resource.impl.ResourceDescriptionsData
+import org.eclipse.xtext.util.StringInputStream
+import org.eclipse.xtext.web.server.model.IWebResourceSetProvider
+import org.eclipse.xtext.web.server.model.SharedLibraryIndex
+import org.junit.Test
+
+import static org.junit.Assert.*
+
+class SharedLibraryIndexTest extends AbstractWebServerTest {
+	
+	@Inject SharedLibraryIndex libraryIndex
+	
+	@Inject IWebResourceSetProvider.SharedLibraryImpl resourceSetProvider
+	
+	@Test def testLibraryIsShared() {
+		val file = createFile('input signal lib state s end')
+		val uri = URI.createFileURI(file.absolutePath)
+		libraryIndex.load(#[uri])
+		val resourceSet1 = resourceSetProvider.get(null, null)
+		val resourceSet2 = resourceSetProvider.get(null, null)
+		val index = ResourceDescriptionsData.ResourceSetAdapter.findResourceDescriptionsData(resourceSet1)
+		assertTrue(index.exportedObjects.exists[name.toString == 'lib'])
+		assertTrue(resourceSet1.resources.empty)
+		// Library resources are loaded by each resource set on demand, since EMF resources are not thread-safe
+		assertNull(resourceSet1.getResource(uri, false))
+		assertNotSame(resourceSet1.getResource(uri, true), resourceSet2.getResource(uri, true))
+	}
+	
+	@Test def testModificationsDoNotAffectLibrary() {
+		val file = createFile('input signal lib state s end')
+		val uri = URI.createFileURI(file.absolutePath)
+		libraryIndex.load(#[uri])
+		val index1 = ResourceDescriptionsData.ResourceSetAdapter.findResourceDescriptionsData(resourceSetProvider.get(null, null))
+		val index2 = ResourceDescriptionsData.ResourceSetAdapter.findResourceDescriptionsData(resourceSetProvider.get(null, null))
+		val copy = index1.copy
+		index1.removeDescription(uri)
+		assertNull(index1.getResourceDescription(uri))
+		assertFalse(index1.exportedObjects.exists[name.toString == 'lib'])
+		assertTrue(index2.exportedObjects.exists[name.toString == 'lib'])
+		assertTrue(copy.exportedObjects.exists[name.toString == 'lib'])
+		
+		index1.addDescription(uri, index2.getResourceDescription(uri))
+		assertTrue(index1.exportedObjects.exists[name.toString == 'lib'])
+		copy.removeDescription(uri)
+		assertTrue(index1.exportedObjects.exists[name.toString == 'lib'])
+		assertTrue(index2.exportedObjects.exists[name.toString == 'lib'])
+	}
+	
+	@Test def testLocalResourceShadowsLibrary() {
+		val file = createFile('input signal lib state s end')
+		val uri = URI.createFileURI(file.absolutePath)
+		libraryIndex.load(#[uri])
+		val resourceSet = resourceSetProvider.get(null, null)
+		val resource = resourceSet.createResource(uri)
+		resource.load(new StringInputStream('input signal local state s end'), emptyMap)
+		val index = ResourceDescriptionsData.ResourceSetAdapter.findResourceDescriptionsData(resourceSet)
+		assertTrue(index.exportedObjects.exists[name.toString == 'local'])
+		assertFalse(index.exportedObjects.exists[name.toString == 'lib'])
+		assertSame(resource, resourceSet.getResource(uri, false))
+	}
+	
+}
@@ -17,11 +17,15 @@ import org.eclipse.xtext.validation.CheckMode
 import org.eclipse.xtext.validation.IResourceValidator
 import org.eclipse.xtext.validation.ResourceValidatorImpl
 import org.eclipse.xtext.web.example.statemachine.StatemachineRuntimeModule
+import org.eclipse.xtext.web.server.IServiceResult
 import org.eclipse.xtext.web.server.ServiceConflictResult
 import org.eclipse.xtext.web.server.model.DocumentStateResult
 import org.eclipse.xtext.web.server.model.XtextWebDocument
 import org.eclipse.xtext.web.server.persistence.ResourceContentResult
+import org.eclipse.xtext.web.server.syntaxcoloring.HighlightingResult
 import org.eclipse.xtext.web.server.test.UpdateDocumentTest.TestResourceValidator
+import org.eclipse.xtext.web.server.validation.ValidationResult
+import org.eclipse.xtext.web.server.validation.ValidationService
 import org.junit.Test
 
 import static org.hamcrest.core.IsInstanceOf.*
@@ -84,6 +88,8 @@ class UpdateDocumentTest extends AbstractWebServerTest {
 	
 	@Inject ExecutorService executorService
 	
+	@Inject ValidationService validationService
+	
 	override protected getRuntimeModule() {
 		new StatemachineRuntimeModule {
 			def Class<? extends IResourceValidator> bindIResourceValidator() {
@@ -120,6 +126,50 @@ class UpdateDocumentTest extends AbstractWebServerTest {
 		assertEquals('input signal x state bar set x = true end', loadResult.fullText)
 	}
 	
+	@Test def testSnapshotPublished() {
+		resourceValidator.reset(0)
+		val file = createFile('input signal x state foo end')
+		val session = new HashMapSession
+		val update = getService(#{
+				'serviceType' -> 'update',
+				'resource' -> file.name,
+				'deltaText' -> 'bar',
+				'deltaOffset' -> '21',
+				'deltaReplaceLength' -> '3'
+			}, session)
+		val updateResult = update.service.apply() as DocumentStateResult
+		val XtextWebDocument document = session.get(XtextWebDocument -> file.name)
+		val startTime = System.currentTimeMillis
+		while (document.snapshot?.stateId != updateResult.stateId) {
+			assertTrue(System.currentTimeMillis - startTime < 8000)
+			Thread.sleep(10)
+		}
+		assertEquals('input signal x state bar end', document.text)
+		
+		val validate = getService(#{
+				'serviceType' -> 'validate',
+				'resource' -> file.name,
+				'requiredStateId' -> updateResult.stateId
+			}, session)
+		val validateResult = validate.service.apply()
+		assertSame(validateResult, document.snapshot.getServiceResult(validationService))
+	}
+	
+	@Test def testMergePendingTextChanges() {
+		resourceValidator.reset(0)
+		val file = createFile('input signal x state foo end')
+		val session = new HashMapSession
+		getService(#{'serviceType' -> 'load', 'resource' -> file.name}, session).service.apply()
+		val XtextWebDocument document = session.get(XtextWebDocument -> file.name)
+		document.deferTextChange('bar', 21, 3)
+		document.deferTextChange(' set x = true', 24, 0)
+		assertTrue(document.hasPendingTextChange)
+		assertEquals('input signal x state bar set x = true end', document.text)
+		assertTrue(document.hasPendingTextChange)
+		assertEquals('input signal x state bar set x = true end', document.resource.parseResult.rootNode.text)
+		assertFalse(document.hasPendingTextChange)
+	}
+	
 	@Test def testIncorrectStateId1() {
 		resourceValidator.reset(0)
 		val file = createFile('state foo end')
@@ -344,4 +394,37 @@ class UpdateDocumentTest extends AbstractWebServerTest {
 		assertEquals(0, resourceValidator.entryCounter)
 	}
 	
+	@Test def testPrecomputationListener() {
+		resourceValidator.reset(0)
+		val file = createFile('input signal x state foo end')
+		val session = new HashMapSession
+		getService(#{'serviceType' -> 'load', 'resource' -> file.name}, session).service.apply()
+		val XtextWebDocument document = session.get(XtextWebDocument -> file.name)
+		val results = <Pair<String, IServiceResult>>newArrayList
+		document.addPrecomputationListener[ doc, service, result, stateId |
+			synchronized (results) {
+				results += stateId -> result
+				results.notifyAll()
+			}
+		]
+		val update = getService(#{
+				'serviceType' -> 'update',
+				'resource' -> file.name,
+				'deltaText' -> 'bar',
+				'deltaOffset' -> '21',
+				'deltaReplaceLength' -> '3'
+			}, session)
+		val updateResult = update.service.apply() as DocumentStateResult
+		synchronized (results) {
+			val startTime = System.currentTimeMillis
+			while (results.size < 2) {
+				assertTrue(System.currentTimeMillis - startTime < 8000)
+				results.wait(3000)
+			}
+		}
+		assertTrue(results.forall[key == updateResult.stateId])
+		assertTrue(results.exists[value instanceof HighlightingResult])
+		assertTrue(results.exists[value instanceof ValidationResult])
+	}
+	
 }
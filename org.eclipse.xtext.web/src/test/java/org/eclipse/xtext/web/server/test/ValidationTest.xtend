@@ -8,6 +8,8 @@
 package org.eclipse.xtext.web.server.test
 
 import org.eclipse.xtext.web.server.ServiceConflictResult
+import org.eclipse.xtext.web.server.model.DocumentStateResult
+import org.eclipse.xtext.web.server.validation.ValidationDeltaResult
 import org.eclipse.xtext.web.server.validation.ValidationResult
 import org.junit.Test
 
@@ -105,4 +107,66 @@ class ValidationTest extends AbstractWebServerTest {
 		assertEquals((result as ServiceConflictResult).conflict, 'invalidStateId')
 	}
 	
+	@Test def testDeltaResult() {
+		val file = createFile('output signal x state foo set y = true end')
+		val session = new HashMapSession
+		val firstUpdate = getService(#{
+				'serviceType' -> 'update',
+				'resource' -> file.name,
+				'deltaText' -> 'z',
+				'deltaOffset' -> '30',
+				'deltaReplaceLength' -> '1'
+			}, session).service.apply() as DocumentStateResult
+		val firstResult = getService(#{
+				'serviceType' -> 'validate',
+				'resource' -> file.name,
+				'requiredStateId' -> firstUpdate.stateId
+			}, session).service.apply() as ValidationResult
+		assertEquals(1, firstResult.issues.size)
+		
+		val secondUpdate = getService(#{
+				'serviceType' -> 'update',
+				'resource' -> file.name,
+				'deltaText' -> 'x',
+				'deltaOffset' -> '30',
+				'deltaReplaceLength' -> '1',
+				'requiredStateId' -> firstUpdate.stateId
+			}, session).service.apply() as DocumentStateResult
+		val secondResult = getService(#{
+				'serviceType' -> 'validate',
+				'resource' -> file.name,
+				'requiredStateId' -> secondUpdate.stateId,
+				'baseStateId' -> firstUpdate.stateId
+			}, session).service.apply() as ValidationDeltaResult
+		assertEquals(firstUpdate.stateId, secondResult.baseStateId)
+		assertTrue(secondResult.added.empty)
+		assertEquals(#[firstResult.issues.head], secondResult.removed)
+	}
+	
+	@Test def testResultTag() {
+		val file = createFile('state foo end')
+		val session = new HashMapSession
+		val update = getService(#{
+				'serviceType' -> 'update',
+				'resource' -> file.name,
+				'deltaText' -> 'bar',
+				'deltaOffset' -> '6',
+				'deltaReplaceLength' -> '3'
+			}, session).service.apply() as DocumentStateResult
+		val validateParams = #{
+				'serviceType' -> 'validate',
+				'resource' -> file.name,
+				'requiredStateId' -> update.stateId
+			}
+		val firstTag = getService(validateParams, session).resultTag
+		assertNotNull(firstTag)
+		assertEquals(firstTag, getService(validateParams, session).resultTag)
+		assertNull(getService(#{'serviceType' -> 'validate', 'resource' -> file.name}, session).resultTag)
+		assertNull(getService(#{
+				'serviceType' -> 'validate',
+				'resource' -> file.name,
+				'requiredStateId' -> 'totalerquatsch'
+			}, session).resultTag)
+	}
+	
 }
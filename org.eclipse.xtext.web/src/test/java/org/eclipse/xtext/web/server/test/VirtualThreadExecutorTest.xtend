@@ -0,0 +1,38 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.server.test
+
+import com.google.inject.Inject
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
+import org.eclipse.xtext.web.server.model.VirtualThreadExecutorServiceProvider
+import org.junit.Test
+
+import static org.junit.Assert.*
+
+class VirtualThreadExecutorTest extends AbstractWebServerTest {
+	
+	@Inject VirtualThreadExecutorServiceProvider executorServiceProvider
+	
+	@Test def testTasksAreExecuted() {
+		try {
+			val executor = executorServiceProvider.get('withDocumentLock')
+			assertSame(executor, executorServiceProvider.get('withDocumentLock'))
+			val isVirtual = CompletableFuture.supplyAsync([
+				if (executorServiceProvider.virtualThreadsSupported)
+					Thread.getMethod('isVirtual').invoke(Thread.currentThread) as Boolean
+				else
+					false
+			], executor).get(5, TimeUnit.SECONDS)
+			assertEquals(executorServiceProvider.virtualThreadsSupported, isVirtual)
+		} finally {
+			executorServiceProvider.dispose()
+		}
+	}
+	
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+package org.eclipse.xtext.web.server.test
+
+import com.google.inject.Inject
+import org.eclipse.xtext.web.server.model.DocumentSynchronizer
+import org.eclipse.xtext.web.server.model.WebDocumentRegistry
+import org.eclipse.xtext.web.server.model.XtextWebDocument
+import org.junit.Test
+
+import static org.junit.Assert.*
+
+class WebDocumentRegistryTest extends AbstractWebServerTest {
+	
+	@Inject WebDocumentRegistry documentRegistry
+	
+	@Test def testCleanDocumentIsPassivatedFirst() {
+		documentRegistry.memoryBudget = 2000
+		val file1 = createFile('input signal x state foo end')
+		val session1 = new HashMapSession
+		getService(#{'serviceType' -> 'load', 'resource' -> file1.name}, session1).service.apply()
+		val XtextWebDocument document1 = session1.get(XtextWebDocument -> file1.name)
+		val stateId = document1.stateId
+		awaitBackgroundWork(session1.get(DocumentSynchronizer -> file1.name))
+		
+		val file2 = createFile('input signal y state bar end')
+		val session2 = new HashMapSession
+		getService(#{'serviceType' -> 'load', 'resource' -> file2.name}, session2).service.apply()
+		assertSame(document1, session1.get(XtextWebDocument -> file1.name))
+		assertTrue(document1.passivated)
+		assertEquals(stateId, document1.stateId)
+		assertEquals(1, documentRegistry.stats.passivationCount)
+		assertEquals(0, documentRegistry.stats.evictionCount)
+	}
+	
+	@Test def testPassivatedCleanDocumentIsEvicted() {
+		documentRegistry.memoryBudget = 2000
+		val file1 = createFile('input signal x state foo end')
+		val session1 = new HashMapSession
+		getService(#{'serviceType' -> 'load', 'resource' -> file1.name}, session1).service.apply()
+		val XtextWebDocument document1 = session1.get(XtextWebDocument -> file1.name)
+		awaitBackgroundWork(session1.get(DocumentSynchronizer -> file1.name))
+		assertTrue(document1.passivate())
+		
+		val file2 = createFile('input signal y state bar end')
+		val session2 = new HashMapSession
+		getService(#{'serviceType' -> 'load', 'resource' -> file2.name}, session2).service.apply()
+		awaitBackgroundWork(session2.get(DocumentSynchronizer -> file2.name))
+		val file3 = createFile('input signal z state baz end')
+		val session3 = new HashMapSession
+		getService(#{'serviceType' -> 'load', 'resource' -> file3.name}, session3).service.apply()
+		assertNull(session1.get(XtextWebDocument -> file1.name))
+		assertNotNull(session2.get(XtextWebDocument -> file2.name))
+		assertNotNull(session3.get(XtextWebDocument -> file3.name))
+		assertEquals(1, documentRegistry.stats.evictionCount)
+		assertEquals(2, documentRegistry.stats.documentCount)
+	}
+	
+	@Test def testDirtyDocumentIsPassivated() {
+		documentRegistry.memoryBudget = 2000
+		val file1 = createFile('input signal x state foo end')
+		val session1 = new HashMapSession
+		getService(#{'serviceType' -> 'load', 'resource' -> file1.name}, session1).service.apply()
+		val XtextWebDocument document1 = session1.get(XtextWebDocument -> file1.name)
+		document1.dirty = true
+		
+		val file2 = createFile('input signal y state bar end')
+		val session2 = new HashMapSession
+		getService(#{'serviceType' -> 'load', 'resource' -> file2.name}, session2).service.apply()
+		assertSame(document1, session1.get(XtextWebDocument -> file1.name))
+		assertTrue(document1.passivated)
+		assertEquals(1, documentRegistry.stats.passivationCount)
+		assertEquals(0, documentRegistry.stats.evictionCount)
+		assertEquals(2, documentRegistry.stats.documentCount)
+	}
+	
+	@Test def testWithinBudget() {
+		val file = createFile('input signal x state foo end')
+		val session = new HashMapSession
+		getService(#{'serviceType' -> 'load', 'resource' -> file.name}, session).service.apply()
+		assertEquals(1, documentRegistry.stats.documentCount)
+		assertTrue(documentRegistry.stats.estimatedSize > 0)
+		assertEquals(0, documentRegistry.stats.evictionCount)
+	}
+	
+	private def void awaitBackgroundWork(DocumentSynchronizer synchronizer) {
+		synchronizer.acquireLock(false)
+		synchronizer.releaseLock()
+	}
+	
+}
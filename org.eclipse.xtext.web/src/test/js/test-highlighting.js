@@ -84,4 +84,107 @@ suite('Highlighting', function() {
 		});
 	});
 	
+	test('should request the compact format when configured', function(done) {
+		requirejs(['assert', 'xtext/xtext-test'], function(assert, xtext) {
+			xtext.testEditor({compactHighlighting: true, doneCallback: done})
+				.setText('foo')
+				.invokeService('highlight')
+				.checkRequest(function(url, settings) {
+					assert.equal('test://xtext-service/highlight', url);
+					assert.equal(true, settings.data.compact);
+				})
+				.done();
+		});
+	});
+	
+	test('should decode compact highlighting results', function() {
+		requirejs(['assert', 'xtext/services/HighlightingService'], function(assert, HighlightingService) {
+			var regions = [];
+			HighlightingService.forEachRegion({legend: [['a'], ['b']], data: [2, 3, 0, 4, 2, 1]},
+				function(offset, length, styleClasses) {
+					regions.push([offset, length, styleClasses[0]]);
+				});
+			assert.deepEqual([[2, 3, 'a'], [6, 2, 'b']], regions);
+		});
+	});
+	
+	test('should apply incremental highlighting results', function(done) {
+		requirejs(['assert', 'xtext/xtext-test'], function(assert, xtext) {
+			xtext.testEditor({incrementalHighlighting: true, doneCallback: done})
+				.setText('foo bar')
+				.invokeService('highlight')
+				.checkRequest(function(url, settings) {
+					assert.equal(undefined, settings.data.baseStateId);
+				})
+				.respond({regions: [{offset: 0, length: 3, styleClasses: ['a']}, {offset: 4, length: 3, styleClasses: ['b']}]})
+				.setup(function(editorContext) {
+					editorContext.updateServerState('foo bar baz', '1');
+					editorContext.xtextServices.highlightingService.setState(undefined);
+				})
+				.invokeService('highlight')
+				.checkRequest(function(url, settings) {
+					assert.equal('0', settings.data.baseStateId);
+				})
+				.respond({baseStateId: '0', added: [{offset: 8, length: 3, styleClasses: ['c']}],
+						removed: [{offset: 0, length: 3, styleClasses: ['a']}]})
+				.checkResult(function(editorContext, result) {
+					assert.equal(2, result.regions.length);
+					assert.equal('b', result.regions[0].styleClasses[0]);
+					assert.equal(8, result.regions[1].offset);
+				})
+				.done();
+		});
+	});
+	
+	test('should request the full result if the base state is unknown', function(done) {
+		requirejs(['assert', 'xtext/xtext-test'], function(assert, xtext) {
+			xtext.testEditor({incrementalHighlighting: true, doneCallback: done})
+				.setText('foo bar')
+				.invokeService('highlight')
+				.respond({regions: [{offset: 0, length: 3, styleClasses: ['a']}]})
+				.setup(function(editorContext) {
+					editorContext.updateServerState('foo bar baz', '1');
+					editorContext.xtextServices.highlightingService.setState(undefined);
+				})
+				.invokeService('highlight')
+				.checkRequest(function(url, settings) {
+					assert.equal('0', settings.data.baseStateId);
+				})
+				.respond({baseStateId: '2', added: [{offset: 8, length: 3, styleClasses: ['c']}]})
+				.checkRequest(function(url, settings) {
+					assert.equal(undefined, settings.data.baseStateId);
+				})
+				.respond({regions: [{offset: 0, length: 3, styleClasses: ['a']}, {offset: 8, length: 3, styleClasses: ['c']}]})
+				.checkResult(function(editorContext, result) {
+					assert.equal(2, result.regions.length);
+				})
+				.done();
+		});
+	});
+	
+	test('should use the state of the request as base state', function(done) {
+		requirejs(['assert', 'xtext/xtext-test'], function(assert, xtext) {
+			xtext.testEditor({incrementalHighlighting: true, doneCallback: done})
+				.setText('foo bar')
+				.invokeService('highlight')
+				.setup(function(editorContext) {
+					// An update finishes while the request is in flight
+					editorContext.updateServerState('foo bar baz', '1');
+				})
+				.respond({regions: [{offset: 0, length: 3, styleClasses: ['a']}]})
+				.setup(function(editorContext) {
+					editorContext.xtextServices.highlightingService.setState(undefined);
+				})
+				.invokeService('highlight')
+				.checkRequest(function(url, settings) {
+					assert.equal('0', settings.data.baseStateId);
+				})
+				.respond({baseStateId: '0', added: [{offset: 8, length: 3, styleClasses: ['c']}]})
+				.checkResult(function(editorContext, result) {
+					assert.equal(2, result.regions.length);
+				})
+				.done();
+		});
+	});
+	
 });
@@ -84,4 +84,152 @@ suite('Validation', function() {
 		});
 	});
 	
+	test('should apply incremental validation results', function(done) {
+		requirejs(['assert', 'xtext/xtext-test'], function(assert, xtext) {
+			xtext.testEditor({incrementalValidation: true, doneCallback: done})
+				.setText('foo bar')
+				.invokeService('validate')
+				.respond({issues: [{severity: 'error', offset: 0, length: 3}, {severity: 'warning', offset: 4, length: 3}]})
+				.setup(function(editorContext) {
+					editorContext.updateServerState('foo bar baz', '1');
+					editorContext.xtextServices.validationService.setState(undefined);
+				})
+				.invokeService('validate')
+				.checkRequest(function(url, settings) {
+					assert.equal('0', settings.data.baseStateId);
+				})
+				.respond({baseStateId: '0', added: [{severity: 'info', offset: 8, length: 3}],
+						removed: [{severity: 'error', offset: 0, length: 3}]})
+				.checkResult(function(editorContext, result) {
+					assert.equal(2, result.issues.length);
+					assert.equal('warning', result.issues[0].severity);
+					assert.equal('info', result.issues[1].severity);
+				})
+				.done();
+		});
+	});
+	
+	test('should request the full result if the base state is unknown', function(done) {
+		requirejs(['assert', 'xtext/xtext-test'], function(assert, xtext) {
+			xtext.testEditor({incrementalValidation: true, doneCallback: done})
+				.setText('foo bar')
+				.invokeService('validate')
+				.respond({issues: [{severity: 'error', offset: 0, length: 3}]})
+				.setup(function(editorContext) {
+					editorContext.updateServerState('foo bar baz', '1');
+					editorContext.xtextServices.validationService.setState(undefined);
+				})
+				.invokeService('validate')
+				.checkRequest(function(url, settings) {
+					assert.equal('0', settings.data.baseStateId);
+				})
+				.respond({baseStateId: '2', added: [{severity: 'info', offset: 8, length: 3}]})
+				.checkRequest(function(url, settings) {
+					assert.equal(undefined, settings.data.baseStateId);
+				})
+				.respond({issues: [{severity: 'error', offset: 0, length: 3}, {severity: 'info', offset: 8, length: 3}]})
+				.checkResult(function(editorContext, result) {
+					assert.equal(2, result.issues.length);
+				})
+				.done();
+		});
+	});
+	
+	test('should use the state of the request as base state', function(done) {
+		requirejs(['assert', 'xtext/xtext-test'], function(assert, xtext) {
+			xtext.testEditor({incrementalValidation: true, doneCallback: done})
+				.setText('foo bar')
+				.invokeService('validate')
+				.setup(function(editorContext) {
+					// An update finishes while the request is in flight
+					editorContext.updateServerState('foo bar baz', '1');
+				})
+				.respond({issues: [{severity: 'error', offset: 0, length: 3}]})
+				.setup(function(editorContext) {
+					editorContext.xtextServices.validationService.setState(undefined);
+				})
+				.invokeService('validate')
+				.checkRequest(function(url, settings) {
+					assert.equal('0', settings.data.baseStateId);
+				})
+				.respond({baseStateId: '0', added: [{severity: 'info', offset: 8, length: 3}]})
+				.checkResult(function(editorContext, result) {
+					assert.equal(2, result.issues.length);
+				})
+				.done();
+		});
+	});
+	
+	test('should reuse the last result when the server reports it as not modified', function(done) {
+		requirejs(['assert', 'xtext/xtext-test'], function(assert, xtext) {
+			xtext.testEditor({doneCallback: done})
+				.setText('foo')
+				.invokeService('validate')
+				.checkRequest(function(url, settings) {
+					assert.equal(undefined, settings.headers);
+				})
+				.respond({issues: [{severity: 'error', offset: 0, length: 3}]}, {
+					status: 200,
+					getResponseHeader: function(name) {
+						return name === 'ETag' ? '"abc"' : null;
+					}
+				})
+				.setup(function(editorContext) {
+					editorContext.xtextServices.validationService.setState(undefined);
+				})
+				.invokeService('validate')
+				.checkRequest(function(url, settings) {
+					assert.equal('"abc"', settings.headers['If-None-Match']);
+				})
+				.respond(undefined, {status: 304})
+				.checkResult(function(editorContext, result) {
+					assert.equal('error', result.issues[0].severity);
+				})
+				.done();
+		});
+	});
+	
+	test('should try again when the server is overloaded', function(done) {
+		requirejs(['assert', 'xtext/xtext-test'], function(assert, xtext) {
+			var tester = xtext.testEditor({doneCallback: done})
+				.setText('foo')
+				.invokeService('validate')
+				.httpError('Service Unavailable', {
+					status: 503,
+					getResponseHeader: function(name) {
+						return name === 'Retry-After' ? '0' : null;
+					}
+				});
+			setTimeout(function() {
+				tester.checkRequest(function(url, settings) {
+						assert.equal('test://xtext-service/validate', url);
+					})
+					.respond({issues: [{severity: 'error', offset: 0, length: 3}]})
+					.checkResult(function(editorContext, result) {
+						assert.equal('error', result.issues[0].severity);
+					})
+					.done();
+			}, 10);
+		});
+	});
+	
+	test('should not retry a request that timed out on the server', function(done) {
+		requirejs(['assert', 'xtext/xtext-test', 'jquery'], function(assert, xtext, jQuery) {
+			xtext.testEditor({serviceTimeout: 500, doneCallback: done})
+				.setText('foo')
+				.invokeService('validate')
+				.checkResult(function(editorContext, result) {
+					assert.fail('The request should not succeed.');
+				})
+				.checkRequest(function(url, settings) {
+					assert.equal(500, settings.data.timeoutMs);
+				})
+				.respond({conflict: 'timeout'})
+				.setup(function(editorContext) {
+					assert.equal(undefined, jQuery.getNextRequest());
+				})
+				.done();
+		});
+	});
+	
 });
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2019 itemis AG (http://www.itemis.eu) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *******************************************************************************/
+
+var requirejs = require('requirejs');
+requirejs.config({
+	baseUrl: 'src/main/js',
+	nodeRequire: require,
+	paths: {
+		'xtext/xtext-test': '../../../src/test/js/xtext/xtext-test',
+		'xtext/MockEditorContext': '../../../src/test/js/xtext/MockEditorContext',
+		'jquery': '../../../src/test/js/xtext/mock-jquery'
+	}
+});
+
+function MockWebSocket(url) {
+	MockWebSocket.instance = this;
+	this.url = url;
+	this.readyState = 0;
+	this.sent = [];
+}
+
+MockWebSocket.prototype = {
+	send: function(message) {
+		this.sent.push(JSON.parse(message));
+	},
+	open: function() {
+		this.readyState = 1;
+		this.onopen();
+	},
+	receive: function(message) {
+		this.onmessage({data: JSON.stringify(message)});
+	},
+	close: function() {
+		this.readyState = 3;
+		this.onclose();
+	}
+};
+
+suite('WebSocket', function() {
+
+	setup(function() {
+		global.WebSocket = MockWebSocket;
+	});
+
+	teardown(function() {
+		delete global.WebSocket;
+	});
+
+	test('should send requests through the connection', function(done) {
+		requirejs(['assert', 'xtext/xtext-test'], function(assert, xtext) {
+			var tester = xtext.testEditor({enableWebSocket: true, doneCallback: done});
+			var socket = MockWebSocket.instance;
+			assert.equal('test://xtext-service-ws', socket.url);
+			tester.setText('foo')
+				.invokeService('validate');
+			assert.equal(0, socket.sent.length);
+			socket.open();
+			assert.equal(1, socket.sent.length);
+			assert.equal('validate', socket.sent[0].serviceType);
+			assert.equal('0', socket.sent[0].requiredStateId);
+			socket.receive({id: socket.sent[0].id, result: {issues: [{severity: 'error', startOffset: 3}]}});
+			tester.checkResult(function(editorContext, result) {
+					assert.equal('error', result.issues[0].severity);
+				})
+				.done();
+		});
+	});
+
+	test('should use pushed results after an update', function(done) {
+		requirejs(['assert', 'xtext/xtext-test'], function(assert, xtext) {
+			var tester = xtext.testEditor({enableWebSocket: true, enableHighlightingService: false, doneCallback: done});
+			var socket = MockWebSocket.instance;
+			socket.open();
+			tester.triggerModelChange('foo');
+			assert.equal(1, socket.sent.length);
+			assert.equal('update', socket.sent[0].serviceType);
+			socket.receive({id: socket.sent[0].id, result: {stateId: '1'}});
+			assert.equal(1, socket.sent.length);
+			socket.receive({serviceType: 'validate', stateId: '1', result: {issues: [{severity: 'warning', startOffset: 1}]}});
+			assert.equal(1, socket.sent.length);
+			tester.checkSuccess(function(serviceType, result) {
+					assert.equal('validate', serviceType);
+					assert.equal('warning', result.issues[0].severity);
+				})
+				.done();
+		});
+	});
+
+	test('should fall back to HTTP when the connection is closed', function(done) {
+		requirejs(['assert', 'xtext/xtext-test'], function(assert, xtext) {
+			var tester = xtext.testEditor({enableWebSocket: true, doneCallback: done});
+			var socket = MockWebSocket.instance;
+			tester.setText('foo')
+				.invokeService('validate');
+			socket.close();
+			tester.checkRequest(function(url, settings) {
+					assert.equal('test://xtext-service/validate', url);
+				})
+				.done();
+		});
+	});
+
+});
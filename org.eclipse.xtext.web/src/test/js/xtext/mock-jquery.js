@@ -58,7 +58,7 @@ define(function() {
 	function invokeResponseCallbacks(request, response) {
 		var xhr = response.xhr ? response.xhr : {};
 		if (response.success)
-			request.settings.success(response.result);
+			request.settings.success(response.result, 'success', xhr);
 		else
 			request.settings.error(xhr, 'error', response.errorThrown);
 		if (isFunction(request.settings.complete))
@@ -71,8 +71,8 @@ define(function() {
 		requests = [];
 	}
 	
-	function respond(result) {
-		var response = {success: true, result: result};
+	function respond(result, xhr) {
+		var response = {success: true, result: result, xhr: xhr};
 		if (requests.length == 0)
 			throw new Error('Response without matching request');
 		var request = requests.shift();
@@ -102,8 +102,8 @@ define([
 			return this;
 		},
 		
-		respond: function(result) {
-			mjQuery.respond(result);
+		respond: function(result, xhr) {
+			mjQuery.respond(result, xhr);
 			return this;
 		},
 		